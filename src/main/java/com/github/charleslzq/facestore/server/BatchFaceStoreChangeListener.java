@@ -0,0 +1,10 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.Meta;
+
+import java.util.List;
+
+public interface BatchFaceStoreChangeListener<P extends Meta, F extends Meta> extends FaceStoreChangeListener<P, F> {
+    void onBatch(List<FaceStoreChange<P, F>> changes);
+}
@@ -0,0 +1,16 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.server.message.BulkResult;
+import com.github.charleslzq.facestore.server.message.EntityKey;
+import com.github.charleslzq.facestore.server.message.FaceEntry;
+import com.github.charleslzq.facestore.server.type.Person;
+
+import java.util.List;
+
+public interface BulkFaceStore {
+    List<BulkResult> savePersons(List<Person> persons);
+
+    List<BulkResult> saveFaces(List<FaceEntry> faces);
+
+    List<BulkResult> deleteAll(List<EntityKey> keys);
+}
@@ -0,0 +1,23 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.joda.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class ChangeEvent {
+    private final long sequence;
+    private final ChangeType type;
+    private final String personId;
+    private final String faceId;
+    private final LocalDateTime time;
+
+    public String getKey() {
+        return keyOf(personId, faceId);
+    }
+
+    public static String keyOf(String personId, String faceId) {
+        return faceId == null ? personId : personId + "/" + faceId;
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.change-log")
+public class ChangeLogProperties {
+    private String file;
+    private int capacity = 100000;
+}
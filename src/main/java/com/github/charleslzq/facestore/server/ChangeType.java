@@ -0,0 +1,8 @@
+package com.github.charleslzq.facestore.server;
+
+public enum ChangeType {
+    PERSON_UPDATE,
+    FACE_UPDATE,
+    PERSON_DELETE,
+    FACE_DELETE
+}
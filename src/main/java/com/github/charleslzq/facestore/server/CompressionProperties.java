@@ -0,0 +1,15 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.zip.Deflater;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.compression")
+public class CompressionProperties {
+    private boolean enabled = true;
+    private boolean perMessageDeflate = true;
+    private int threshold = 1024;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+}
@@ -0,0 +1,22 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+
+public interface ConditionalFaceStore {
+    long ANY_REVISION = -1;
+
+    long getPersonRevision(String personId);
+
+    long getFaceRevision(String personId, String faceId);
+
+    long getKnownRevision(String personId, String faceId);
+
+    long savePerson(Person person, long expectedRevision);
+
+    long saveFace(String personId, Face face, long expectedRevision);
+
+    void deletePerson(String personId, long expectedRevision);
+
+    void deleteFace(String personId, String faceId, long expectedRevision);
+}
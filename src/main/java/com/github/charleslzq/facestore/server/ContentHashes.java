@@ -0,0 +1,76 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+class ContentHashes {
+    private static final HashFunction HASHING = Hashing.murmur3_128();
+
+    private ContentHashes() {
+    }
+
+    static long personKey(String personId) {
+        return nonZero(HASHING.hashString(personId, StandardCharsets.UTF_8).asLong());
+    }
+
+    static long faceKey(String personId, String faceId) {
+        Hasher hasher = HASHING.newHasher();
+        putString(hasher, personId);
+        putString(hasher, faceId);
+        return nonZero(hasher.hash().asLong());
+    }
+
+    static long hashOf(Person person) {
+        Hasher hasher = HASHING.newHasher();
+        putString(hasher, person.getId());
+        putString(hasher, person.getName());
+        Set<String> tags = person.getTags();
+        hasher.putInt(tags == null ? -1 : tags.size());
+        if (tags != null) {
+            for (String tag : new TreeSet<>(tags)) {
+                putString(hasher, tag);
+            }
+        }
+        putString(hasher, String.valueOf(person.getCreateTime()));
+        putString(hasher, String.valueOf(person.getUpdateTime()));
+        return nonZero(hasher.hash().asLong());
+    }
+
+    static long hashOf(Face face) {
+        Hasher hasher = HASHING.newHasher();
+        putString(hasher, face.getId());
+        byte[] feature = face.getData() == null ? null : face.getData().getMFeatureData();
+        hasher.putInt(feature == null ? -1 : feature.length);
+        if (feature != null) {
+            hasher.putBytes(feature);
+        }
+        putString(hasher, face.getPic());
+        putString(hasher, face.getPicHash());
+        hasher.putBoolean(face.getVersion() != null);
+        if (face.getVersion() != null) {
+            hasher.putInt(face.getVersion().getLFeatureLevel());
+            putString(hasher, face.getVersion().getMVersion());
+        }
+        putString(hasher, String.valueOf(face.getCreateTime()));
+        putString(hasher, String.valueOf(face.getUpdateTime()));
+        return nonZero(hasher.hash().asLong());
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        hasher.putInt(value == null ? -1 : value.length());
+        if (value != null) {
+            hasher.putUnencodedChars(value);
+        }
+    }
+
+    private static long nonZero(long hash) {
+        return hash == LongHashTable.ABSENT ? 1 : hash;
+    }
+}
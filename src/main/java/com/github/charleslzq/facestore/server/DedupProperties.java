@@ -0,0 +1,12 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.dedup")
+public class DedupProperties {
+    private boolean enabled = false;
+    private boolean loadOnMiss = false;
+    private int stripes = 64;
+}
@@ -0,0 +1,12 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.dispatch")
+public class DispatchProperties {
+    private int stripes = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 10000;
+    private long coalesceWindow = 20;
+}
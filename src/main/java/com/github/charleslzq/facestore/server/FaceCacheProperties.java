@@ -0,0 +1,34 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.cache")
+public class FaceCacheProperties {
+    private Spec person = Spec.ofSize(10000);
+    private Spec face = Spec.ofWeight(256L * 1024 * 1024);
+    private boolean compact = false;
+    private int arenaChunkSize = 16 * 1024 * 1024;
+
+    @Data
+    public static class Spec {
+        private long maximumSize = -1;
+        private long maximumWeight = -1;
+        private long expireAfterWrite = -1;
+        private long expireAfterAccess = -1;
+        private boolean recordStats = true;
+
+        static Spec ofSize(long maximumSize) {
+            Spec spec = new Spec();
+            spec.setMaximumSize(maximumSize);
+            return spec;
+        }
+
+        static Spec ofWeight(long maximumWeight) {
+            Spec spec = new Spec();
+            spec.setMaximumWeight(maximumWeight);
+            return spec;
+        }
+    }
+}
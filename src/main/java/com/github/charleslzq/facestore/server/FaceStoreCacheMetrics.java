@@ -0,0 +1,71 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.charleslzq.facestore.server.gallery.CompactCache;
+import com.github.charleslzq.facestore.server.gallery.CompactFaceCache;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@Component
+public class FaceStoreCacheMetrics implements PublicMetrics {
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    @PostConstruct
+    public void setup() {
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof CaffeineCache) {
+                com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+                metricsRegistry.gauge("facestore_cache_size", nativeCache::estimatedSize, "cache", name);
+                metricsRegistry.gauge("facestore_cache_hits", () -> nativeCache.stats().hitCount(), "cache", name);
+                metricsRegistry.gauge("facestore_cache_misses", () -> nativeCache.stats().missCount(), "cache", name);
+                metricsRegistry.gauge("facestore_cache_hit_ratio", () -> nativeCache.stats().hitRate(), "cache", name);
+                metricsRegistry.gauge("facestore_cache_evictions", () -> nativeCache.stats().evictionCount(), "cache", name);
+            } else if (cache instanceof CompactCache) {
+                CompactCache<?> compactCache = (CompactCache<?>) cache;
+                metricsRegistry.gauge("facestore_cache_size", compactCache::size, "cache", name);
+                metricsRegistry.gauge("facestore_cache_evictions", compactCache::getEvictions, "cache", name);
+                if (compactCache instanceof CompactFaceCache) {
+                    CompactFaceCache faceCache = (CompactFaceCache) compactCache;
+                    metricsRegistry.gauge("facestore_cache_feature_bytes", faceCache::getFeatureBytes, "cache", name);
+                    metricsRegistry.gauge("facestore_cache_feature_reserved_bytes", faceCache::getReservedFeatureBytes, "cache", name);
+                    metricsRegistry.gauge("facestore_cache_picture_bytes", faceCache::getPictureBytes, "cache", name);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof CaffeineCache) {
+                com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+                CacheStats stats = nativeCache.stats();
+                String prefix = "facestore.cache." + name + ".";
+                metrics.add(new Metric<>(prefix + "size", nativeCache.estimatedSize()));
+                metrics.add(new Metric<>(prefix + "hits", stats.hitCount()));
+                metrics.add(new Metric<>(prefix + "misses", stats.missCount()));
+                metrics.add(new Metric<>(prefix + "hit.ratio", stats.hitRate()));
+                metrics.add(new Metric<>(prefix + "evictions", stats.evictionCount()));
+                metrics.add(new Metric<>(prefix + "eviction.weight", stats.evictionWeight()));
+            }
+        }
+        return metrics;
+    }
+}
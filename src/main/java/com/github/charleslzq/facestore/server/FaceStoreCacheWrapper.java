@@ -2,128 +2,256 @@ package com.github.charleslzq.facestore.server;
 
 import com.github.charleslzq.facestore.FaceStoreChangeListener;
 import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.message.BulkResult;
+import com.github.charleslzq.facestore.server.message.EntityKey;
+import com.github.charleslzq.facestore.server.message.FaceEntry;
+import com.github.charleslzq.facestore.server.metrics.Counter;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.metrics.Summary;
+import com.github.charleslzq.facestore.server.picture.PictureStore;
 import com.github.charleslzq.facestore.server.type.Face;
 import com.github.charleslzq.facestore.server.type.Person;
+import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Component;
 import rx.Observable;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component("faceStoreCacheWrapper")
-public class FaceStoreCacheWrapper implements ListenableReadWriteFaceStore<Person, Face> {
+public class FaceStoreCacheWrapper implements ListenableReadWriteFaceStore<Person, Face>, BulkFaceStore, ConditionalFaceStore, PagedFaceStore {
+    private final List<FaceStoreChangeListener<Person, Face>> listeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<List<FaceStoreChange<Person, Face>>> pendingChanges = new ThreadLocal<>();
+    private final ConcurrentNavigableMap<String, Set<String>> idIndex = new ConcurrentSkipListMap<>();
+    private final Map<String, Summary> operationTimers = new ConcurrentHashMap<>();
+    private final Object[] writeLocks = new Object[64];
+    private final AtomicLong revisionClock = new AtomicLong();
+    private LongHashTable contentHashes;
+    private LongHashTable revisions;
+    private Counter suppressedPersons;
+    private Counter suppressedFaces;
+    private Counter conflicts;
 
     @Autowired
     @Qualifier("listenableReadWriteFaceStore")
     private ListenableReadWriteFaceStore<Person, Face> internal;
 
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+    @Autowired
+    private PictureStore pictureStore;
+    @Autowired
+    private DedupProperties dedupProperties;
+
+    @PostConstruct
+    public void setup() {
+        for (int index = 0; index < writeLocks.length; index++) {
+            writeLocks[index] = new Object();
+        }
+        contentHashes = new LongHashTable(dedupProperties.getStripes());
+        revisions = new LongHashTable(dedupProperties.getStripes());
+        suppressedPersons = metricsRegistry.counter("facestore_store_suppressed_writes_total", "type", "person");
+        suppressedFaces = metricsRegistry.counter("facestore_store_suppressed_writes_total", "type", "face");
+        conflicts = metricsRegistry.counter("facestore_store_revision_conflicts_total");
+        metricsRegistry.gauge("facestore_store_content_hashes", contentHashes::size);
+        metricsRegistry.gauge("facestore_store_content_hash_bytes", contentHashes::getMemoryBytes);
+        metricsRegistry.gauge("facestore_store_revisions", revisions::size);
+        metricsRegistry.gauge("facestore_store_revision_bytes", revisions::getMemoryBytes);
+        internal.getListeners().add(new ChangeDispatcher());
+        long start = System.currentTimeMillis();
+        internal.getPersonIds().parallelStream().forEach(personId -> faceIdsOf(personId).addAll(internal.getFaceIdList(personId)));
+        log.info("Id index built with {} person(s) in {} ms", idIndex.size(), System.currentTimeMillis() - start);
+    }
+
     @Override
-    @Caching(
-            evict = {
-                    @CacheEvict(cacheNames = CacheNames.PERSON, key = "#person.id"),
-                    @CacheEvict(cacheManager = CacheNames.PERSON_ID_LIST)
-            }
-    )
     public void savePerson(Person person) {
-        internal.savePerson(person);
+        timed("savePerson", () -> writePerson(person, ANY_REVISION));
     }
 
     @Override
-    @Caching(
-            evict = {
-                    @CacheEvict(cacheNames = CacheNames.FACE, key = "#personId + '_' + #face.id"),
-                    @CacheEvict(cacheNames = CacheNames.FACE_ID_LIST, key = "#personId")
-            }
-    )
     public void saveFace(String personId, Face face) {
-        internal.saveFace(personId, face);
+        timed("saveFace", () -> writeFace(personId, face, ANY_REVISION));
     }
 
     @Override
-    @Caching(
-            evict = {
-                    @CacheEvict(cacheNames = CacheNames.PERSON, key = "#personId"),
-                    @CacheEvict(cacheNames = CacheNames.FACE_ID_LIST, key = "#personId"),
-                    @CacheEvict(CacheNames.PERSON_ID_LIST)
-            }
-    )
     public void deletePerson(String personId) {
-        internal.deletePerson(personId);
+        timed("deletePerson", () -> removePerson(personId, ANY_REVISION));
     }
 
     @Override
-    @Caching(
-            evict = {
-                    @CacheEvict(cacheNames = CacheNames.FACE, key = "#personId + '_' + #faceId"),
-                    @CacheEvict(cacheNames = CacheNames.FACE_ID_LIST, key = "#personId")
-            }
-    )
     public void deleteFace(String personId, String faceId) {
-        internal.deleteFace(personId, faceId);
+        timed("deleteFace", () -> removeFace(personId, faceId, ANY_REVISION));
+    }
+
+    @Override
+    public long getPersonRevision(String personId) {
+        long key = ContentHashes.personKey(personId);
+        long known = revisions.get(key);
+        if (known != LongHashTable.ABSENT) {
+            return known - 1;
+        }
+        synchronized (lockOf(personId)) {
+            return currentPersonRevision(personId, key);
+        }
+    }
+
+    @Override
+    public long getFaceRevision(String personId, String faceId) {
+        long key = ContentHashes.faceKey(personId, faceId);
+        long known = revisions.get(key);
+        if (known != LongHashTable.ABSENT) {
+            return known - 1;
+        }
+        synchronized (lockOf(personId)) {
+            return currentFaceRevision(personId, faceId, key);
+        }
+    }
+
+    @Override
+    public long getKnownRevision(String personId, String faceId) {
+        long known = revisions.get(faceId == null ? ContentHashes.personKey(personId) : ContentHashes.faceKey(personId, faceId));
+        return known == LongHashTable.ABSENT ? ANY_REVISION : known - 1;
+    }
+
+    @Override
+    public long savePerson(Person person, long expectedRevision) {
+        return timed("savePersonIf", () -> writePerson(person, expectedRevision));
+    }
+
+    @Override
+    public long saveFace(String personId, Face face, long expectedRevision) {
+        return timed("saveFaceIf", () -> writeFace(personId, face, expectedRevision));
+    }
+
+    @Override
+    public void deletePerson(String personId, long expectedRevision) {
+        timed("deletePersonIf", () -> removePerson(personId, expectedRevision));
+    }
+
+    @Override
+    public void deleteFace(String personId, String faceId, long expectedRevision) {
+        timed("deleteFaceIf", () -> removeFace(personId, faceId, expectedRevision));
+    }
+
+    @Override
+    public List<BulkResult> savePersons(List<Person> persons) {
+        return timed("savePersons", () -> inBatch(() -> {
+            List<BulkResult> results = new ArrayList<>(persons.size());
+            for (Person person : persons) {
+                results.add(apply(person.getId(), null, () -> writePerson(person, ANY_REVISION)));
+            }
+            return results;
+        }));
+    }
+
+    @Override
+    public List<BulkResult> saveFaces(List<FaceEntry> faces) {
+        return timed("saveFaces", () -> inBatch(() -> {
+            List<BulkResult> results = new ArrayList<>(faces.size());
+            for (FaceEntry entry : faces) {
+                results.add(apply(entry.getPersonId(), entry.getFace().getId(), () -> writeFace(entry.getPersonId(), entry.getFace(), ANY_REVISION)));
+            }
+            return results;
+        }));
+    }
+
+    @Override
+    public List<BulkResult> deleteAll(List<EntityKey> keys) {
+        return timed("deleteAll", () -> inBatch(() -> {
+            List<BulkResult> results = new ArrayList<>(keys.size());
+            for (EntityKey key : keys) {
+                results.add(apply(key.getPersonId(), key.getFaceId(), key.getFaceId() == null
+                        ? () -> removePerson(key.getPersonId(), ANY_REVISION)
+                        : () -> removeFace(key.getPersonId(), key.getFaceId(), ANY_REVISION)));
+            }
+            return results;
+        }));
     }
 
     @NotNull
     @Override
-    @Cacheable(CacheNames.PERSON_ID_LIST)
     public List<String> getPersonIds() {
-        return internal.getPersonIds();
+        return new ArrayList<>(idIndex.keySet());
+    }
+
+    @Override
+    public List<String> getPersonIdsAfter(String after, int limit) {
+        return (after == null ? idIndex.navigableKeySet() : idIndex.tailMap(after, false).navigableKeySet()).stream()
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     @NotNull
     @Override
     public Observable<String> getPersonIdsAsObservable() {
-        return internal.getPersonIdsAsObservable();
+        return Observable.defer(() -> Observable.from(getPersonIds()));
     }
 
     @Nullable
     @Override
     @Cacheable(cacheNames = CacheNames.PERSON, key = "#personId")
     public Person getPerson(String personId) {
-        return internal.getPerson(personId);
+        return timed("getPerson", () -> internal.getPerson(personId));
     }
 
     @NotNull
     @Override
     public Observable<Person> getPersonAsObservable(String personId) {
-        return internal.getPersonAsObservable(personId);
+        return cached(CacheNames.PERSON, personId, Person.class, () -> internal.getPersonAsObservable(personId));
     }
 
     @NotNull
     @Override
-    @Cacheable(cacheNames = CacheNames.FACE_ID_LIST, key = "#personId")
     public List<String> getFaceIdList(String personId) {
-        return internal.getFaceIdList(personId);
+        Set<String> faceIds = idIndex.get(personId);
+        return faceIds == null ? new ArrayList<>() : new ArrayList<>(faceIds);
     }
 
     @NotNull
     @Override
     public Observable<String> getFaceIdListAsObservable(String personId) {
-        return internal.getFaceIdListAsObservable(personId);
+        return Observable.defer(() -> Observable.from(getFaceIdList(personId)));
     }
 
     @Nullable
     @Override
     @Cacheable(cacheNames = CacheNames.FACE, key = "#personId + '_' + #faceId")
     public Face getFace(String personId, String faceId) {
-        return internal.getFace(personId, faceId);
+        return timed("getFace", () -> migrated(personId, internal.getFace(personId, faceId)));
     }
 
     @NotNull
     @Override
     public Observable<Face> getFaceAsObservable(String personId, String faceId) {
-        return internal.getFaceAsObservable(personId, faceId);
+        return cached(CacheNames.FACE, personId + '_' + faceId, Face.class, () -> internal.getFaceAsObservable(personId, faceId).map(face -> migrated(personId, face)));
     }
 
     @NotNull
     @Override
     public List<FaceStoreChangeListener<Person, Face>> getListeners() {
-        return internal.getListeners();
+        return listeners;
     }
 
     @NotNull
@@ -138,10 +266,288 @@ public class FaceStoreCacheWrapper implements ListenableReadWriteFaceStore<Perso
         return Face.class;
     }
 
+    private <T> Observable<T> cached(String cacheName, String key, Class<T> type, Supplier<Observable<T>> source) {
+        return Observable.defer(() -> {
+            Cache cache = cacheManager.getCache(cacheName);
+            T value = cache == null ? null : cache.get(key, type);
+            if (value != null) {
+                return Observable.just(value);
+            }
+            Observable<T> loaded = source.get();
+            return cache == null ? loaded : loaded.doOnNext(item -> cache.put(key, item));
+        });
+    }
+
+    private void timed(String operation, Runnable call) {
+        timed(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private <T> T timed(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            operationTimers.computeIfAbsent(operation, name -> metricsRegistry.timer("facestore_store_operation_seconds", "operation", name))
+                    .recordNanos(start);
+        }
+    }
+
+    private long writePerson(Person person, long expectedRevision) {
+        long key = ContentHashes.personKey(person.getId());
+        long hash = dedupProperties.isEnabled() ? ContentHashes.hashOf(person) : LongHashTable.ABSENT;
+        synchronized (lockOf(person.getId())) {
+            long current = currentPersonRevision(person.getId(), key);
+            checkRevision(person.getId(), null, expectedRevision, current);
+            if (isUnchanged(key, hash)) {
+                suppressedPersons.increment();
+                person.setRevision(current);
+                return current;
+            }
+            person.setRevision(nextRevision(current));
+            internal.savePerson(person);
+            evict(CacheNames.PERSON, person.getId());
+            return person.getRevision();
+        }
+    }
+
+    private long writeFace(String personId, Face face, long expectedRevision) {
+        Face detached = pictureStore.detach(face);
+        long key = ContentHashes.faceKey(personId, detached.getId());
+        long hash = dedupProperties.isEnabled() ? ContentHashes.hashOf(detached) : LongHashTable.ABSENT;
+        synchronized (lockOf(personId)) {
+            long current = currentFaceRevision(personId, detached.getId(), key);
+            checkRevision(personId, detached.getId(), expectedRevision, current);
+            if (isUnchanged(key, hash)) {
+                suppressedFaces.increment();
+                detached.setRevision(current);
+                return current;
+            }
+            detached.setRevision(nextRevision(current));
+            internal.saveFace(personId, detached);
+            evict(CacheNames.FACE, personId + '_' + detached.getId());
+            return detached.getRevision();
+        }
+    }
+
+    private void removePerson(String personId, long expectedRevision) {
+        synchronized (lockOf(personId)) {
+            if (expectedRevision != ANY_REVISION) {
+                checkRevision(personId, null, expectedRevision, currentPersonRevision(personId, ContentHashes.personKey(personId)));
+            }
+            internal.deletePerson(personId);
+            evict(CacheNames.PERSON, personId);
+        }
+    }
+
+    private void removeFace(String personId, String faceId, long expectedRevision) {
+        synchronized (lockOf(personId)) {
+            if (expectedRevision != ANY_REVISION) {
+                checkRevision(personId, faceId, expectedRevision, currentFaceRevision(personId, faceId, ContentHashes.faceKey(personId, faceId)));
+            }
+            internal.deleteFace(personId, faceId);
+            evict(CacheNames.FACE, personId + '_' + faceId);
+        }
+    }
+
+    private long currentPersonRevision(String personId, long key) {
+        long known = revisions.get(key);
+        if (known == LongHashTable.ABSENT) {
+            Person stored = internal.getPerson(personId);
+            if (stored == null) {
+                return 0;
+            }
+            known = remember(key, stored.getRevision(), () -> ContentHashes.hashOf(stored));
+        }
+        return known - 1;
+    }
+
+    private long currentFaceRevision(String personId, String faceId, long key) {
+        long known = revisions.get(key);
+        if (known == LongHashTable.ABSENT) {
+            Face stored = migrated(personId, internal.getFace(personId, faceId));
+            if (stored == null) {
+                return 0;
+            }
+            known = remember(key, stored.getRevision(), () -> ContentHashes.hashOf(stored));
+        }
+        return known - 1;
+    }
+
+    private long remember(long key, long revision, LongSupplier hash) {
+        revisions.put(key, revision + 1);
+        if (dedupProperties.isEnabled() && dedupProperties.isLoadOnMiss() && contentHashes.get(key) == LongHashTable.ABSENT) {
+            contentHashes.put(key, hash.getAsLong());
+        }
+        return revision + 1;
+    }
+
+    private void checkRevision(String personId, String faceId, long expectedRevision, long currentRevision) {
+        if (expectedRevision != ANY_REVISION && expectedRevision != currentRevision) {
+            conflicts.increment();
+            throw new RevisionConflictException(personId, faceId, expectedRevision, currentRevision);
+        }
+    }
+
+    private long nextRevision(long currentRevision) {
+        long now = System.currentTimeMillis() * 1000;
+        return Math.max(currentRevision + 1, revisionClock.accumulateAndGet(now, (last, clock) -> Math.max(last + 1, clock)));
+    }
+
+    private boolean isUnchanged(long key, long hash) {
+        return hash != LongHashTable.ABSENT && contentHashes.get(key) == hash;
+    }
+
+    private Face migrated(String personId, Face face) {
+        if (face == null || face.getPic() == null || !pictureStore.isEnabled()) {
+            return face;
+        }
+        synchronized (lockOf(personId)) {
+            Face stored = internal.getFace(personId, face.getId());
+            if (stored == null || stored.getPic() == null) {
+                return stored;
+            }
+            try {
+                pictureStore.detach(stored);
+            } catch (IllegalArgumentException e) {
+                log.warn("Keep inline picture of face {} of person {}: {}", face.getId(), personId, e.getMessage());
+                return stored;
+            }
+            internal.saveFace(personId, stored);
+            evict(CacheNames.FACE, personId + '_' + stored.getId());
+            log.debug("Moved inline picture of face {} of person {} to picture store", stored.getId(), personId);
+            return stored;
+        }
+    }
+
+    private Object lockOf(String personId) {
+        return writeLocks[(personId.hashCode() & Integer.MAX_VALUE) % writeLocks.length];
+    }
+
+    private void evict(String cacheName, String key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(key);
+        }
+    }
+
+    private BulkResult apply(String personId, String faceId, Runnable operation) {
+        try {
+            operation.run();
+            return new BulkResult(personId, faceId, true, null);
+        } catch (RuntimeException e) {
+            return new BulkResult(personId, faceId, false, e.getMessage());
+        }
+    }
+
+    private <T> T inBatch(Supplier<T> operation) {
+        if (pendingChanges.get() != null) {
+            return operation.get();
+        }
+        List<FaceStoreChange<Person, Face>> changes = new ArrayList<>();
+        pendingChanges.set(changes);
+        try {
+            return operation.get();
+        } finally {
+            pendingChanges.remove();
+            if (!changes.isEmpty()) {
+                for (FaceStoreChangeListener<Person, Face> listener : listeners) {
+                    if (listener instanceof BatchFaceStoreChangeListener) {
+                        ((BatchFaceStoreChangeListener<Person, Face>) listener).onBatch(changes);
+                    } else {
+                        changes.forEach(change -> change.dispatch(listener));
+                    }
+                }
+            }
+        }
+    }
+
+    private class ChangeDispatcher implements FaceStoreChangeListener<Person, Face> {
+        @Override
+        public void onPersonUpdate(Person person) {
+            dispatch(new FaceStoreChange<>(ChangeType.PERSON_UPDATE, person.getId(), null, person, null));
+        }
+
+        @Override
+        public void onFaceUpdate(String personId, Face face) {
+            dispatch(new FaceStoreChange<>(ChangeType.FACE_UPDATE, personId, face.getId(), null, face));
+        }
+
+        @Override
+        public void onPersonDelete(String personId) {
+            dispatch(new FaceStoreChange<>(ChangeType.PERSON_DELETE, personId, null, null, null));
+        }
+
+        @Override
+        public void onFaceDelete(String personId, String faceId) {
+            dispatch(new FaceStoreChange<>(ChangeType.FACE_DELETE, personId, faceId, null, null));
+        }
+
+        private void dispatch(FaceStoreChange<Person, Face> change) {
+            index(change);
+            List<FaceStoreChange<Person, Face>> changes = pendingChanges.get();
+            if (changes != null) {
+                changes.add(change);
+            } else {
+                listeners.forEach(change::dispatch);
+            }
+        }
+    }
+
+    private void index(FaceStoreChange<Person, Face> change) {
+        switch (change.getType()) {
+            case PERSON_UPDATE:
+                faceIdsOf(change.getPersonId());
+                long personKey = ContentHashes.personKey(change.getPersonId());
+                revisions.put(personKey, change.getPerson().getRevision() + 1);
+                if (dedupProperties.isEnabled()) {
+                    contentHashes.put(personKey, ContentHashes.hashOf(change.getPerson()));
+                }
+                break;
+            case FACE_UPDATE:
+                faceIdsOf(change.getPersonId()).add(change.getFaceId());
+                long faceKey = ContentHashes.faceKey(change.getPersonId(), change.getFaceId());
+                revisions.put(faceKey, change.getFace().getRevision() + 1);
+                if (dedupProperties.isEnabled()) {
+                    contentHashes.put(faceKey, ContentHashes.hashOf(change.getFace()));
+                }
+                break;
+            case PERSON_DELETE:
+                Set<String> faceIds = idIndex.remove(change.getPersonId());
+                Cache faceCache = cacheManager.getCache(CacheNames.FACE);
+                forget(ContentHashes.personKey(change.getPersonId()));
+                if (faceIds != null) {
+                    for (String faceId : faceIds) {
+                        forget(ContentHashes.faceKey(change.getPersonId(), faceId));
+                        if (faceCache != null) {
+                            faceCache.evict(change.getPersonId() + '_' + faceId);
+                        }
+                    }
+                }
+                break;
+            case FACE_DELETE:
+                Set<String> remaining = idIndex.get(change.getPersonId());
+                if (remaining != null) {
+                    remaining.remove(change.getFaceId());
+                }
+                forget(ContentHashes.faceKey(change.getPersonId(), change.getFaceId()));
+                break;
+        }
+    }
+
+    private void forget(long key) {
+        contentHashes.remove(key);
+        revisions.remove(key);
+    }
+
+    private Set<String> faceIdsOf(String personId) {
+        return idIndex.computeIfAbsent(personId, id -> new ConcurrentSkipListSet<>());
+    }
+
     public static class CacheNames {
-        static final String PERSON_ID_LIST = "personIdList";
         static final String PERSON = "person";
         static final String FACE = "face";
-        static final String FACE_ID_LIST = "faceIdList";
     }
 }
@@ -0,0 +1,33 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.Meta;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FaceStoreChange<P extends Meta, F extends Meta> {
+    private final ChangeType type;
+    private final String personId;
+    private final String faceId;
+    private final P person;
+    private final F face;
+
+    public void dispatch(FaceStoreChangeListener<P, F> listener) {
+        switch (type) {
+            case PERSON_UPDATE:
+                listener.onPersonUpdate(person);
+                break;
+            case FACE_UPDATE:
+                listener.onFaceUpdate(personId, face);
+                break;
+            case PERSON_DELETE:
+                listener.onPersonDelete(personId);
+                break;
+            case FACE_DELETE:
+                listener.onFaceDelete(personId, faceId);
+                break;
+        }
+    }
+}
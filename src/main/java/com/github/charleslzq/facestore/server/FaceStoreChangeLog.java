@@ -0,0 +1,180 @@
+package com.github.charleslzq.facestore.server;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.LocalDateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Slf4j
+@Component
+public class FaceStoreChangeLog implements FaceStoreChangeListener<Person, Face> {
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
+    private final Deque<ChangeEvent> events = new ArrayDeque<>();
+    @Autowired
+    @Qualifier("faceStoreCacheWrapper")
+    private ListenableReadWriteFaceStore<Person, Face> faceStore;
+    @Autowired
+    private FaceStoreProperties faceStoreProperties;
+    @Autowired
+    private ChangeLogProperties changeLogProperties;
+    private File file;
+    private Writer writer;
+    private long sequence = 0;
+    private int fileEntries = 0;
+
+    @PostConstruct
+    public void setup() throws IOException {
+        file = new File(changeLogProperties.getFile() != null
+                ? changeLogProperties.getFile()
+                : faceStoreProperties.getDirectory() + ".changelog");
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        load();
+        writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        faceStore.getListeners().add(this);
+        log.info("Change log {} loaded with {} event(s), head at {}", file, events.size(), sequence);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public synchronized Optional<List<ChangeEvent>> since(long cursor) {
+        if (cursor > sequence || cursor < 0) {
+            return Optional.empty();
+        }
+        if (cursor == sequence) {
+            return Optional.of(Collections.emptyList());
+        }
+        ChangeEvent oldest = events.peekFirst();
+        if (oldest == null || oldest.getSequence() > cursor + 1) {
+            return Optional.empty();
+        }
+        Map<String, ChangeEvent> coalesced = new LinkedHashMap<>();
+        events.stream()
+                .filter(event -> event.getSequence() > cursor)
+                .forEach(event -> {
+                    coalesced.remove(event.getKey());
+                    coalesced.put(event.getKey(), event);
+                });
+        return Optional.of(new ArrayList<>(coalesced.values()));
+    }
+
+    @Override
+    public void onPersonUpdate(Person person) {
+        append(ChangeType.PERSON_UPDATE, person.getId(), null);
+    }
+
+    @Override
+    public void onFaceUpdate(String personId, Face face) {
+        append(ChangeType.FACE_UPDATE, personId, face.getId());
+    }
+
+    @Override
+    public void onPersonDelete(String personId) {
+        append(ChangeType.PERSON_DELETE, personId, null);
+    }
+
+    @Override
+    public void onFaceDelete(String personId, String faceId) {
+        append(ChangeType.FACE_DELETE, personId, faceId);
+    }
+
+    private synchronized long append(ChangeType type, String personId, String faceId) {
+        ChangeEvent event = new ChangeEvent(++sequence, type, personId, faceId, LocalDateTime.now());
+        add(event);
+        try {
+            writer.write(gson.toJson(event));
+            writer.write('\n');
+            writer.flush();
+            if (++fileEntries > 2 * changeLogProperties.getCapacity()) {
+                rewrite();
+            }
+        } catch (IOException e) {
+            log.error("Error writing change log " + file, e);
+        }
+        return event.getSequence();
+    }
+
+    private void add(ChangeEvent event) {
+        events.addLast(event);
+        while (events.size() > changeLogProperties.getCapacity()) {
+            events.removeFirst();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            reader.lines().forEach(line -> {
+                try {
+                    ChangeEvent event = gson.fromJson(line, ChangeEvent.class);
+                    if (event != null && event.getSequence() > sequence) {
+                        sequence = event.getSequence();
+                        fileEntries++;
+                        add(event);
+                    }
+                } catch (JsonParseException e) {
+                    log.warn("Skip corrupted change log entry {}", line);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void rewrite() throws IOException {
+        writer.close();
+        try {
+            File temp = new File(file.getPath() + ".tmp");
+            try (BufferedWriter tempWriter = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                for (ChangeEvent event : events) {
+                    tempWriter.write(gson.toJson(event));
+                    tempWriter.write('\n');
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileEntries = events.size();
+        } finally {
+            writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+}
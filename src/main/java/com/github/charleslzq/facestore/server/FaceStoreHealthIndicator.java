@@ -1,10 +1,12 @@
 package com.github.charleslzq.facestore.server;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.github.charleslzq.facestore.server.message.ClientMessagePayloadType;
+import com.github.charleslzq.facestore.server.metrics.LatencyHistogram;
+import com.github.charleslzq.facestore.server.metrics.RateWindow;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.joda.time.DateTimeZone;
@@ -15,20 +17,47 @@ import org.springframework.boot.actuate.health.Health;
 import org.springframework.stereotype.Component;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 @Component
 public class FaceStoreHealthIndicator extends AbstractHealthIndicator {
-    private final Set<InetSocketAddress> clients = new CopyOnWriteArraySet<>();
-    private final List<ClientMessage> clientMessages = new CopyOnWriteArrayList<>();
+    private static final int RECENT_MESSAGES = 20;
+    private static final int MAX_ADDRESSES = 1024;
+    private static final String OTHER_ADDRESSES = "Others";
+    private final Map<InetSocketAddress, OutboundSession> clients = new ConcurrentHashMap<>();
+    private final LongAdder received = new LongAdder();
+    private final Map<String, MessageStatistics> addressStatistics = new ConcurrentHashMap<>();
+    private final Map<ClientMessagePayloadType, MessageStatistics> typeStatistics = new EnumMap<>(ClientMessagePayloadType.class);
+    private final AtomicReferenceArray<ClientMessage> recentMessages = new AtomicReferenceArray<>(RECENT_MESSAGES);
+    private final AtomicLong recentCursor = new AtomicLong();
+    private final RateWindow rateWindow = new RateWindow(60);
+    private volatile StripedChangeDispatcher<?, ?> changeDispatcher;
+    private volatile GalleryLoader galleryLoader;
 
-    public void addClient(InetSocketAddress address) {
-        clients.add(address);
+    public FaceStoreHealthIndicator() {
+        for (ClientMessagePayloadType type : ClientMessagePayloadType.values()) {
+            typeStatistics.put(type, new MessageStatistics());
+        }
+    }
+
+    public void setChangeDispatcher(StripedChangeDispatcher<?, ?> changeDispatcher) {
+        this.changeDispatcher = changeDispatcher;
+    }
+
+    public void setGalleryLoader(GalleryLoader galleryLoader) {
+        this.galleryLoader = galleryLoader;
+    }
+
+    public void addClient(InetSocketAddress address, OutboundSession outboundSession) {
+        clients.put(address, outboundSession);
     }
 
     public void removeClient(InetSocketAddress address) {
@@ -36,47 +65,117 @@ public class FaceStoreHealthIndicator extends AbstractHealthIndicator {
     }
 
     public void recordClientMessage(ClientMessage clientMessage) {
-        clientMessages.add(clientMessage);
+        long micros = clientMessage.getDurationMillis() * 1000;
+        received.increment();
+        rateWindow.mark();
+        typeStatistics.get(clientMessage.getType()).record(micros);
+        String address = String.valueOf(clientMessage.getAddress());
+        MessageStatistics statistics = addressStatistics.get(address);
+        if (statistics == null) {
+            statistics = addressStatistics.computeIfAbsent(
+                    addressStatistics.size() < MAX_ADDRESSES ? address : OTHER_ADDRESSES,
+                    key -> new MessageStatistics()
+            );
+        }
+        statistics.record(micros);
+        recentMessages.set((int) (recentCursor.getAndIncrement() % RECENT_MESSAGES), clientMessage);
     }
 
     @Override
     protected void doHealthCheck(Health.Builder builder) {
-        if (clients.size() > 0) {
+        if (galleryLoader != null && !galleryLoader.isReady()) {
+            builder.outOfService();
+        } else if (clients.size() > 0) {
             builder.up();
         } else {
             builder.unknown();
         }
-        builder.withDetail("Active Clients", clients);
+        builder.withDetail("Active Clients", clients.keySet());
+        builder.withDetail("Outbound Queues", clients.entrySet().stream().collect(Collectors.toMap(
+                entry -> entry.getKey().toString(),
+                entry -> entry.getValue().getStatistics()
+        )));
+        if (changeDispatcher != null) {
+            builder.withDetail("Change Dispatch", changeDispatcher.getStatistics());
+        }
+        if (galleryLoader != null) {
+            builder.withDetail("Gallery Loading", galleryLoader.getStatistics());
+        }
+        Map<String, MessageStatistics> activeTypes = typeStatistics.entrySet().stream()
+                .filter(entry -> entry.getValue().getCount() > 0)
+                .collect(Collectors.toMap(entry -> entry.getKey().name(), Map.Entry::getValue));
         builder.withDetail("Client Messages", ImmutableMap.<String, Object>builder()
-                .put("Received in all", clientMessages.size())
-                .put("Address Counting", clientMessages.stream().collect(Collectors.groupingBy(
-                        ClientMessage::getAddress,
-                        Collectors.counting()
+                .put("Received in all", received.sum())
+                .put("Address Counting", addressStatistics.entrySet().stream().collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        entry -> entry.getValue().getCount()
                 )))
-                .put("Type Counting", clientMessages.stream().collect(Collectors.groupingBy(
-                        clientMessage -> clientMessage.type.name(),
-                        Collectors.counting()
+                .put("Type Counting", activeTypes.entrySet().stream().collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        entry -> entry.getValue().getCount()
                 )))
                 .put("Time statistics", ImmutableMap.of(
-                        "Address Distribution", clientMessages.stream().collect(Collectors.groupingBy(
-                                ClientMessage::getAddress
-                        )).entrySet().stream().collect(Collectors.toMap(
+                        "Address Distribution", addressStatistics.entrySet().stream().collect(Collectors.toMap(
                                 Map.Entry::getKey,
-                                entry -> entry.getValue().stream().map(ClientMessage::getDuration).reduce(0.0, (a, b) -> a + b) / entry.getValue().size()
+                                entry -> entry.getValue().getMeanSeconds()
                         )),
-                        "Type Distribution", clientMessages.stream().collect(Collectors.groupingBy(
-                                clientMessage -> clientMessage.type.name()
-                        )).entrySet().stream().collect(Collectors.toMap(
+                        "Type Distribution", activeTypes.entrySet().stream().collect(Collectors.toMap(
                                 Map.Entry::getKey,
-                                entry -> entry.getValue().stream().map(ClientMessage::getDuration).reduce(0.0, (a, b) -> a + b) / entry.getValue().size()
+                                entry -> entry.getValue().getMeanSeconds()
                         ))
                 ))
-                .put("Recent 20 Messages", Lists.reverse(clientMessages).stream().limit(20).collect(Collectors.toList()))
+                .put("Latency Percentiles", activeTypes.entrySet().stream().collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        entry -> entry.getValue().getPercentiles()
+                )))
+                .put("Rates", ImmutableMap.of(
+                        "1 Second", rateWindow.rate(1),
+                        "10 Seconds", rateWindow.rate(10),
+                        "60 Seconds", rateWindow.rate(60)
+                ))
+                .put("Recent 20 Messages", recentMessages())
                 .build()
         );
 
     }
 
+    private List<ClientMessage> recentMessages() {
+        long cursor = recentCursor.get();
+        List<ClientMessage> messages = new ArrayList<>(RECENT_MESSAGES);
+        for (long index = cursor - 1; index >= 0 && index >= cursor - RECENT_MESSAGES; index--) {
+            ClientMessage message = recentMessages.get((int) (index % RECENT_MESSAGES));
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    private static class MessageStatistics {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private void record(long micros) {
+            histogram.record(micros);
+        }
+
+        private long getCount() {
+            return histogram.getCount();
+        }
+
+        private double getMeanSeconds() {
+            return histogram.getMean() / 1e6;
+        }
+
+        private Map<String, Double> getPercentiles() {
+            return ImmutableMap.of(
+                    "p50 Millis", histogram.percentile(50) / 1e3,
+                    "p99 Millis", histogram.percentile(99) / 1e3,
+                    "p999 Millis", histogram.percentile(99.9) / 1e3,
+                    "Max Millis", histogram.getMax() / 1e3
+            );
+        }
+    }
+
     @Data
     @AllArgsConstructor
     public static class ClientMessage {
@@ -90,7 +189,12 @@ public class FaceStoreHealthIndicator extends AbstractHealthIndicator {
 
         @JsonInclude
         public Double getDuration() {
-            return new Duration(startTime.toDateTime(DateTimeZone.UTC), endTime.toDateTime(DateTimeZone.UTC)).getMillis() / 1000.0;
+            return getDurationMillis() / 1000.0;
+        }
+
+        @JsonIgnore
+        public long getDurationMillis() {
+            return new Duration(startTime.toDateTime(DateTimeZone.UTC), endTime.toDateTime(DateTimeZone.UTC)).getMillis();
         }
     }
 }
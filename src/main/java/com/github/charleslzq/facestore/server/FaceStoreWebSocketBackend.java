@@ -1,13 +1,27 @@
 package com.github.charleslzq.facestore.server;
 
 import com.fatboyindustrial.gsonjodatime.Converters;
-import com.github.charleslzq.facestore.FaceStoreChangeListener;
 import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.message.BulkResult;
 import com.github.charleslzq.facestore.server.message.ClientMessagePayloadType;
+import com.github.charleslzq.facestore.server.message.EntityKey;
+import com.github.charleslzq.facestore.server.message.EntityRevisions;
+import com.github.charleslzq.facestore.server.message.FaceEntry;
+import com.github.charleslzq.facestore.server.message.InboundMessage;
+import com.github.charleslzq.facestore.server.message.JsonMessageCodec;
 import com.github.charleslzq.facestore.server.message.Message;
+import com.github.charleslzq.facestore.server.message.MessageCodec;
 import com.github.charleslzq.facestore.server.message.MessageHeaders;
 import com.github.charleslzq.facestore.server.message.ServerMessagePayloadType;
+import com.github.charleslzq.facestore.server.message.Timestamps;
+import com.github.charleslzq.facestore.server.message.Subscription;
+import com.github.charleslzq.facestore.server.metrics.Counter;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.metrics.Summary;
+import com.github.charleslzq.facestore.server.search.FaceSearchEngine;
+import com.github.charleslzq.facestore.server.search.SearchHit;
 import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Feature;
 import com.github.charleslzq.facestore.server.type.Person;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
@@ -17,124 +31,284 @@ import lombok.extern.slf4j.Slf4j;
 import org.joda.time.LocalDateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.core.task.AsyncTaskExecutor;
-import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
 
 import javax.annotation.PostConstruct;
-import java.io.IOException;
+import javax.annotation.PreDestroy;
 import java.net.InetSocketAddress;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
-public class FaceStoreWebSocketBackend implements WebSocketHandler, FaceStoreChangeListener<Person, Face> {
+public class FaceStoreWebSocketBackend implements WebSocketHandler, BatchFaceStoreChangeListener<Person, Face> {
     private static final String HEART_BEAT_MESSAGE = "@heart";
-    private static final TypeToken<Message<Object>> RAW_CLIENT_MESSAGE_TYPE = new TypeToken<Message<Object>>() {
-    };
-    private static final TypeToken<Message<Person>> PERSON_MESSAGE_TYPE = new TypeToken<Message<Person>>() {
-    };
-    private static final TypeToken<Message<Face>> FACE_MESSAGE_TYPE = new TypeToken<Message<Face>>() {
-    };
     private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
-    private final Map<InetSocketAddress, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    @Autowired(required = false)
-    private AsyncTaskExecutor asyncTaskExecutor = new SimpleAsyncTaskExecutor();
+    private final Map<InetSocketAddress, OutboundSession> sessions = new ConcurrentHashMap<>();
+    private final Map<ClientMessagePayloadType, Counter> requestCounters = new EnumMap<>(ClientMessagePayloadType.class);
+    private final Map<ClientMessagePayloadType, Counter> fastRejectionCounters = new EnumMap<>(ClientMessagePayloadType.class);
+    private final Map<String, Summary> decodeTimers = new HashMap<>();
+    private final Map<String, Summary> encodeTimers = new HashMap<>();
+    private final Map<String, Summary> encodeBytes = new HashMap<>();
+    private final Map<String, Summary> refreshTimers = new HashMap<>();
     @Autowired
     @Qualifier("faceStoreCacheWrapper")
     private ListenableReadWriteFaceStore<Person, Face> faceStore;
     @Autowired
+    @Qualifier("faceStoreCacheWrapper")
+    private BulkFaceStore bulkFaceStore;
+    @Autowired
+    @Qualifier("faceStoreCacheWrapper")
+    private ConditionalFaceStore conditionalFaceStore;
+    @Autowired
     private FaceStoreHealthIndicator faceStoreHealthIndicator;
+    @Autowired
+    private SnapshotStreamer snapshotStreamer;
+    @Autowired
+    private FaceStoreChangeLog faceStoreChangeLog;
+    @Autowired(required = false)
+    private FaceSearchEngine faceSearchEngine;
+    @Autowired
+    private SessionProperties sessionProperties;
+    @Autowired
+    private List<MessageCodec<?>> messageCodecs;
+    @Autowired
+    private JsonMessageCodec jsonMessageCodec;
+    @Autowired
+    private WriteBehindQueue writeBehindQueue;
+    @Autowired
+    private ReadProperties readProperties;
+    @Autowired
+    private DispatchProperties dispatchProperties;
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+    @Autowired
+    private CompressionProperties compressionProperties;
+    private StripedChangeDispatcher<Person, Face> changeDispatcher;
+    private SubscriptionIndex subscriptionIndex;
+    private ExecutorService sessionWriter;
+    private ExecutorService reader;
+    private ExecutorService streamer;
+    private Scheduler readScheduler;
+    private Scheduler streamScheduler;
+    private Counter skippedPersons;
+    private Counter skippedFaces;
+    private Summary broadcastTimer;
+    private Summary fanoutSessions;
 
     @PostConstruct
     public void setup() {
-        faceStore.getListeners().add(new AsyncFaceDataChangeListener<>(asyncTaskExecutor, this));
-    }
-
-    public void handleMessage(WebSocketSession webSocketSession, WebSocketMessage<?> webSocketMessage) {
-        if (webSocketMessage instanceof TextMessage) {
-            TextMessage textMessage = (TextMessage) webSocketMessage;
-            String content = textMessage.getPayload();
-            if (!HEART_BEAT_MESSAGE.equals(content)) {
-                Message<Object> rawMessage = gson.fromJson(content, RAW_CLIENT_MESSAGE_TYPE.getType());
-                Map<String, String> headers = rawMessage.getHeaders();
-                ClientMessagePayloadType type = ClientMessagePayloadType.valueOf(headers.get(MessageHeaders.TYPE_HEADER));
-                String token = headers.get(MessageHeaders.TOKEN);
-                LocalDateTime startTime = LocalDateTime.now();
-                LocalDateTime clientSentTime = gson.fromJson(headers.get(MessageHeaders.TIMESTAMP), LocalDateTime.class);
-                log.info("Handling client Request {} with token {} sent at {}", type, token, clientSentTime);
-                switch (type) {
-                    case REFRESH:
-                        List<String> persons = faceStore.getPersonIds();
+        for (ClientMessagePayloadType type : ClientMessagePayloadType.values()) {
+            requestCounters.put(type, metricsRegistry.counter("facestore_requests_total", "type", type.name()));
+            fastRejectionCounters.put(type, metricsRegistry.counter("facestore_conflict_fast_rejections_total", "type", type.name()));
+        }
+        for (MessageCodec<?> codec : messageCodecs) {
+            decodeTimers.put(codec.getProtocol(), metricsRegistry.timer("facestore_message_decode_seconds", "codec", codec.getProtocol()));
+            encodeTimers.put(codec.getProtocol(), metricsRegistry.timer("facestore_message_encode_seconds", "codec", codec.getProtocol()));
+            encodeBytes.put(codec.getProtocol(), metricsRegistry.summary("facestore_message_encode_bytes", "codec", codec.getProtocol()));
+        }
+        for (int bound = 100; bound <= 1000000; bound *= 10) {
+            refreshTimers.put(galleryBucket(bound), metricsRegistry.timer("facestore_refresh_seconds", "gallery", galleryBucket(bound)));
+        }
+        refreshTimers.put(galleryBucket(Integer.MAX_VALUE), metricsRegistry.timer("facestore_refresh_seconds", "gallery", galleryBucket(Integer.MAX_VALUE)));
+        skippedPersons = metricsRegistry.counter("facestore_refresh_skipped_total", "type", "person");
+        skippedFaces = metricsRegistry.counter("facestore_refresh_skipped_total", "type", "face");
+        broadcastTimer = metricsRegistry.timer("facestore_broadcast_seconds");
+        fanoutSessions = metricsRegistry.summary("facestore_broadcast_fanout_sessions");
+        sessionWriter = Executors.newFixedThreadPool(sessionProperties.getWriterThreads());
+        reader = Executors.newFixedThreadPool(readProperties.getIoThreads());
+        streamer = Executors.newFixedThreadPool(readProperties.getStreamThreads());
+        readScheduler = Schedulers.from(reader);
+        streamScheduler = Schedulers.from(streamer);
+        subscriptionIndex = new SubscriptionIndex(faceStore::getPerson, faceStore::getPersonIds);
+        changeDispatcher = new StripedChangeDispatcher<>(this, dispatchProperties, () -> sessions.values().forEach(OutboundSession::markGap));
+        faceStore.getListeners().add(changeDispatcher);
+        faceStoreHealthIndicator.setChangeDispatcher(changeDispatcher);
+    }
+
+    @PreDestroy
+    public void close() {
+        changeDispatcher.close();
+        sessionWriter.shutdown();
+        reader.shutdown();
+        streamer.shutdown();
+    }
+
+    public void handleMessage(WebSocketSession webSocketSession, WebSocketMessage<?> received) {
+        WebSocketMessage<?> webSocketMessage = inflate(webSocketSession, received);
+        Optional<MessageCodec<?>> decoder = messageCodecs.stream().filter(codec -> codec.supports(webSocketMessage)).findFirst();
+        if (decoder.isPresent() && !isHeartBeat(webSocketMessage)) {
+            long decodeStart = System.nanoTime();
+            InboundMessage inboundMessage = decoder.get().decode(webSocketMessage);
+            decodeTimers.get(decoder.get().getProtocol()).recordNanos(decodeStart);
+            Map<String, String> headers = inboundMessage.getHeaders();
+            ClientMessagePayloadType type = ClientMessagePayloadType.valueOf(headers.get(MessageHeaders.TYPE_HEADER));
+            String token = headers.get(MessageHeaders.TOKEN);
+            LocalDateTime startTime = LocalDateTime.now();
+            if (log.isDebugEnabled()) {
+                log.debug("Handling client Request {} with token {} sent at {}", type, token, gson.fromJson(headers.get(MessageHeaders.TIMESTAMP), LocalDateTime.class));
+            }
+            requestCounters.get(type).increment();
+            switch (type) {
+                case REFRESH:
+                    refresh(webSocketSession, type, token, startTime, Collections.emptyMap());
+                    break;
+                case CONDITIONAL_REFRESH:
+                    Map<String, EntityRevisions> knownRevisions = inboundMessage.getPayload(new TypeToken<Map<String, EntityRevisions>>() {
+                    }.getType());
+                    refresh(webSocketSession, type, token, startTime, knownRevisions == null ? Collections.emptyMap() : knownRevisions);
+                    break;
+                case SNAPSHOT:
+                    read(webSocketSession, token, () -> {
+                        SnapshotStreamer.Result result = snapshot(webSocketSession, token, headers);
+                        confirm(webSocketSession, type, token, startTime, ImmutableMap.of(
+                                MessageHeaders.SIZE, String.valueOf(result.getFrames())
+                        ), result.getSkipped());
+                    });
+                    break;
+                case SYNC_SINCE:
+                    read(webSocketSession, token, () -> syncSince(webSocketSession, type, token, startTime, headers));
+                    break;
+                case SEARCH:
+                    Feature feature = inboundMessage.getPayload(Feature.class);
+                    read(webSocketSession, token, () -> {
+                        List<SearchHit> hits;
+                        try {
+                            hits = search(feature, headers.get(MessageHeaders.TOP_K));
+                        } catch (IllegalArgumentException | IllegalStateException e) {
+                            fail(webSocketSession, type, token, startTime, e);
+                            return;
+                        }
                         sendMessage(webSocketSession, new Message<>(ImmutableMap.of(
-                                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON_ID_LIST.name(),
+                                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.SEARCH_RESULT.name(),
                                 MessageHeaders.TOKEN, token,
-                                MessageHeaders.TIMESTAMP, gson.toJson(LocalDateTime.now())
-                        ), persons));
-                        for (int index = 0; index < persons.size(); index++) {
-                            String personId = persons.get(index);
-                            sendMessage(webSocketSession, new Message<>(ImmutableMap.of(
-                                    MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON.name(),
-                                    MessageHeaders.TOKEN, token,
-                                    MessageHeaders.SIZE, String.valueOf(persons.size()),
-                                    MessageHeaders.INDEX, String.valueOf(index),
-                                    MessageHeaders.TIMESTAMP, gson.toJson(LocalDateTime.now())
-                            ), faceStore.getPerson(personId)));
-                            List<String> faces = faceStore.getFaceIdList(personId);
-                            sendMessage(webSocketSession, new Message<>(ImmutableMap.of(
-                                    MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE_ID_LIST.name(),
-                                    MessageHeaders.TOKEN, token,
-                                    MessageHeaders.PERSON_ID, personId,
-                                    MessageHeaders.TIMESTAMP, gson.toJson(LocalDateTime.now())
-                            ), faces));
-                            for (int faceIndex = 0; faceIndex < faces.size(); faceIndex++) {
-                                String faceId = faces.get(faceIndex);
-                                sendMessage(webSocketSession, new Message<>(ImmutableMap.<String, String>builder()
-                                        .put(MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name())
-                                        .put(MessageHeaders.TOKEN, token)
-                                        .put(MessageHeaders.PERSON_ID, personId)
-                                        .put(MessageHeaders.SIZE, String.valueOf(faces.size()))
-                                        .put(MessageHeaders.INDEX, String.valueOf(faceIndex))
-                                        .put(MessageHeaders.TIMESTAMP, gson.toJson(LocalDateTime.now()))
-                                        .build(),
-                                        faceStore.getFace(personId, faceId)));
-                            }
-                        }
-                        confirm(webSocketSession, type, token, startTime);
-                        break;
-                    case PERSON:
-                        Message<Person> personMessage = gson.fromJson(content, PERSON_MESSAGE_TYPE.getType());
-                        faceStore.savePerson(personMessage.getPayload());
-                        confirm(webSocketSession, type, token, startTime);
-                        break;
-                    case FACE:
-                        Message<Face> faceMessage = gson.fromJson(content, FACE_MESSAGE_TYPE.getType());
-                        faceStore.saveFace(faceMessage.getHeaders().get(MessageHeaders.PERSON_ID), faceMessage.getPayload());
+                                MessageHeaders.TIMESTAMP, Timestamps.now()
+                        ), hits));
                         confirm(webSocketSession, type, token, startTime);
-                        break;
-                    case PERSON_DELETE:
-                        faceStore.deletePerson(rawMessage.getHeaders().get(MessageHeaders.PERSON_ID));
-                        confirm(webSocketSession, type, token, startTime);
-                        break;
-                    case FACE_DELETE:
-                        faceStore.deleteFace(
-                                rawMessage.getHeaders().get(MessageHeaders.PERSON_ID),
-                                rawMessage.getHeaders().get(MessageHeaders.FACE_ID)
-                        );
-                        confirm(webSocketSession, type, token, startTime);
-                        break;
-                }
+                    });
+                    break;
+                case PERSON:
+                    Person person = inboundMessage.getPayload(Person.class);
+                    confirmWhenDone(webSocketSession, type, token, startTime,
+                            writeBehindQueue.submit(person.getId(), () -> faceStore.savePerson(person)));
+                    break;
+                case FACE:
+                    String facePersonId = headers.get(MessageHeaders.PERSON_ID);
+                    Face face = inboundMessage.getPayload(Face.class);
+                    confirmWhenDone(webSocketSession, type, token, startTime,
+                            writeBehindQueue.submit(facePersonId, () -> faceStore.saveFace(facePersonId, face)));
+                    break;
+                case PERSON_DELETE:
+                    String deletedPersonId = headers.get(MessageHeaders.PERSON_ID);
+                    confirmWhenDone(webSocketSession, type, token, startTime,
+                            writeBehindQueue.submit(deletedPersonId, () -> faceStore.deletePerson(deletedPersonId)));
+                    break;
+                case FACE_DELETE:
+                    String faceOwnerId = headers.get(MessageHeaders.PERSON_ID);
+                    String deletedFaceId = headers.get(MessageHeaders.FACE_ID);
+                    confirmWhenDone(webSocketSession, type, token, startTime,
+                            writeBehindQueue.submit(faceOwnerId, () -> faceStore.deleteFace(faceOwnerId, deletedFaceId)));
+                    break;
+                case PERSON_BATCH:
+                    List<Person> batchPersons = inboundMessage.getPayload(new TypeToken<List<Person>>() {
+                    }.getType());
+                    confirmBulk(webSocketSession, type, token, startTime,
+                            writeBehindQueue.submitAll(batchPersons, Person::getId, bulkFaceStore::savePersons));
+                    break;
+                case FACE_BATCH:
+                    List<FaceEntry> batchFaces = inboundMessage.getPayload(new TypeToken<List<FaceEntry>>() {
+                    }.getType());
+                    confirmBulk(webSocketSession, type, token, startTime,
+                            writeBehindQueue.submitAll(batchFaces, FaceEntry::getPersonId, bulkFaceStore::saveFaces));
+                    break;
+                case DELETE_BATCH:
+                    List<EntityKey> batchKeys = inboundMessage.getPayload(new TypeToken<List<EntityKey>>() {
+                    }.getType());
+                    confirmBulk(webSocketSession, type, token, startTime,
+                            writeBehindQueue.submitAll(batchKeys, EntityKey::getPersonId, bulkFaceStore::deleteAll));
+                    break;
+                case CONDITIONAL_PERSON:
+                    Person conditionalPerson = inboundMessage.getPayload(Person.class);
+                    long expectedPersonRevision = expectedRevision(headers);
+                    writeIf(webSocketSession, type, token, startTime, conditionalPerson.getId(), null, expectedPersonRevision,
+                            () -> conditionalFaceStore.savePerson(conditionalPerson, expectedPersonRevision));
+                    break;
+                case CONDITIONAL_FACE:
+                    String conditionalFacePersonId = headers.get(MessageHeaders.PERSON_ID);
+                    Face conditionalFace = inboundMessage.getPayload(Face.class);
+                    long expectedFaceRevision = expectedRevision(headers);
+                    writeIf(webSocketSession, type, token, startTime, conditionalFacePersonId, conditionalFace.getId(), expectedFaceRevision,
+                            () -> conditionalFaceStore.saveFace(conditionalFacePersonId, conditionalFace, expectedFaceRevision));
+                    break;
+                case CONDITIONAL_PERSON_DELETE:
+                    String conditionalDeletedPersonId = headers.get(MessageHeaders.PERSON_ID);
+                    long expectedDeletedPersonRevision = expectedRevision(headers);
+                    writeIf(webSocketSession, type, token, startTime, conditionalDeletedPersonId, null, expectedDeletedPersonRevision, () -> {
+                        conditionalFaceStore.deletePerson(conditionalDeletedPersonId, expectedDeletedPersonRevision);
+                        return 0;
+                    });
+                    break;
+                case CONDITIONAL_FACE_DELETE:
+                    String conditionalFaceOwnerId = headers.get(MessageHeaders.PERSON_ID);
+                    String conditionalDeletedFaceId = headers.get(MessageHeaders.FACE_ID);
+                    long expectedDeletedFaceRevision = expectedRevision(headers);
+                    writeIf(webSocketSession, type, token, startTime, conditionalFaceOwnerId, conditionalDeletedFaceId, expectedDeletedFaceRevision, () -> {
+                        conditionalFaceStore.deleteFace(conditionalFaceOwnerId, conditionalDeletedFaceId, expectedDeletedFaceRevision);
+                        return 0;
+                    });
+                    break;
+                case SUBSCRIBE:
+                    Subscription subscription = inboundMessage.getPayload(Subscription.class);
+                    OutboundSession subscriber = sessions.get(webSocketSession.getRemoteAddress());
+                    if (subscriber != null) {
+                        subscriptionIndex.subscribe(subscriber, subscription);
+                    }
+                    confirm(webSocketSession, type, token, startTime);
+                    break;
             }
         }
     }
 
     public void afterConnectionEstablished(WebSocketSession webSocketSession) {
         log.info("Session connected from {}, {}", webSocketSession.getRemoteAddress(), webSocketSession.getAttributes());
-        sessions.put(webSocketSession.getRemoteAddress(), webSocketSession);
-        faceStoreHealthIndicator.addClient(webSocketSession.getRemoteAddress());
+        OutboundSession outboundSession = new OutboundSession(webSocketSession, sessionWriter, sessionProperties, metricsRegistry);
+        String protocol = webSocketSession.getAcceptedProtocol();
+        if (compressionProperties.isEnabled() && FrameCompressor.isRequested(protocol)) {
+            outboundSession.setCompressor(new FrameCompressor(
+                    compressionProperties,
+                    Math.max(webSocketSession.getTextMessageSizeLimit(), webSocketSession.getBinaryMessageSizeLimit()),
+                    FrameCompressor.baseProtocol(protocol),
+                    metricsRegistry
+            ));
+        }
+        outboundSession.setGapNotice(encode(codecOf(webSocketSession), new Message<>(ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.RESYNC.name()
+        ), "")));
+        sessions.put(webSocketSession.getRemoteAddress(), outboundSession);
+        subscriptionIndex.subscribe(outboundSession, null);
+        faceStoreHealthIndicator.addClient(webSocketSession.getRemoteAddress(), outboundSession);
     }
 
     public void handleTransportError(WebSocketSession webSocketSession, Throwable throwable) {
@@ -143,7 +317,11 @@ public class FaceStoreWebSocketBackend implements WebSocketHandler, FaceStoreCha
 
     public void afterConnectionClosed(WebSocketSession webSocketSession, CloseStatus closeStatus) {
         log.info("Session dis-connected from {}, {}, {}", webSocketSession.getRemoteAddress(), webSocketSession.getAttributes(), closeStatus);
-        sessions.remove(webSocketSession.getRemoteAddress());
+        OutboundSession outboundSession = sessions.remove(webSocketSession.getRemoteAddress());
+        if (outboundSession != null) {
+            subscriptionIndex.unsubscribe(outboundSession);
+            outboundSession.close();
+        }
         faceStoreHealthIndicator.removeClient(webSocketSession.getRemoteAddress());
     }
 
@@ -163,7 +341,7 @@ public class FaceStoreWebSocketBackend implements WebSocketHandler, FaceStoreCha
         publish(new Message<>(ImmutableMap.of(
                 MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON_DELETE.name(),
                 MessageHeaders.PERSON_ID, personId
-        ), ""));
+        ), ""), ChangeEvent.keyOf(personId, null), personId, subscriptionIndex.forget(personId));
     }
 
     public void onFaceDelete(String personId, String faceId) {
@@ -171,30 +349,399 @@ public class FaceStoreWebSocketBackend implements WebSocketHandler, FaceStoreCha
                 MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE_DELETE.name(),
                 MessageHeaders.PERSON_ID, personId,
                 MessageHeaders.FACE_ID, faceId
-        ), ""));
+        ), ""), ChangeEvent.keyOf(personId, faceId), personId, subscriptionIndex.tagsOf(personId));
+    }
+
+    public void onBatch(List<FaceStoreChange<Person, Face>> changes) {
+        Map<OutboundSession, BitSet> selections = new HashMap<>();
+        for (int index = 0; index < changes.size(); index++) {
+            FaceStoreChange<Person, Face> change = changes.get(index);
+            for (OutboundSession session : subscriptionIndex.sessionsFor(change.getPersonId(), tagsOf(change))) {
+                selections.computeIfAbsent(session, key -> new BitSet(changes.size())).set(index);
+            }
+        }
+        Map<BitSet, Message<?>> messages = new HashMap<>();
+        deliver(selections.keySet(), session -> messages.computeIfAbsent(selections.get(session), selection -> new Message<>(ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.CHANGE_BATCH.name(),
+                MessageHeaders.SIZE, String.valueOf(selection.cardinality())
+        ), selection.stream().mapToObj(changes::get).collect(Collectors.toList()))), null);
+    }
+
+    private Collection<String> tagsOf(FaceStoreChange<Person, Face> change) {
+        switch (change.getType()) {
+            case PERSON_UPDATE:
+                return subscriptionIndex.retag(change.getPersonId(), change.getPerson().getTags());
+            case PERSON_DELETE:
+                return subscriptionIndex.forget(change.getPersonId());
+            default:
+                return subscriptionIndex.tagsOf(change.getPersonId());
+        }
     }
 
     private void sendPerson(Person person) {
         publish(new Message<>(ImmutableMap.of(
                 MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON.name()
-        ), person));
+        ), person), ChangeEvent.keyOf(person.getId(), null), person.getId(), subscriptionIndex.retag(person.getId(), person.getTags()));
     }
 
     private void sendFace(String personId, Face face) {
         publish(new Message<>(ImmutableMap.of(
                 MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name(),
                 MessageHeaders.PERSON_ID, personId
-        ), face));
+        ), face), ChangeEvent.keyOf(personId, face.getId()), personId, subscriptionIndex.tagsOf(personId));
+    }
+
+    private void refresh(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime, Map<String, EntityRevisions> knownRevisions) {
+        long start = System.nanoTime();
+        AtomicInteger gallerySize = new AtomicInteger();
+        Predicate<String> filter = filterOf(webSocketSession);
+        faceStore.getPersonIdsAsObservable()
+                .filter(filter::test)
+                .toList()
+                .subscribeOn(readScheduler)
+                .doOnNext(persons -> gallerySize.set(persons.size()))
+                .concatMap(persons -> Observable.<Message<?>>just(new Message<>(ImmutableMap.of(
+                        MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON_ID_LIST.name(),
+                        MessageHeaders.TOKEN, token,
+                        MessageHeaders.TIMESTAMP, Timestamps.now()
+                ), persons)).concatWith(Observable.range(0, persons.size()).concatMapEager(
+                        index -> refreshPerson(token, persons.get(index), index, persons.size(), knownRevisions.get(persons.get(index))).subscribeOn(readScheduler),
+                        readProperties.getConcurrency(),
+                        readProperties.getConcurrency()
+                )))
+                .observeOn(streamScheduler)
+                .takeWhile(message -> webSocketSession.isOpen())
+                .subscribe(
+                        message -> sendMessage(webSocketSession, message),
+                        error -> log.error("Error handling request " + token, error),
+                        () -> {
+                            refreshTimers.get(galleryBucket(gallerySize.get())).recordNanos(start);
+                            confirm(webSocketSession, type, token, startTime);
+                        }
+                );
+    }
+
+    private static String galleryBucket(int size) {
+        for (int bound = 100; bound <= 1000000; bound *= 10) {
+            if (size <= bound) {
+                return "le_" + bound;
+            }
+        }
+        return "gt_1000000";
+    }
+
+    private Observable<Message<?>> refreshPerson(String token, String personId, int index, int size, EntityRevisions knownRevisions) {
+        long knownPersonRevision = knownRevisions == null ? 0 : knownRevisions.getPerson();
+        Observable<Message<?>> person = Observable.defer(() -> isCurrent(knownPersonRevision, () -> conditionalFaceStore.getPersonRevision(personId), skippedPersons)
+                ? Observable.empty()
+                : faceStore.getPersonAsObservable(personId)
+                .firstOrDefault(null)
+                .map(value -> new Message<>(ImmutableMap.of(
+                        MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON.name(),
+                        MessageHeaders.TOKEN, token,
+                        MessageHeaders.SIZE, String.valueOf(size),
+                        MessageHeaders.INDEX, String.valueOf(index),
+                        MessageHeaders.TIMESTAMP, Timestamps.now()
+                ), value)));
+        Observable<Message<?>> faces = faceStore.getFaceIdListAsObservable(personId)
+                .toList()
+                .concatMap(faceIds -> Observable.<Message<?>>just(new Message<>(ImmutableMap.of(
+                        MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE_ID_LIST.name(),
+                        MessageHeaders.TOKEN, token,
+                        MessageHeaders.PERSON_ID, personId,
+                        MessageHeaders.TIMESTAMP, Timestamps.now()
+                ), faceIds)).concatWith(Observable.range(0, faceIds.size()).concatMap(
+                        faceIndex -> isCurrent(knownRevisionOf(knownRevisions, faceIds.get(faceIndex)), () -> conditionalFaceStore.getFaceRevision(personId, faceIds.get(faceIndex)), skippedFaces)
+                                ? Observable.<Message<?>>empty()
+                                : faceStore.getFaceAsObservable(personId, faceIds.get(faceIndex))
+                                .firstOrDefault(null)
+                                .map(face -> new Message<>(ImmutableMap.<String, String>builder()
+                                        .put(MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name())
+                                        .put(MessageHeaders.TOKEN, token)
+                                        .put(MessageHeaders.PERSON_ID, personId)
+                                        .put(MessageHeaders.SIZE, String.valueOf(faceIds.size()))
+                                        .put(MessageHeaders.INDEX, String.valueOf(faceIndex))
+                                        .put(MessageHeaders.TIMESTAMP, Timestamps.now())
+                                        .build(), face))
+                )));
+        return person.concatWith(faces);
     }
 
-    private void publish(Message message) {
-        int size = sessions.values().size();
-        log.info("Ready to send message to {} client(s)", size);
-        long success = sessions.values().stream().filter(session -> sendMessage(session, message)).count();
-        log.info("Successfully send message to {}/{} client(s)", success, size);
+    private boolean isCurrent(long knownRevision, LongSupplier currentRevision, Counter skipped) {
+        if (knownRevision > 0 && knownRevision == currentRevision.getAsLong()) {
+            skipped.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private static long knownRevisionOf(EntityRevisions knownRevisions, String faceId) {
+        Long revision = knownRevisions == null || knownRevisions.getFaces() == null ? null : knownRevisions.getFaces().get(faceId);
+        return revision == null ? 0 : revision;
+    }
+
+    private static long expectedRevision(Map<String, String> headers) {
+        String revision = headers.get(MessageHeaders.REVISION);
+        return revision == null ? ConditionalFaceStore.ANY_REVISION : Long.parseLong(revision);
+    }
+
+    private void writeIf(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime,
+                         String personId, String faceId, long expectedRevision, LongSupplier write) {
+        long knownRevision = conditionalFaceStore.getKnownRevision(personId, faceId);
+        if (expectedRevision > 0 && knownRevision > expectedRevision) {
+            fastRejectionCounters.get(type).increment();
+            reject(webSocketSession, type, token, startTime, new RevisionConflictException(personId, faceId, expectedRevision, knownRevision));
+            return;
+        }
+        AtomicLong revision = new AtomicLong();
+        writeBehindQueue.submit(personId, () -> revision.set(write.getAsLong())).whenComplete((ignored, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof RevisionConflictException) {
+                reject(webSocketSession, type, token, startTime, (RevisionConflictException) cause);
+            } else if (error != null) {
+                fail(webSocketSession, type, token, startTime, error);
+            } else {
+                confirm(webSocketSession, type, token, startTime, ImmutableMap.of(
+                        MessageHeaders.REVISION, String.valueOf(revision.get())
+                ));
+            }
+        });
+    }
+
+    private void reject(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime, RevisionConflictException conflict) {
+        log.info("Request {} rejected: {}", token, conflict.getMessage());
+        ImmutableMap.Builder<String, String> headers = ImmutableMap.<String, String>builder()
+                .put(MessageHeaders.PERSON_ID, conflict.getPersonId())
+                .put(MessageHeaders.REVISION, String.valueOf(conflict.getCurrentRevision()));
+        if (conflict.getFaceId() != null) {
+            headers.put(MessageHeaders.FACE_ID, conflict.getFaceId());
+        }
+        respond(webSocketSession, ServerMessagePayloadType.CONFLICT, type, token, startTime, headers.build(), "");
+    }
+
+    private void read(WebSocketSession webSocketSession, String token, Runnable task) {
+        streamer.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Error handling request " + token + " from " + webSocketSession.getRemoteAddress(), e);
+            }
+        });
+    }
+
+    private List<SearchHit> search(Feature feature, String topK) {
+        if (faceSearchEngine == null) {
+            throw new IllegalStateException("Search is disabled, enable face.store.search.enabled first");
+        }
+        return faceSearchEngine.search(feature, topK == null ? null : Integer.valueOf(topK));
+    }
+
+    private SnapshotStreamer.Result snapshot(WebSocketSession webSocketSession, String token, Map<String, String> headers) {
+        return snapshotStreamer.stream(
+                webSocketSession,
+                codecOf(webSocketSession),
+                token,
+                headers.get(MessageHeaders.BATCH_SIZE),
+                filterOf(webSocketSession),
+                frame -> sendMessage(webSocketSession, frame)
+        );
+    }
+
+    private void syncSince(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime, Map<String, String> headers) {
+        long head = faceStoreChangeLog.getSequence();
+        Optional<List<ChangeEvent>> changes = Optional.ofNullable(headers.get(MessageHeaders.CURSOR))
+                .flatMap(cursor -> {
+                    try {
+                        return faceStoreChangeLog.since(Long.parseLong(cursor));
+                    } catch (NumberFormatException e) {
+                        return Optional.empty();
+                    }
+                });
+        if (!changes.isPresent()) {
+            log.info("Cursor {} of request {} not in change log, fall back to snapshot", headers.get(MessageHeaders.CURSOR), token);
+            SnapshotStreamer.Result result = snapshot(webSocketSession, token, headers);
+            confirm(webSocketSession, type, token, startTime, ImmutableMap.of(
+                    MessageHeaders.CURSOR, String.valueOf(head),
+                    MessageHeaders.SIZE, String.valueOf(result.getFrames())
+            ), result.getSkipped());
+            return;
+        }
+        Predicate<String> filter = filterOf(webSocketSession);
+        Predicate<String> deleteFilter = deleteFilterOf(webSocketSession);
+        for (ChangeEvent change : changes.get()) {
+            boolean delete = change.getType() == ChangeType.PERSON_DELETE || change.getType() == ChangeType.FACE_DELETE;
+            if (!(delete ? deleteFilter : filter).test(change.getPersonId())) {
+                continue;
+            }
+            String sequence = String.valueOf(change.getSequence());
+            switch (change.getType()) {
+                case PERSON_UPDATE:
+                    Person person = faceStore.getPerson(change.getPersonId());
+                    if (person != null) {
+                        sendMessage(webSocketSession, new Message<>(ImmutableMap.of(
+                                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON.name(),
+                                MessageHeaders.TOKEN, token,
+                                MessageHeaders.SEQUENCE, sequence
+                        ), person));
+                    }
+                    break;
+                case FACE_UPDATE:
+                    Face face = faceStore.getFace(change.getPersonId(), change.getFaceId());
+                    if (face != null) {
+                        sendMessage(webSocketSession, new Message<>(ImmutableMap.of(
+                                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name(),
+                                MessageHeaders.TOKEN, token,
+                                MessageHeaders.PERSON_ID, change.getPersonId(),
+                                MessageHeaders.SEQUENCE, sequence
+                        ), face));
+                    }
+                    break;
+                case PERSON_DELETE:
+                    sendMessage(webSocketSession, new Message<>(ImmutableMap.of(
+                            MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON_DELETE.name(),
+                            MessageHeaders.TOKEN, token,
+                            MessageHeaders.PERSON_ID, change.getPersonId(),
+                            MessageHeaders.SEQUENCE, sequence
+                    ), ""));
+                    break;
+                case FACE_DELETE:
+                    sendMessage(webSocketSession, new Message<>(ImmutableMap.of(
+                            MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE_DELETE.name(),
+                            MessageHeaders.TOKEN, token,
+                            MessageHeaders.PERSON_ID, change.getPersonId(),
+                            MessageHeaders.FACE_ID, change.getFaceId(),
+                            MessageHeaders.SEQUENCE, sequence
+                    ), ""));
+                    break;
+            }
+        }
+        long cursor = changes.get().stream().mapToLong(ChangeEvent::getSequence).max().orElse(head);
+        confirm(webSocketSession, type, token, startTime, ImmutableMap.of(
+                MessageHeaders.CURSOR, String.valueOf(cursor)
+        ));
+    }
+
+    private Predicate<String> filterOf(WebSocketSession webSocketSession) {
+        OutboundSession outboundSession = sessions.get(webSocketSession.getRemoteAddress());
+        Subscription subscription = outboundSession == null ? null : outboundSession.getSubscription();
+        if (subscription == null) {
+            return personId -> true;
+        }
+        return personId -> subscription.matches(personId, () -> subscriptionIndex.tagsOf(personId));
+    }
+
+    private Predicate<String> deleteFilterOf(WebSocketSession webSocketSession) {
+        OutboundSession outboundSession = sessions.get(webSocketSession.getRemoteAddress());
+        Subscription subscription = outboundSession == null ? null : outboundSession.getSubscription();
+        if (subscription == null) {
+            return personId -> true;
+        }
+        return personId -> subscription.matches(personId, () -> {
+            Collection<String> tags = subscriptionIndex.tagsOf(personId);
+            return tags.isEmpty() && faceStore.getPerson(personId) == null ? subscription.getTags() : tags;
+        });
+    }
+
+    private void publish(Message<?> message, String key, String personId, Collection<String> tags) {
+        deliver(subscriptionIndex.sessionsFor(personId, tags), session -> message, key);
+    }
+
+    private void deliver(Collection<OutboundSession> targets, Function<OutboundSession, Message<?>> messageOf, String key) {
+        long start = System.nanoTime();
+        int size = targets.size();
+        log.info("Ready to send message to {}/{} client(s)", size, sessions.size());
+        Map<Message<?>, Map<MessageCodec<?>, WebSocketMessage<?>>> frames = new IdentityHashMap<>();
+        long success = targets.stream()
+                .filter(session -> {
+                    Message<?> message = messageOf.apply(session);
+                    return session.broadcast(
+                            frames.computeIfAbsent(message, ignored -> new HashMap<>())
+                                    .computeIfAbsent(codecOf(session.getWebSocketSession()), codec -> encode(codec, message)),
+                            key
+                    );
+                })
+                .count();
+        log.info("Successfully queued message to {}/{} client(s)", success, size);
+        broadcastTimer.recordNanos(start);
+        fanoutSessions.record(size);
+    }
+
+    private WebSocketMessage<?> encode(MessageCodec<?> codec, Message message) {
+        long start = System.nanoTime();
+        WebSocketMessage<?> frame = codec.encode(message);
+        encodeTimers.get(codec.getProtocol()).recordNanos(start);
+        encodeBytes.get(codec.getProtocol()).record(frame.getPayloadLength());
+        log.debug("Message encoded by {} into {} byte(s) in {} us",
+                codec.getProtocol(), frame.getPayloadLength(), (System.nanoTime() - start) / 1000);
+        return frame;
+    }
+
+    private WebSocketMessage<?> inflate(WebSocketSession webSocketSession, WebSocketMessage<?> webSocketMessage) {
+        if (!FrameCompressor.isCompressed(webSocketMessage)) {
+            return webSocketMessage;
+        }
+        OutboundSession outboundSession = sessions.get(webSocketSession.getRemoteAddress());
+        if (outboundSession == null || outboundSession.getCompressor() == null) {
+            throw new IllegalArgumentException("Compression was not negotiated for session " + webSocketSession.getRemoteAddress());
+        }
+        return outboundSession.getCompressor().inflate(webSocketMessage);
+    }
+
+    private MessageCodec<?> codecOf(WebSocketSession webSocketSession) {
+        String protocol = FrameCompressor.baseProtocol(webSocketSession.getAcceptedProtocol());
+        return messageCodecs.stream()
+                .filter(codec -> codec.getProtocol().equals(protocol))
+                .findFirst()
+                .orElse(jsonMessageCodec);
+    }
+
+    private boolean isHeartBeat(WebSocketMessage<?> webSocketMessage) {
+        return webSocketMessage instanceof TextMessage && HEART_BEAT_MESSAGE.equals(((TextMessage) webSocketMessage).getPayload());
+    }
+
+    private void confirmWhenDone(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime, CompletableFuture<Void> write) {
+        write.whenComplete((ignored, error) -> {
+            if (error != null) {
+                fail(webSocketSession, type, token, startTime, error);
+            } else {
+                confirm(webSocketSession, type, token, startTime);
+            }
+        });
+    }
+
+    private void fail(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime, Throwable error) {
+        log.error("Error handling request " + token, error);
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        confirm(webSocketSession, type, token, startTime, ImmutableMap.of(
+                MessageHeaders.ERROR, cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage()
+        ));
+    }
+
+    private void confirmBulk(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime, CompletableFuture<List<BulkResult>> write) {
+        write.whenComplete((results, error) -> {
+            if (error != null) {
+                fail(webSocketSession, type, token, startTime, error);
+            } else {
+                confirm(webSocketSession, type, token, startTime, ImmutableMap.of(
+                        MessageHeaders.SIZE, String.valueOf(results.size())
+                ), results);
+            }
+        });
     }
 
     private void confirm(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime) {
+        confirm(webSocketSession, type, token, startTime, ImmutableMap.of());
+    }
+
+    private void confirm(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime, Map<String, String> extraHeaders) {
+        confirm(webSocketSession, type, token, startTime, extraHeaders, new Object());
+    }
+
+    private void confirm(WebSocketSession webSocketSession, ClientMessagePayloadType type, String token, LocalDateTime startTime, Map<String, String> extraHeaders, Object payload) {
+        respond(webSocketSession, ServerMessagePayloadType.CONFIRM, type, token, startTime, extraHeaders, payload);
+    }
+
+    private void respond(WebSocketSession webSocketSession, ServerMessagePayloadType responseType, ClientMessagePayloadType type, String token, LocalDateTime startTime, Map<String, String> extraHeaders, Object payload) {
         LocalDateTime now = LocalDateTime.now();
         FaceStoreHealthIndicator.ClientMessage clientMessage = new FaceStoreHealthIndicator.ClientMessage(
                 webSocketSession.getRemoteAddress(),
@@ -205,20 +752,24 @@ public class FaceStoreWebSocketBackend implements WebSocketHandler, FaceStoreCha
         );
         faceStoreHealthIndicator.recordClientMessage(clientMessage);
         log.info("Request {} handled, use {} second(s)", token, clientMessage.getDuration());
-        sendMessage(webSocketSession, new Message<>(ImmutableMap.of(
-                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.CONFIRM.name(),
-                MessageHeaders.TOKEN, token,
-                MessageHeaders.TIMESTAMP, gson.toJson(LocalDateTime.now())
-        ), new Object()));
+        sendMessage(webSocketSession, new Message<>(ImmutableMap.<String, String>builder()
+                .put(MessageHeaders.TYPE_HEADER, responseType.name())
+                .put(MessageHeaders.TOKEN, token)
+                .put(MessageHeaders.TIMESTAMP, Timestamps.now())
+                .putAll(extraHeaders)
+                .build(), payload));
     }
 
-    private synchronized boolean sendMessage(WebSocketSession webSocketSession, Message message) {
-        try {
-            webSocketSession.sendMessage(new TextMessage(gson.toJson(message)));
-            return true;
-        } catch (IOException e) {
-            log.error("Error sending message " + message.toString() + " to " + webSocketSession.getRemoteAddress(), e);
+    private boolean sendMessage(WebSocketSession webSocketSession, Message message) {
+        return sendMessage(webSocketSession, encode(codecOf(webSocketSession), message));
+    }
+
+    private boolean sendMessage(WebSocketSession webSocketSession, WebSocketMessage<?> webSocketMessage) {
+        OutboundSession outboundSession = sessions.get(webSocketSession.getRemoteAddress());
+        if (outboundSession == null) {
+            log.warn("Session {} already closed, discard message", webSocketSession.getRemoteAddress());
             return false;
         }
+        return outboundSession.send(webSocketMessage);
     }
 }
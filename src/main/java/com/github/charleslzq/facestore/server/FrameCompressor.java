@@ -0,0 +1,154 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.server.metrics.Counter;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.metrics.Summary;
+import com.google.common.collect.ImmutableMap;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class FrameCompressor {
+    public static final String SUFFIX = ".deflate";
+    private static final int MAGIC = 'Z';
+    private static final int VERSION = 1;
+    private static final int BINARY = 0;
+    private static final int TEXT = 1;
+    private static final int HEADER_SIZE = 3;
+    private final int threshold;
+    private final int sizeLimit;
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+    private final LongAdder compressedFrames = new LongAdder();
+    private final LongAdder skippedFrames = new LongAdder();
+    private final LongAdder inflatedFrames = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final Summary compressTimer;
+    private final Counter rawCounter;
+    private final Counter compressedCounter;
+    private boolean closed = false;
+
+    public FrameCompressor(CompressionProperties compressionProperties, int sizeLimit, String protocol, MetricsRegistry metricsRegistry) {
+        this.threshold = compressionProperties.getThreshold();
+        this.sizeLimit = sizeLimit;
+        this.deflater = new Deflater(compressionProperties.getLevel(), true);
+        this.compressTimer = metricsRegistry.timer("facestore_compression_seconds", "protocol", protocol);
+        this.rawCounter = metricsRegistry.counter("facestore_compression_raw_bytes_total", "protocol", protocol);
+        this.compressedCounter = metricsRegistry.counter("facestore_compression_bytes_total", "protocol", protocol);
+    }
+
+    public static boolean isRequested(String protocol) {
+        return protocol != null && protocol.endsWith(SUFFIX);
+    }
+
+    public static String baseProtocol(String protocol) {
+        return isRequested(protocol) ? protocol.substring(0, protocol.length() - SUFFIX.length()) : protocol;
+    }
+
+    public static boolean isCompressed(WebSocketMessage<?> webSocketMessage) {
+        if (!(webSocketMessage instanceof BinaryMessage)) {
+            return false;
+        }
+        ByteBuffer payload = ((BinaryMessage) webSocketMessage).getPayload();
+        return payload.remaining() >= HEADER_SIZE && payload.get(payload.position()) == MAGIC;
+    }
+
+    public synchronized WebSocketMessage<?> compress(WebSocketMessage<?> webSocketMessage) {
+        boolean text = webSocketMessage instanceof TextMessage;
+        byte[] raw = text ? ((TextMessage) webSocketMessage).asBytes() : bytesOf(((BinaryMessage) webSocketMessage).getPayload());
+        if (closed || raw.length < threshold) {
+            skippedFrames.increment();
+            return webSocketMessage;
+        }
+        long start = System.nanoTime();
+        byte[] output = new byte[HEADER_SIZE + raw.length / 2 + 64];
+        output[0] = MAGIC;
+        output[1] = VERSION;
+        output[2] = (byte) (text ? TEXT : BINARY);
+        int size = HEADER_SIZE;
+        deflater.setInput(raw);
+        while (true) {
+            size += deflater.deflate(output, size, output.length - size, Deflater.SYNC_FLUSH);
+            if (size < output.length) {
+                break;
+            }
+            output = Arrays.copyOf(output, output.length * 2);
+        }
+        long nanos = System.nanoTime() - start;
+        compressedFrames.increment();
+        rawBytes.add(raw.length);
+        compressedBytes.add(size);
+        compressNanos.add(nanos);
+        compressTimer.record(nanos);
+        rawCounter.add(raw.length);
+        compressedCounter.add(size);
+        return new BinaryMessage(output, 0, size, true);
+    }
+
+    public synchronized WebSocketMessage<?> inflate(WebSocketMessage<?> webSocketMessage) {
+        byte[] frame = bytesOf(((BinaryMessage) webSocketMessage).getPayload());
+        if (frame[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported compressed frame version " + frame[1]);
+        }
+        byte[] output = new byte[Math.min(sizeLimit, Math.max(frame.length * 4, 1024))];
+        int size = 0;
+        inflater.setInput(frame, HEADER_SIZE, frame.length - HEADER_SIZE);
+        try {
+            while (true) {
+                size += inflater.inflate(output, size, output.length - size);
+                if (size < output.length && (inflater.needsInput() || inflater.finished())) {
+                    break;
+                }
+                if (size == output.length) {
+                    if (output.length >= sizeLimit) {
+                        throw new IllegalArgumentException("Compressed frame inflates beyond " + sizeLimit + " byte(s)");
+                    }
+                    output = Arrays.copyOf(output, (int) Math.min(sizeLimit, output.length * 2L));
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed compressed frame", e);
+        }
+        inflatedFrames.increment();
+        return frame[2] == TEXT ? new TextMessage(Arrays.copyOf(output, size)) : new BinaryMessage(output, 0, size, true);
+    }
+
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            deflater.end();
+            inflater.end();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        long frames = compressedFrames.sum();
+        long raw = rawBytes.sum();
+        return ImmutableMap.<String, Object>builder()
+                .put("Compressed Frames", frames)
+                .put("Skipped Frames", skippedFrames.sum())
+                .put("Inflated Frames", inflatedFrames.sum())
+                .put("Raw Bytes", raw)
+                .put("Compressed Bytes", compressedBytes.sum())
+                .put("Ratio", raw == 0 ? 1.0 : (double) compressedBytes.sum() / raw)
+                .put("Average Compress Millis", frames == 0 ? 0.0 : compressNanos.sum() / 1e6 / frames)
+                .build();
+    }
+
+    private static byte[] bytesOf(ByteBuffer payload) {
+        ByteBuffer buffer = payload.duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
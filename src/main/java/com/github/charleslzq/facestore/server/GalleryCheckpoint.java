@@ -0,0 +1,151 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+class GalleryCheckpoint {
+    private static final int MAGIC = 0x46534350;
+    private static final int VERSION = 1;
+    private final Map<String, Entry> entries;
+    private final ByteBuffer buffer;
+
+    private GalleryCheckpoint(Map<String, Entry> entries, ByteBuffer buffer) {
+        this.entries = entries;
+        this.buffer = buffer;
+    }
+
+    static GalleryCheckpoint empty() {
+        return new GalleryCheckpoint(new HashMap<>(), ByteBuffer.allocate(0));
+    }
+
+    static GalleryCheckpoint open(File file) throws IOException {
+        if (!file.exists()) {
+            return empty();
+        }
+        if (file.length() > Integer.MAX_VALUE) {
+            log.warn("Checkpoint {} is larger than 2 GB and can not be mapped, ignoring it", file);
+            return empty();
+        }
+        MappedByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        Map<String, Entry> entries = new HashMap<>();
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                log.warn("Checkpoint {} has an unknown format, ignoring it", file);
+                return empty();
+            }
+            while (buffer.hasRemaining()) {
+                byte[] personId = new byte[buffer.getInt()];
+                buffer.get(personId);
+                long stamp = buffer.getLong();
+                int length = buffer.getInt();
+                entries.put(new String(personId, StandardCharsets.UTF_8), new Entry(stamp, buffer.position(), length));
+                buffer.position(buffer.position() + length);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            log.warn("Checkpoint {} is truncated, ignoring it", file);
+            return empty();
+        }
+        return new GalleryCheckpoint(entries, buffer);
+    }
+
+    static Writer writer(File file) throws IOException {
+        return new Writer(file);
+    }
+
+    long stampOf(String personId) {
+        Entry entry = entries.get(personId);
+        return entry == null ? -1 : entry.stamp;
+    }
+
+    byte[] entryOf(String personId) {
+        Entry entry = entries.get(personId);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.position(entry.position);
+        byte[] bytes = new byte[entry.length];
+        source.get(bytes);
+        return bytes;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    static class Writer {
+        private final File file;
+        private final File temp;
+        private final DataOutputStream output;
+
+        private Writer(File file) throws IOException {
+            this.file = file;
+            this.temp = new File(file.getPath() + ".tmp");
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+        }
+
+        synchronized void write(String personId, long stamp, byte[] entry) {
+            try {
+                byte[] id = personId.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(id.length);
+                output.write(id);
+                output.writeLong(stamp);
+                output.writeInt(entry.length);
+                output.write(entry);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error writing checkpoint " + temp, e);
+            }
+        }
+
+        synchronized void commit() throws IOException {
+            output.close();
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        synchronized void abort() {
+            try {
+                output.close();
+                Files.deleteIfExists(temp.toPath());
+            } catch (IOException e) {
+                log.warn("Could not discard checkpoint {}", temp, e);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final long stamp;
+        private final int position;
+        private final int length;
+
+        private Entry(long stamp, int position, int length) {
+            this.stamp = stamp;
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.message.BinaryMessageCodec;
+import com.github.charleslzq.facestore.server.message.PersonSnapshot;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.common.collect.ImmutableMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "face.store.startup", name = "load")
+public class GalleryLoader implements FaceStoreChangeListener<Person, Face> {
+    private final Set<String> touched = ConcurrentHashMap.newKeySet();
+    private final LongAdder persons = new LongAdder();
+    private final LongAdder faces = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder reloaded = new LongAdder();
+    @Autowired
+    @Qualifier("listenableReadWriteFaceStore")
+    private ListenableReadWriteFaceStore<Person, Face> internal;
+    @Autowired
+    @Qualifier("faceStoreCacheWrapper")
+    private ListenableReadWriteFaceStore<Person, Face> faceStore;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private BinaryMessageCodec binaryMessageCodec;
+    @Autowired
+    private FaceStoreHealthIndicator faceStoreHealthIndicator;
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+    @Autowired
+    private FaceStoreProperties faceStoreProperties;
+    @Autowired
+    private StartupProperties startupProperties;
+    private volatile State state = State.LOADING;
+    private volatile long elapsedMillis = 0;
+
+    @PostConstruct
+    public void setup() {
+        faceStore.getListeners().add(this);
+        faceStoreHealthIndicator.setGalleryLoader(this);
+        metricsRegistry.gauge("facestore_gallery_ready", () -> isReady() ? 1 : 0);
+        metricsRegistry.gauge("facestore_gallery_loaded_faces", faces::sum);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        ForkJoinPool pool = new ForkJoinPool(startupProperties.getParallelism());
+        pool.execute(() -> {
+            try {
+                loadAll();
+            } finally {
+                pool.shutdown();
+            }
+        });
+    }
+
+    public boolean isReady() {
+        return state != State.LOADING;
+    }
+
+    public Map<String, Object> getStatistics() {
+        return ImmutableMap.<String, Object>builder()
+                .put("State", state)
+                .put("Persons", persons.sum())
+                .put("Faces", faces.sum())
+                .put("From Checkpoint", restored.sum())
+                .put("From Store", reloaded.sum())
+                .put("Elapsed Millis", elapsedMillis)
+                .build();
+    }
+
+    @Override
+    public void onPersonUpdate(Person person) {
+        touch(person.getId());
+    }
+
+    @Override
+    public void onFaceUpdate(String personId, Face face) {
+        touch(personId);
+    }
+
+    @Override
+    public void onPersonDelete(String personId) {
+        touch(personId);
+    }
+
+    @Override
+    public void onFaceDelete(String personId, String faceId) {
+        touch(personId);
+    }
+
+    private void touch(String personId) {
+        if (state == State.LOADING) {
+            touched.add(personId);
+        }
+    }
+
+    private void loadAll() {
+        long start = System.nanoTime();
+        File directory = new File(faceStoreProperties.getDirectory());
+        boolean checkpointing = startupProperties.isCheckpoint() && !(internal instanceof SegmentFaceStore);
+        File checkpointFile = new File(startupProperties.getCheckpointFile() != null
+                ? startupProperties.getCheckpointFile()
+                : faceStoreProperties.getDirectory() + ".checkpoint");
+        GalleryCheckpoint.Writer writer = null;
+        try {
+            GalleryCheckpoint checkpoint = checkpointing ? GalleryCheckpoint.open(checkpointFile) : GalleryCheckpoint.empty();
+            writer = checkpointing ? GalleryCheckpoint.writer(checkpointFile) : null;
+            GalleryCheckpoint.Writer target = writer;
+            faceStore.getPersonIds().parallelStream().forEach(personId -> load(personId, directory, checkpoint, target));
+            if (writer != null) {
+                writer.commit();
+            }
+            state = State.READY;
+        } catch (IOException | RuntimeException e) {
+            log.error("Error loading gallery, remaining entries will be read on demand", e);
+            if (writer != null) {
+                writer.abort();
+            }
+            state = State.FAILED;
+        } finally {
+            elapsedMillis = (System.nanoTime() - start) / 1000000;
+            metricsRegistry.timer("facestore_gallery_load_seconds").recordNanos(start);
+            faceStore.getListeners().remove(this);
+            touched.clear();
+        }
+        log.info("Gallery loaded {} person(s) and {} face(s) in {} ms, {} from checkpoint and {} from store",
+                persons.sum(), faces.sum(), elapsedMillis, restored.sum(), reloaded.sum());
+    }
+
+    private void load(String personId, File directory, GalleryCheckpoint checkpoint, GalleryCheckpoint.Writer writer) {
+        long stamp = writer == null ? -1 : stampOf(new File(directory, personId));
+        byte[] entry = stamp >= 0 && checkpoint.stampOf(personId) == stamp ? checkpoint.entryOf(personId) : null;
+        PersonSnapshot snapshot;
+        if (entry != null) {
+            snapshot = (PersonSnapshot) binaryMessageCodec.decodeEntry(entry);
+            restored.increment();
+        } else {
+            snapshot = read(personId);
+            if (snapshot == null) {
+                return;
+            }
+            entry = writer == null ? null : binaryMessageCodec.encodeEntry(snapshot);
+            reloaded.increment();
+        }
+        warm(personId, snapshot);
+        if (writer != null && stamp >= 0) {
+            writer.write(personId, stamp, entry);
+        }
+    }
+
+    private PersonSnapshot read(String personId) {
+        Person person = internal.getPerson(personId);
+        if (person == null) {
+            return null;
+        }
+        List<Face> personFaces = internal.getFaceIdList(personId).stream()
+                .map(faceId -> internal.getFace(personId, faceId))
+                .map(face -> face == null || face.getPic() == null ? face : faceStore.getFace(personId, face.getId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return new PersonSnapshot(person, personFaces);
+    }
+
+    private void warm(String personId, PersonSnapshot snapshot) {
+        Cache personCache = cacheManager.getCache(FaceStoreCacheWrapper.CacheNames.PERSON);
+        Cache faceCache = cacheManager.getCache(FaceStoreCacheWrapper.CacheNames.FACE);
+        personCache.put(personId, snapshot.getPerson());
+        snapshot.getFaces().forEach(face -> faceCache.put(personId + '_' + face.getId(), face));
+        if (touched.contains(personId)) {
+            personCache.evict(personId);
+            snapshot.getFaces().forEach(face -> faceCache.evict(personId + '_' + face.getId()));
+        }
+        persons.increment();
+        faces.add(snapshot.getFaces().size());
+    }
+
+    private static long stampOf(File personDirectory) {
+        if (!personDirectory.isDirectory()) {
+            return -1;
+        }
+        try (Stream<Path> paths = Files.walk(personDirectory.toPath())) {
+            return paths.mapToLong(path -> path.toFile().lastModified()).max().orElse(-1);
+        } catch (IOException | UncheckedIOException e) {
+            return -1;
+        }
+    }
+
+    private enum State {
+        LOADING,
+        READY,
+        FAILED
+    }
+}
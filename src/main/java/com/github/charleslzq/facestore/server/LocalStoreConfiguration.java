@@ -4,33 +4,72 @@ package com.github.charleslzq.facestore.server;
 import com.fatboyindustrial.gsonjodatime.Converters;
 import com.github.charleslzq.facestore.FaceFileReadWriteStore;
 import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.gallery.CompactFaceCache;
+import com.github.charleslzq.facestore.server.gallery.CompactPersonCache;
+import com.github.charleslzq.facestore.server.gallery.Dictionary;
+import com.github.charleslzq.facestore.server.gallery.FeatureArena;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
 import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Feature;
 import com.github.charleslzq.facestore.server.type.Person;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.gson.GsonBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableCaching
-@EnableConfigurationProperties(FaceStoreProperties.class)
+@EnableConfigurationProperties({FaceStoreProperties.class, SegmentStoreProperties.class, FaceCacheProperties.class, StartupProperties.class, DedupProperties.class})
 public class LocalStoreConfiguration {
 
     @Autowired
     private FaceStoreProperties faceStoreProperties;
 
+    @Autowired
+    private SegmentStoreProperties segmentStoreProperties;
+
+    @Autowired
+    private FaceCacheProperties faceCacheProperties;
+
     @Bean
     public CacheManager cacheManager() {
-        return new CaffeineCacheManager();
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        if (faceCacheProperties.isCompact()) {
+            Dictionary<String> ids = new Dictionary<>();
+            cacheManager.setCaches(Arrays.asList(
+                    new CompactPersonCache(FaceStoreCacheWrapper.CacheNames.PERSON, ids, faceCacheProperties.getPerson().getMaximumSize()),
+                    new CompactFaceCache(
+                            FaceStoreCacheWrapper.CacheNames.FACE,
+                            ids,
+                            new FeatureArena(faceCacheProperties.getArenaChunkSize()),
+                            faceCacheProperties.getFace().getMaximumSize(),
+                            faceCacheProperties.getFace().getMaximumWeight()
+                    )
+            ));
+            return cacheManager;
+        }
+        cacheManager.setCaches(Arrays.asList(
+                caffeineCache(FaceStoreCacheWrapper.CacheNames.PERSON, faceCacheProperties.getPerson()),
+                caffeineCache(FaceStoreCacheWrapper.CacheNames.FACE, faceCacheProperties.getFace())
+        ));
+        return cacheManager;
     }
 
     @Bean
+    @ConditionalOnProperty(prefix = "face.store.segment", name = "enabled", havingValue = "false", matchIfMissing = true)
     public ListenableReadWriteFaceStore<Person, Face> listenableReadWriteFaceStore() {
         return new FaceFileReadWriteStore<>(
                 faceStoreProperties.getDirectory(),
@@ -40,4 +79,46 @@ public class LocalStoreConfiguration {
                 new ArrayList<>()
         );
     }
+
+    @Bean(name = "listenableReadWriteFaceStore")
+    @ConditionalOnProperty(prefix = "face.store.segment", name = "enabled")
+    public ListenableReadWriteFaceStore<Person, Face> segmentFaceStore() throws IOException {
+        return new SegmentFaceStore(
+                segmentStoreProperties.getDirectory() != null
+                        ? segmentStoreProperties.getDirectory()
+                        : faceStoreProperties.getDirectory(),
+                segmentStoreProperties,
+                Converters.registerLocalDateTime(new GsonBuilder()).create()
+        );
+    }
+
+    private static CaffeineCache caffeineCache(String name, FaceCacheProperties.Spec spec) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (spec.getMaximumWeight() > 0) {
+            builder.maximumWeight(spec.getMaximumWeight()).weigher((key, value) -> weigh(value));
+        } else if (spec.getMaximumSize() >= 0) {
+            builder.maximumSize(spec.getMaximumSize());
+        }
+        if (spec.getExpireAfterWrite() > 0) {
+            builder.expireAfterWrite(spec.getExpireAfterWrite(), TimeUnit.MILLISECONDS);
+        }
+        if (spec.getExpireAfterAccess() > 0) {
+            builder.expireAfterAccess(spec.getExpireAfterAccess(), TimeUnit.MILLISECONDS);
+        }
+        if (spec.isRecordStats()) {
+            builder.recordStats();
+        }
+        return new CaffeineCache(name, builder.build());
+    }
+
+    private static int weigh(Object value) {
+        if (value instanceof Face) {
+            Face face = (Face) value;
+            Feature feature = face.getData();
+            int featureBytes = feature == null || feature.getMFeatureData() == null ? 0 : feature.getMFeatureData().length;
+            int picBytes = face.getPic() == null ? 0 : face.getPic().length() * 2;
+            return 128 + featureBytes + picBytes;
+        }
+        return 256;
+    }
 }
@@ -0,0 +1,132 @@
+package com.github.charleslzq.facestore.server;
+
+class LongHashTable {
+    static final long ABSENT = 0;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final double LOAD_FACTOR = 0.6;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    LongHashTable(int stripes) {
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1) << 1);
+        this.stripes = new Stripe[count];
+        this.stripeMask = count - 1;
+        for (int index = 0; index < count; index++) {
+            this.stripes[index] = new Stripe();
+        }
+    }
+
+    long get(long key) {
+        return stripeOf(key).get(key);
+    }
+
+    void put(long key, long value) {
+        stripeOf(key).put(key, value);
+    }
+
+    void remove(long key) {
+        stripeOf(key).remove(key);
+    }
+
+    long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    long getMemoryBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            bytes += stripe.capacity() * 16L;
+        }
+        return bytes;
+    }
+
+    private Stripe stripeOf(long key) {
+        return stripes[(int) (key >>> 40) & stripeMask];
+    }
+
+    private static class Stripe {
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private long[] values = new long[INITIAL_CAPACITY];
+        private int size = 0;
+
+        private synchronized long get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = (int) key & mask; keys[slot] != ABSENT; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return ABSENT;
+        }
+
+        private synchronized void put(long key, long value) {
+            if (size + 1 > keys.length * LOAD_FACTOR) {
+                resize(keys.length * 2);
+            }
+            insert(key, value);
+        }
+
+        private synchronized void remove(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == ABSENT) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            size--;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; keys[next] != ABSENT; next = (next + 1) & mask) {
+                int home = (int) keys[next] & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = ABSENT;
+            values[hole] = ABSENT;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized int capacity() {
+            return keys.length;
+        }
+
+        private void insert(long key, long value) {
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (keys[slot] != ABSENT) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[capacity];
+            values = new long[capacity];
+            size = 0;
+            for (int index = 0; index < oldKeys.length; index++) {
+                if (oldKeys[index] != ABSENT) {
+                    insert(oldKeys[index], oldValues[index]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.server.message.Subscription;
+import com.github.charleslzq.facestore.server.metrics.Counter;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.metrics.Summary;
+import com.google.common.collect.ImmutableMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+public class OutboundSession {
+    private final WebSocketSession webSocketSession;
+    private final Executor writer;
+    private final SessionProperties sessionProperties;
+    private final BlockingDeque<Outbound> queue;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean closing = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+    private final LongAdder queuedNanos = new LongAdder();
+    private final Summary queueTimer;
+    private final Summary sendTimer;
+    private final Counter droppedCounter;
+    private volatile Subscription subscription;
+    private volatile FrameCompressor compressor;
+    private volatile WebSocketMessage<?> gapNotice;
+    private final AtomicBoolean gap = new AtomicBoolean(false);
+
+    public OutboundSession(WebSocketSession webSocketSession, Executor writer, SessionProperties sessionProperties, MetricsRegistry metricsRegistry) {
+        this.webSocketSession = webSocketSession;
+        this.writer = writer;
+        this.sessionProperties = sessionProperties;
+        this.queue = new LinkedBlockingDeque<>(sessionProperties.getQueueCapacity());
+        this.queueTimer = metricsRegistry.timer("facestore_session_queue_seconds");
+        this.sendTimer = metricsRegistry.timer("facestore_session_send_seconds");
+        this.droppedCounter = metricsRegistry.counter("facestore_session_dropped_total");
+    }
+
+    public WebSocketSession getWebSocketSession() {
+        return webSocketSession;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public void setSubscription(Subscription subscription) {
+        this.subscription = subscription;
+    }
+
+    public FrameCompressor getCompressor() {
+        return compressor;
+    }
+
+    public void setCompressor(FrameCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public void setGapNotice(WebSocketMessage<?> gapNotice) {
+        this.gapNotice = gapNotice;
+    }
+
+    public void markGap() {
+        if (gap.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    public boolean send(WebSocketMessage<?> message) {
+        if (closing.get()) {
+            return false;
+        }
+        try {
+            if (queue.offerLast(new Outbound(message, null), sessionProperties.getSendTimeLimit(), TimeUnit.MILLISECONDS)) {
+                schedule();
+                return true;
+            }
+            log.warn("Session {} did not drain its queue within {} ms, disconnecting", webSocketSession.getRemoteAddress(), sessionProperties.getSendTimeLimit());
+            disconnect();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public boolean broadcast(WebSocketMessage<?> message, String key) {
+        if (closing.get()) {
+            return false;
+        }
+        Outbound outbound = new Outbound(message, key);
+        while (!queue.offerLast(outbound)) {
+            switch (sessionProperties.getOverflowPolicy()) {
+                case COALESCE:
+                    if (key != null && queue.removeIf(queued -> key.equals(queued.key))) {
+                        coalesced.increment();
+                        continue;
+                    }
+                    break;
+                case DISCONNECT:
+                    log.warn("Session {} overflowed its queue of {}, disconnecting", webSocketSession.getRemoteAddress(), sessionProperties.getQueueCapacity());
+                    disconnect();
+                    return false;
+                default:
+                    break;
+            }
+            if (!dropOldestBroadcast()) {
+                dropped.increment();
+                droppedCounter.increment();
+                markGap();
+                return false;
+            }
+        }
+        schedule();
+        return true;
+    }
+
+    public void close() {
+        queue.clear();
+        if (compressor != null) {
+            compressor.close();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        long count = sent.sum();
+        ImmutableMap.Builder<String, Object> statistics = ImmutableMap.<String, Object>builder()
+                .put("Queue Depth", queue.size())
+                .put("Sent", count)
+                .put("Failed", failed.sum())
+                .put("Dropped", dropped.sum())
+                .put("Coalesced", coalesced.sum())
+                .put("Average Send Millis", count == 0 ? 0.0 : sendNanos.sum() / 1e6 / count)
+                .put("Max Send Millis", maxSendNanos.get() / 1e6)
+                .put("Average Queued Millis", count == 0 ? 0.0 : queuedNanos.sum() / 1e6 / count);
+        if (compressor != null) {
+            statistics.put("Compression", compressor.getStatistics());
+        }
+        return statistics.build();
+    }
+
+    private boolean dropOldestBroadcast() {
+        for (Outbound queued : queue) {
+            if (queued.key != null && queue.removeFirstOccurrence(queued)) {
+                dropped.increment();
+                droppedCounter.increment();
+                markGap();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void disconnect() {
+        if (closing.compareAndSet(false, true)) {
+            queue.clear();
+            schedule();
+        }
+    }
+
+    private void closeSlowSession() {
+        queue.clear();
+        try {
+            webSocketSession.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.warn("Error closing slow session " + webSocketSession.getRemoteAddress(), e);
+        }
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            writer.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            if (gap.getAndSet(false) && gapNotice != null && !closing.get()) {
+                write(new Outbound(gapNotice, null));
+            }
+            for (int index = 0; index < sessionProperties.getDrainBatch() && !closing.get(); index++) {
+                Outbound outbound = queue.pollFirst();
+                if (outbound == null) {
+                    break;
+                }
+                write(outbound);
+            }
+            if (closing.get() && closed.compareAndSet(false, true)) {
+                closeSlowSession();
+            }
+        } finally {
+            draining.set(false);
+        }
+        if (closing.get() ? !closed.get() : !queue.isEmpty() || gap.get()) {
+            schedule();
+        }
+    }
+
+    private void write(Outbound outbound) {
+        if (!webSocketSession.isOpen()) {
+            dropped.increment();
+            droppedCounter.increment();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            webSocketSession.sendMessage(compressor == null ? outbound.message : compressor.compress(outbound.message));
+            long end = System.nanoTime();
+            sent.increment();
+            sendNanos.add(end - start);
+            queuedNanos.add(start - outbound.enqueuedNanos);
+            sendTimer.record(end - start);
+            queueTimer.record(start - outbound.enqueuedNanos);
+            maxSendNanos.accumulateAndGet(end - start, Math::max);
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            log.error("Error sending message " + outbound.message + " to " + webSocketSession.getRemoteAddress(), e);
+        }
+    }
+
+    private static class Outbound {
+        private final WebSocketMessage<?> message;
+        private final String key;
+        private final long enqueuedNanos = System.nanoTime();
+
+        private Outbound(WebSocketMessage<?> message, String key) {
+            this.message = message;
+            this.key = key;
+        }
+    }
+}
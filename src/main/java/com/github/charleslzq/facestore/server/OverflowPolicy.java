@@ -0,0 +1,7 @@
+package com.github.charleslzq.facestore.server;
+
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    COALESCE,
+    DISCONNECT
+}
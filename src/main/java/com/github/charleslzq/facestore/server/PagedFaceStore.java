@@ -0,0 +1,7 @@
+package com.github.charleslzq.facestore.server;
+
+import java.util.List;
+
+public interface PagedFaceStore {
+    List<String> getPersonIdsAfter(String after, int limit);
+}
@@ -0,0 +1,12 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.read")
+public class ReadProperties {
+    private int ioThreads = 2 * Runtime.getRuntime().availableProcessors();
+    private int concurrency = 8;
+    private int streamThreads = Runtime.getRuntime().availableProcessors();
+}
@@ -0,0 +1,20 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Getter;
+
+@Getter
+public class RevisionConflictException extends RuntimeException {
+    private final String personId;
+    private final String faceId;
+    private final long expectedRevision;
+    private final long currentRevision;
+
+    public RevisionConflictException(String personId, String faceId, long expectedRevision, long currentRevision) {
+        super("Expected revision " + expectedRevision + " of " + (faceId == null ? personId : personId + '/' + faceId)
+                + " but found " + currentRevision);
+        this.personId = personId;
+        this.faceId = faceId;
+        this.expectedRevision = expectedRevision;
+        this.currentRevision = currentRevision;
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.session")
+public class SessionProperties {
+    private int queueCapacity = 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private long sendTimeLimit = 10000;
+    private int writerThreads = Runtime.getRuntime().availableProcessors();
+    private int drainBatch = 64;
+}
@@ -0,0 +1,12 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.snapshot")
+public class SnapshotProperties {
+    private int defaultBatchSize = 200;
+    private int maxBatchSize = 2000;
+    private int maxFrameSize = 4 * 1024 * 1024;
+}
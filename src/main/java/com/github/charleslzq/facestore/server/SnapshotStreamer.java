@@ -0,0 +1,147 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.message.EntityKey;
+import com.github.charleslzq.facestore.server.message.Message;
+import com.github.charleslzq.facestore.server.message.MessageCodec;
+import com.github.charleslzq.facestore.server.message.MessageHeaders;
+import com.github.charleslzq.facestore.server.message.PersonSnapshot;
+import com.github.charleslzq.facestore.server.message.ServerMessagePayloadType;
+import com.github.charleslzq.facestore.server.message.Timestamps;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.common.collect.ImmutableMap;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class SnapshotStreamer {
+    private static final int FRAME_OVERHEAD = 1024;
+    @Autowired
+    @Qualifier("faceStoreCacheWrapper")
+    private ListenableReadWriteFaceStore<Person, Face> faceStore;
+    @Autowired
+    private SnapshotProperties snapshotProperties;
+
+    public <E> Result stream(WebSocketSession webSocketSession, MessageCodec<E> codec, String token, String requestedBatchSize, Consumer<WebSocketMessage<?>> sink) {
+        return stream(webSocketSession, codec, token, requestedBatchSize, personId -> true, sink);
+    }
+
+    public <E> Result stream(WebSocketSession webSocketSession, MessageCodec<E> codec, String token, String requestedBatchSize, Predicate<String> personFilter, Consumer<WebSocketMessage<?>> sink) {
+        int batchSize = batchSize(requestedBatchSize);
+        int frameLimit = Math.max(
+                FRAME_OVERHEAD,
+                Math.min(snapshotProperties.getMaxFrameSize(), codec.getMessageSizeLimit(webSocketSession)) - FRAME_OVERHEAD
+        );
+        List<String> persons = faceStore.getPersonIds().stream().filter(personFilter).collect(Collectors.toList());
+        List<E> entries = new ArrayList<>(batchSize);
+        int entriesLength = 0;
+        Result result = new Result();
+        for (String personId : persons) {
+            if (!webSocketSession.isOpen()) {
+                log.warn("Session {} closed, abort snapshot {}", webSocketSession.getRemoteAddress(), token);
+                return result;
+            }
+            PersonSnapshot snapshot = snapshotOf(personId);
+            if (snapshot == null) {
+                continue;
+            }
+            E entry = codec.encodeEntry(snapshot);
+            int entryLength = codec.lengthOf(entry);
+            if (!entries.isEmpty() && (entries.size() >= batchSize || entriesLength + entryLength > frameLimit)) {
+                sink.accept(codec.encodeBatch(headers(token, result.frames++), entries));
+                entries.clear();
+                entriesLength = 0;
+            }
+            if (entryLength > frameLimit) {
+                log.warn("Person {} exceeds snapshot frame limit {} with {} byte(s), streaming its faces apart", personId, frameLimit, entryLength);
+                streamApart(codec, token, snapshot, frameLimit, result, sink);
+                continue;
+            }
+            entries.add(entry);
+            entriesLength += entryLength + 1;
+        }
+        if (!entries.isEmpty()) {
+            sink.accept(codec.encodeBatch(headers(token, result.frames++), entries));
+        }
+        log.info("Snapshot {} streamed {} person(s) in {} frame(s), skipped {} face(s)", token, persons.size(), result.frames, result.skipped.size());
+        return result;
+    }
+
+    private <E> void streamApart(MessageCodec<E> codec, String token, PersonSnapshot snapshot, int frameLimit, Result result, Consumer<WebSocketMessage<?>> sink) {
+        String personId = snapshot.getPerson().getId();
+        sink.accept(codec.encode(new Message<>(ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.PERSON.name(),
+                MessageHeaders.TOKEN, token,
+                MessageHeaders.INDEX, String.valueOf(result.frames++),
+                MessageHeaders.TIMESTAMP, Timestamps.now()
+        ), snapshot.getPerson())));
+        for (Face face : snapshot.getFaces()) {
+            int faceLength = codec.lengthOf(codec.encodeEntry(face));
+            if (faceLength > frameLimit) {
+                log.warn("Face {} of person {} exceeds snapshot frame limit {} with {} byte(s), skip it", face.getId(), personId, frameLimit, faceLength);
+                result.skipped.add(new EntityKey(personId, face.getId()));
+            } else {
+                sink.accept(codec.encode(new Message<>(ImmutableMap.of(
+                        MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name(),
+                        MessageHeaders.TOKEN, token,
+                        MessageHeaders.PERSON_ID, personId,
+                        MessageHeaders.INDEX, String.valueOf(result.frames++),
+                        MessageHeaders.TIMESTAMP, Timestamps.now()
+                ), face)));
+            }
+        }
+    }
+
+    private int batchSize(String requestedBatchSize) {
+        if (requestedBatchSize == null) {
+            return snapshotProperties.getDefaultBatchSize();
+        }
+        try {
+            return Math.max(1, Math.min(snapshotProperties.getMaxBatchSize(), Integer.parseInt(requestedBatchSize)));
+        } catch (NumberFormatException e) {
+            log.warn("Illegal batch size {}, fall back to {}", requestedBatchSize, snapshotProperties.getDefaultBatchSize());
+            return snapshotProperties.getDefaultBatchSize();
+        }
+    }
+
+    private PersonSnapshot snapshotOf(String personId) {
+        Person person = faceStore.getPerson(personId);
+        if (person == null) {
+            return null;
+        }
+        return new PersonSnapshot(person, faceStore.getFaceIdList(personId).stream()
+                .map(faceId -> faceStore.getFace(personId, faceId))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
+
+    private Map<String, String> headers(String token, int index) {
+        return ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.SNAPSHOT_BATCH.name(),
+                MessageHeaders.TOKEN, token,
+                MessageHeaders.INDEX, String.valueOf(index),
+                MessageHeaders.TIMESTAMP, Timestamps.now()
+        );
+    }
+
+    @Data
+    public static class Result {
+        private int frames = 0;
+        private final List<EntityKey> skipped = new ArrayList<>();
+    }
+}
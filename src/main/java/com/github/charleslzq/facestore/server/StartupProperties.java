@@ -0,0 +1,13 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.startup")
+public class StartupProperties {
+    private boolean load = false;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean checkpoint = true;
+    private String checkpointFile;
+}
@@ -0,0 +1,211 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.Meta;
+import com.google.common.collect.ImmutableMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Slf4j
+public class StripedChangeDispatcher<P extends Meta, F extends Meta> implements BatchFaceStoreChangeListener<P, F> {
+    private final FaceStoreChangeListener<P, F> faceStoreChangeListener;
+    private final DispatchProperties dispatchProperties;
+    private final Runnable onDrop;
+    private final List<Stripe> stripes = new ArrayList<>();
+    private final ExecutorService executor;
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+
+    public StripedChangeDispatcher(FaceStoreChangeListener<P, F> faceStoreChangeListener, DispatchProperties dispatchProperties, Runnable onDrop) {
+        this.faceStoreChangeListener = faceStoreChangeListener;
+        this.dispatchProperties = dispatchProperties;
+        this.onDrop = onDrop;
+        this.executor = Executors.newFixedThreadPool(dispatchProperties.getStripes());
+        for (int index = 0; index < dispatchProperties.getStripes(); index++) {
+            Stripe stripe = new Stripe();
+            stripes.add(stripe);
+            executor.execute(stripe);
+        }
+    }
+
+    @Override
+    public void onPersonUpdate(P p) {
+        offer(new FaceStoreChange<>(ChangeType.PERSON_UPDATE, p.getId(), null, p, null));
+    }
+
+    @Override
+    public void onFaceUpdate(String s, F f) {
+        offer(new FaceStoreChange<>(ChangeType.FACE_UPDATE, s, f.getId(), null, f));
+    }
+
+    @Override
+    public void onPersonDelete(String s) {
+        offer(new FaceStoreChange<>(ChangeType.PERSON_DELETE, s, null, null, null));
+    }
+
+    @Override
+    public void onFaceDelete(String s, String s1) {
+        offer(new FaceStoreChange<>(ChangeType.FACE_DELETE, s, s1, null, null));
+    }
+
+    @Override
+    public void onBatch(List<FaceStoreChange<P, F>> changes) {
+        Map<Stripe, List<FaceStoreChange<P, F>>> partitions = new LinkedHashMap<>();
+        changes.forEach(change -> partitions.computeIfAbsent(stripeOf(change.getPersonId()), stripe -> new ArrayList<>()).add(change));
+        partitions.forEach((stripe, partition) -> stripe.offer(new Object(), partition, false));
+    }
+
+    public void close() {
+        running = false;
+        stripes.forEach(Stripe::wakeUp);
+        executor.shutdown();
+    }
+
+    public Map<String, Object> getStatistics() {
+        return ImmutableMap.<String, Object>builder()
+                .put("Stripes", stripes.size())
+                .put("Queue Depth", stripes.stream().mapToInt(Stripe::depth).sum())
+                .put("Dispatched", dispatched.sum())
+                .put("Coalesced", coalesced.sum())
+                .put("Dropped", dropped.sum())
+                .build();
+    }
+
+    private void offer(FaceStoreChange<P, F> change) {
+        stripeOf(change.getPersonId()).offer(ChangeEvent.keyOf(change.getPersonId(), change.getFaceId()), change, true);
+    }
+
+    private Stripe stripeOf(String personId) {
+        return stripes.get(Math.floorMod(personId == null ? 0 : personId.hashCode(), stripes.size()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(Object entry) {
+        try {
+            if (entry instanceof FaceStoreChange) {
+                ((FaceStoreChange<P, F>) entry).dispatch(faceStoreChangeListener);
+                dispatched.increment();
+            } else {
+                List<FaceStoreChange<P, F>> changes = (List<FaceStoreChange<P, F>>) entry;
+                if (faceStoreChangeListener instanceof BatchFaceStoreChangeListener) {
+                    ((BatchFaceStoreChangeListener<P, F>) faceStoreChangeListener).onBatch(changes);
+                } else {
+                    changes.forEach(change -> change.dispatch(faceStoreChangeListener));
+                }
+                dispatched.add(changes.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Error dispatching change " + entry, e);
+        }
+    }
+
+    private static boolean isSameUpdate(Object queued, Object entry) {
+        if (!(queued instanceof FaceStoreChange) || !(entry instanceof FaceStoreChange)) {
+            return false;
+        }
+        ChangeType type = ((FaceStoreChange<?, ?>) queued).getType();
+        return type == ((FaceStoreChange<?, ?>) entry).getType()
+                && (type == ChangeType.PERSON_UPDATE || type == ChangeType.FACE_UPDATE);
+    }
+
+    private class Stripe implements Runnable {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private LinkedHashMap<Object, Object> pending = new LinkedHashMap<>();
+        private Map<Object, Object> latest = new HashMap<>();
+
+        private void offer(Object key, Object entry, boolean coalesce) {
+            lock.lock();
+            try {
+                if (coalesce) {
+                    Object slot = latest.get(key);
+                    if (slot != null && isSameUpdate(pending.get(slot), entry)) {
+                        pending.replace(slot, entry);
+                        coalesced.increment();
+                        notEmpty.signal();
+                        return;
+                    }
+                }
+                if (pending.size() < dispatchProperties.getQueueCapacity()) {
+                    Object slot = new Object();
+                    pending.put(slot, entry);
+                    if (coalesce) {
+                        latest.put(key, slot);
+                    }
+                    notEmpty.signal();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            dropped.increment();
+            log.warn("Change dispatch queue full, drop change {} and ask sessions to resynchronize", key);
+            onDrop.run();
+        }
+
+        private int depth() {
+            lock.lock();
+            try {
+                return pending.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void wakeUp() {
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    lock.lock();
+                    try {
+                        while (pending.isEmpty()) {
+                            if (!running) {
+                                return;
+                            }
+                            notEmpty.await();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (running && dispatchProperties.getCoalesceWindow() > 0) {
+                        TimeUnit.MILLISECONDS.sleep(dispatchProperties.getCoalesceWindow());
+                    }
+                    Map<Object, Object> batch;
+                    lock.lock();
+                    try {
+                        batch = pending;
+                        pending = new LinkedHashMap<>();
+                        latest = new HashMap<>();
+                    } finally {
+                        lock.unlock();
+                    }
+                    batch.values().forEach(StripedChangeDispatcher.this::deliver);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.server.message.Subscription;
+import com.github.charleslzq.facestore.server.type.Person;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class SubscriptionIndex {
+    private final Set<OutboundSession> unfiltered = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<OutboundSession>> byPersonId = new ConcurrentHashMap<>();
+    private final Map<String, Set<OutboundSession>> byPrefix = new ConcurrentHashMap<>();
+    private final Map<String, Set<OutboundSession>> byTag = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, Integer> prefixLengths = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> personTags = new ConcurrentHashMap<>();
+    private final Function<String, Person> personLoader;
+    private final Supplier<Collection<String>> personIds;
+
+    public SubscriptionIndex(Function<String, Person> personLoader, Supplier<Collection<String>> personIds) {
+        this.personLoader = personLoader;
+        this.personIds = personIds;
+    }
+
+    public synchronized void subscribe(OutboundSession session, Subscription subscription) {
+        unsubscribe(session);
+        if (subscription == null || subscription.isEmpty()) {
+            unfiltered.add(session);
+            return;
+        }
+        session.setSubscription(subscription);
+        forEach(subscription.getPersonIds(), personId -> add(byPersonId, personId, session));
+        forEach(subscription.getPrefixes(), prefix -> {
+            add(byPrefix, prefix, session);
+            prefixLengths.merge(prefix.length(), 1, Integer::sum);
+        });
+        boolean tracking = !byTag.isEmpty();
+        forEach(subscription.getTags(), tag -> add(byTag, tag, session));
+        if (!tracking && !byTag.isEmpty()) {
+            personIds.get().forEach(personId -> {
+                Set<String> tags = load(personId);
+                if (tags != null) {
+                    personTags.putIfAbsent(personId, tags);
+                }
+            });
+        }
+    }
+
+    public synchronized void unsubscribe(OutboundSession session) {
+        unfiltered.remove(session);
+        Subscription subscription = session.getSubscription();
+        if (subscription == null) {
+            return;
+        }
+        session.setSubscription(null);
+        forEach(subscription.getPersonIds(), personId -> remove(byPersonId, personId, session));
+        forEach(subscription.getPrefixes(), prefix -> {
+            remove(byPrefix, prefix, session);
+            prefixLengths.computeIfPresent(prefix.length(), (length, count) -> count == 1 ? null : count - 1);
+        });
+        forEach(subscription.getTags(), tag -> remove(byTag, tag, session));
+        if (byTag.isEmpty()) {
+            personTags.clear();
+        }
+    }
+
+    public Set<OutboundSession> sessionsFor(String personId, Collection<String> tags) {
+        Set<OutboundSession> sessions = new HashSet<>(unfiltered);
+        addAll(sessions, byPersonId.get(personId));
+        for (int length : prefixLengths.keySet()) {
+            if (length > personId.length()) {
+                break;
+            }
+            addAll(sessions, byPrefix.get(personId.substring(0, length)));
+        }
+        for (String tag : tags) {
+            addAll(sessions, byTag.get(tag));
+        }
+        return sessions;
+    }
+
+    public Set<String> tagsOf(String personId) {
+        if (byTag.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> tags = personTags.get(personId);
+        if (tags == null) {
+            tags = load(personId);
+            if (tags == null) {
+                return Collections.emptySet();
+            }
+            personTags.putIfAbsent(personId, tags);
+        }
+        return tags;
+    }
+
+    public Set<String> retag(String personId, Collection<String> tags) {
+        Set<String> current = tags == null ? Collections.emptySet() : new HashSet<>(tags);
+        if (byTag.isEmpty()) {
+            personTags.remove(personId);
+            return current;
+        }
+        Set<String> previous = personTags.put(personId, current);
+        if (previous == null || previous.isEmpty()) {
+            return current;
+        }
+        Set<String> affected = new HashSet<>(previous);
+        affected.addAll(current);
+        return affected;
+    }
+
+    public Set<String> forget(String personId) {
+        Set<String> tags = personTags.remove(personId);
+        if (tags != null) {
+            return tags;
+        }
+        return byTag.isEmpty() ? Collections.emptySet() : new HashSet<>(byTag.keySet());
+    }
+
+    private Set<String> load(String personId) {
+        Person person = personLoader.apply(personId);
+        if (person == null) {
+            return null;
+        }
+        return person.getTags() == null ? Collections.emptySet() : new HashSet<>(person.getTags());
+    }
+
+    private static void forEach(Set<String> values, Consumer<String> action) {
+        if (values != null) {
+            values.forEach(action);
+        }
+    }
+
+    private static void add(Map<String, Set<OutboundSession>> index, String key, OutboundSession session) {
+        index.computeIfAbsent(key, ignored -> ConcurrentHashMap.newKeySet()).add(session);
+    }
+
+    private static void remove(Map<String, Set<OutboundSession>> index, String key, OutboundSession session) {
+        index.computeIfPresent(key, (ignored, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    private static void addAll(Set<OutboundSession> sessions, Set<OutboundSession> subscribed) {
+        if (subscribed != null) {
+            sessions.addAll(subscribed);
+        }
+    }
+}
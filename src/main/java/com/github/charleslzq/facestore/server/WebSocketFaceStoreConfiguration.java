@@ -1,28 +1,68 @@
 package com.github.charleslzq.facestore.server;
 
+import com.github.charleslzq.facestore.server.message.BinaryMessageCodec;
+import com.github.charleslzq.facestore.server.message.JsonMessageCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Configuration
 @EnableWebSocket
+@EnableConfigurationProperties({SnapshotProperties.class, ChangeLogProperties.class, SessionProperties.class, WriteBehindProperties.class, ReadProperties.class, DispatchProperties.class, CompressionProperties.class})
 public class WebSocketFaceStoreConfiguration implements WebSocketConfigurer {
 
+    private static final String PER_MESSAGE_DEFLATE = "permessage-deflate";
+
     @Autowired
     private FaceStoreWebSocketBackend faceStoreWebSocketBackend;
+    @Autowired
+    private CompressionProperties compressionProperties;
 
     @Bean
     public ServletServerContainerFactoryBean createServletServerContainerFactoryBean() {
         ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
         container.setMaxTextMessageBufferSize(5 * 1024 * 1024);
+        container.setMaxBinaryMessageBufferSize(5 * 1024 * 1024);
         return container;
     }
 
+    @Bean
+    public DefaultHandshakeHandler faceStoreHandshakeHandler() {
+        DefaultHandshakeHandler handshakeHandler = new DefaultHandshakeHandler() {
+            @Override
+            protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request, List<WebSocketExtension> requestedExtensions, List<WebSocketExtension> supportedExtensions) {
+                return super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions).stream()
+                        .filter(extension -> compressionProperties.isPerMessageDeflate() || !PER_MESSAGE_DEFLATE.equals(extension.getName()))
+                        .collect(Collectors.toList());
+            }
+        };
+        if (compressionProperties.isEnabled()) {
+            handshakeHandler.setSupportedProtocols(
+                    BinaryMessageCodec.PROTOCOL + FrameCompressor.SUFFIX,
+                    JsonMessageCodec.PROTOCOL + FrameCompressor.SUFFIX,
+                    BinaryMessageCodec.PROTOCOL,
+                    JsonMessageCodec.PROTOCOL
+            );
+        } else {
+            handshakeHandler.setSupportedProtocols(BinaryMessageCodec.PROTOCOL, JsonMessageCodec.PROTOCOL);
+        }
+        return handshakeHandler;
+    }
+
     public void registerWebSocketHandlers(WebSocketHandlerRegistry webSocketHandlerRegistry) {
-        webSocketHandlerRegistry.addHandler(faceStoreWebSocketBackend, "/face-store").setAllowedOrigins("*");
+        webSocketHandlerRegistry.addHandler(faceStoreWebSocketBackend, "/face-store")
+                .setHandshakeHandler(faceStoreHandshakeHandler())
+                .setAllowedOrigins("*");
     }
 }
@@ -0,0 +1,14 @@
+package com.github.charleslzq.facestore.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.write-behind")
+public class WriteBehindProperties {
+    private boolean enabled = false;
+    private int batchSize = 256;
+    private long flushInterval = 10;
+    private int stripes = 4;
+    private int queueCapacity = 10000;
+}
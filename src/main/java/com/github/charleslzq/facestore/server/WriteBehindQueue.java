@@ -0,0 +1,197 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class WriteBehindQueue {
+    @Autowired
+    private WriteBehindProperties writeBehindProperties;
+    @Autowired
+    @Qualifier("listenableReadWriteFaceStore")
+    private ListenableReadWriteFaceStore<Person, Face> internal;
+    private final List<BlockingQueue<PendingWrite>> stripes = new ArrayList<>();
+    private final ReadWriteLock lifecycle = new ReentrantReadWriteLock();
+    private ExecutorService flushers;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void setup() {
+        if (!writeBehindProperties.isEnabled()) {
+            return;
+        }
+        if (!(internal instanceof SegmentFaceStore)) {
+            log.warn("Write-behind needs the segment store (face.store.segment.enabled=true) to make group commits durable, {} writes synchronously instead",
+                    internal.getClass().getSimpleName());
+            return;
+        }
+        running = true;
+        flushers = Executors.newFixedThreadPool(writeBehindProperties.getStripes());
+        for (int index = 0; index < writeBehindProperties.getStripes(); index++) {
+            BlockingQueue<PendingWrite> stripe = new LinkedBlockingQueue<>(writeBehindProperties.getQueueCapacity());
+            stripes.add(stripe);
+            flushers.execute(() -> flush(stripe));
+        }
+        log.info("Write-behind enabled with {} stripe(s), batch size {}, flush interval {} ms",
+                writeBehindProperties.getStripes(), writeBehindProperties.getBatchSize(), writeBehindProperties.getFlushInterval());
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (flushers != null) {
+            lifecycle.writeLock().lock();
+            try {
+                running = false;
+            } finally {
+                lifecycle.writeLock().unlock();
+            }
+            flushers.shutdown();
+            flushers.awaitTermination(1, TimeUnit.MINUTES);
+            List<PendingWrite> abandoned = new ArrayList<>();
+            stripes.forEach(stripe -> stripe.drainTo(abandoned));
+            if (!abandoned.isEmpty()) {
+                log.warn("Write-behind closed with {} write(s) not committed", abandoned.size());
+                IllegalStateException closed = new IllegalStateException("Write-behind queue closed");
+                abandoned.forEach(pendingWrite -> pendingWrite.future.completeExceptionally(closed));
+            }
+        }
+    }
+
+    public CompletableFuture<Void> submit(String personId, Runnable write) {
+        PendingWrite pendingWrite = new PendingWrite(write);
+        lifecycle.readLock().lock();
+        try {
+            if (running) {
+                stripes.get(stripeOf(personId)).put(pendingWrite);
+                return pendingWrite.future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingWrite.future.completeExceptionally(e);
+            return pendingWrite.future;
+        } finally {
+            lifecycle.readLock().unlock();
+        }
+        commit(Collections.singletonList(pendingWrite));
+        return pendingWrite.future;
+    }
+
+    public <T, R> CompletableFuture<List<R>> submitAll(List<T> items, Function<T, String> personIdOf, Function<List<T>, List<R>> write) {
+        Map<Integer, List<T>> partitions = items.stream()
+                .collect(Collectors.groupingBy(item -> stripeOf(personIdOf.apply(item)), LinkedHashMap::new, Collectors.toList()));
+        List<CompletableFuture<List<R>>> futures = partitions.values().stream()
+                .map(partition -> {
+                    List<R> results = new ArrayList<>(partition.size());
+                    return submit(personIdOf.apply(partition.get(0)), () -> results.addAll(write.apply(partition)))
+                            .thenApply(ignored -> results);
+                })
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(ignored -> futures.stream()
+                        .flatMap(future -> future.join().stream())
+                        .collect(Collectors.toList()));
+    }
+
+    private int stripeOf(String personId) {
+        return stripes.isEmpty() ? 0 : Math.floorMod(personId == null ? 0 : personId.hashCode(), stripes.size());
+    }
+
+    private void flush(BlockingQueue<PendingWrite> stripe) {
+        List<PendingWrite> batch = new ArrayList<>(writeBehindProperties.getBatchSize());
+        while (running || !stripe.isEmpty()) {
+            try {
+                PendingWrite first = stripe.poll(writeBehindProperties.getFlushInterval(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeBehindProperties.getFlushInterval());
+                while (batch.size() < writeBehindProperties.getBatchSize()) {
+                    stripe.drainTo(batch, writeBehindProperties.getBatchSize() - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= writeBehindProperties.getBatchSize() || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = stripe.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pendingWrite -> pendingWrite.future.completeExceptionally(e));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        List<PendingWrite> applied = new ArrayList<>(batch.size());
+        Runnable writes = () -> {
+            for (PendingWrite pendingWrite : batch) {
+                try {
+                    pendingWrite.write.run();
+                    applied.add(pendingWrite);
+                } catch (RuntimeException e) {
+                    pendingWrite.future.completeExceptionally(e);
+                }
+            }
+        };
+        if (internal instanceof SegmentFaceStore) {
+            ((SegmentFaceStore) internal).deferSync(writes);
+        } else {
+            writes.run();
+        }
+        try {
+            if (internal instanceof SegmentFaceStore) {
+                ((SegmentFaceStore) internal).sync();
+            }
+            applied.forEach(pendingWrite -> pendingWrite.future.complete(null));
+        } catch (RuntimeException e) {
+            log.error("Error committing batch of " + applied.size() + " write(s)", e);
+            applied.forEach(pendingWrite -> pendingWrite.future.completeExceptionally(e));
+        }
+        if (batch.size() > 1) {
+            log.debug("Committed {} write(s) as a group in {} us", batch.size(), (System.nanoTime() - start) / 1000);
+        }
+    }
+
+    private static class PendingWrite {
+        private final Runnable write;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(Runnable write) {
+            this.write = write;
+        }
+    }
+}
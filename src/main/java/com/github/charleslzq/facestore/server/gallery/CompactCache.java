@@ -0,0 +1,257 @@
+package com.github.charleslzq.facestore.server.gallery;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public abstract class CompactCache<T> implements Cache {
+    private static final int INITIAL_CAPACITY = 1024;
+    private final String name;
+    private final Class<T> type;
+    private final long maximumSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Object, Integer> slots = new HashMap<>();
+    private final LongAdder evictions = new LongAdder();
+    private Object[] keys = new Object[0];
+    private boolean[] absent = new boolean[0];
+    private boolean[] referenced = new boolean[0];
+    private int[] freeSlots = new int[0];
+    private int freeCount = 0;
+    private int capacity = 0;
+    private int highWater = 0;
+    private int hand = 0;
+
+    protected CompactCache(String name, Class<T> type, long maximumSize) {
+        this.name = name;
+        this.type = type;
+        this.maximumSize = maximumSize;
+    }
+
+    protected abstract void grow(int capacity);
+
+    protected abstract void store(int slot, T value);
+
+    protected abstract T load(int slot);
+
+    protected abstract void release(int slot);
+
+    protected abstract void releaseAll();
+
+    protected boolean isOverweight() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                return null;
+            }
+            referenced[slot] = true;
+            return new SimpleValueWrapper(absent[slot] ? null : load(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> V get(Object key, Class<V> valueType) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && valueType != null && !valueType.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + valueType.getName() + "]: " + value);
+        }
+        return (V) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> V get(Object key, Callable<V> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (V) wrapper.get();
+        }
+        try {
+            V value = valueLoader.call();
+            put(key, value);
+            return value;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value != null && !type.isInstance(value)) {
+            throw new IllegalArgumentException("Cache " + name + " only holds " + type.getSimpleName());
+        }
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(key);
+            if (slot != null) {
+                if (!absent[slot]) {
+                    release(slot);
+                }
+            } else {
+                while (isFull()) {
+                    if (!evictOne(-1)) {
+                        return;
+                    }
+                }
+                slot = allocateSlot();
+                keys[slot] = key;
+                slots.put(key, slot);
+            }
+            absent[slot] = value == null;
+            referenced[slot] = true;
+            if (value != null) {
+                store(slot, type.cast(value));
+            }
+            while (isOverweight()) {
+                if (!evictOne(slot)) {
+                    slots.remove(key);
+                    releaseSlot(slot);
+                    return;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        lock.writeLock().lock();
+        try {
+            ValueWrapper existing = get(key);
+            if (existing == null) {
+                put(key, value);
+            }
+            return existing;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(key);
+            if (slot != null) {
+                releaseSlot(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < highWater; slot++) {
+                if (keys[slot] != null && !absent[slot]) {
+                    release(slot);
+                }
+            }
+            slots.clear();
+            Arrays.fill(keys, null);
+            Arrays.fill(absent, false);
+            Arrays.fill(referenced, false);
+            freeCount = 0;
+            highWater = 0;
+            hand = 0;
+            releaseAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isFull() {
+        return maximumSize >= 0 && slots.size() >= maximumSize;
+    }
+
+    private boolean evictOne(int keep) {
+        for (int step = 0; step < highWater * 2; step++) {
+            int slot = hand;
+            hand = hand + 1 < highWater ? hand + 1 : 0;
+            if (keys[slot] == null || slot == keep) {
+                continue;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+                continue;
+            }
+            slots.remove(keys[slot]);
+            releaseSlot(slot);
+            evictions.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private void releaseSlot(int slot) {
+        if (!absent[slot]) {
+            release(slot);
+        }
+        keys[slot] = null;
+        absent[slot] = false;
+        referenced[slot] = false;
+        freeSlot(slot);
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (highWater == capacity) {
+            capacity = Math.max(INITIAL_CAPACITY, capacity * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            absent = Arrays.copyOf(absent, capacity);
+            referenced = Arrays.copyOf(referenced, capacity);
+            grow(capacity);
+        }
+        return highWater++;
+    }
+
+    private void freeSlot(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(INITIAL_CAPACITY, freeSlots.length * 2));
+        }
+        freeSlots[freeCount++] = slot;
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.charleslzq.facestore.server.gallery;
+
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Feature;
+import com.github.charleslzq.facestore.server.type.Version;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class CompactFaceCache extends CompactCache<Face> {
+    private final Dictionary<String> ids;
+    private final Dictionary<Version> versions = new Dictionary<>();
+    private final FeatureArena arena;
+    private final long maximumBytes;
+    private long pictureBytes = 0;
+    private int[] faceIds = new int[0];
+    private long[] featureAddresses = new long[0];
+    private int[] featureLengths = new int[0];
+    private byte[][] pictures = new byte[0][];
+    private String[] pictureHashes = new String[0];
+    private int[] versionCodes = new int[0];
+    private long[] createTimes = new long[0];
+    private long[] updateTimes = new long[0];
+    private long[] revisions = new long[0];
+
+    public CompactFaceCache(String name, Dictionary<String> ids, FeatureArena arena, long maximumSize, long maximumBytes) {
+        super(name, Face.class, maximumSize);
+        this.ids = ids;
+        this.arena = arena;
+        this.maximumBytes = maximumBytes;
+    }
+
+    public long getFeatureBytes() {
+        return arena.getUsedBytes();
+    }
+
+    public long getReservedFeatureBytes() {
+        return arena.getReservedBytes();
+    }
+
+    public long getPictureBytes() {
+        return pictureBytes;
+    }
+
+    @Override
+    protected boolean isOverweight() {
+        return maximumBytes >= 0 && arena.getUsedBytes() + pictureBytes > maximumBytes;
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        faceIds = Arrays.copyOf(faceIds, capacity);
+        featureAddresses = Arrays.copyOf(featureAddresses, capacity);
+        featureLengths = Arrays.copyOf(featureLengths, capacity);
+        pictures = Arrays.copyOf(pictures, capacity);
+        pictureHashes = Arrays.copyOf(pictureHashes, capacity);
+        versionCodes = Arrays.copyOf(versionCodes, capacity);
+        createTimes = Arrays.copyOf(createTimes, capacity);
+        updateTimes = Arrays.copyOf(updateTimes, capacity);
+        revisions = Arrays.copyOf(revisions, capacity);
+    }
+
+    @Override
+    protected void store(int slot, Face face) {
+        faceIds[slot] = ids.encode(face.getId());
+        byte[] feature = face.getData() == null ? null : face.getData().getMFeatureData();
+        if (feature == null) {
+            featureLengths[slot] = -1;
+        } else {
+            featureAddresses[slot] = arena.allocate(feature);
+            featureLengths[slot] = feature.length;
+        }
+        pictures[slot] = face.getPic() == null ? null : face.getPic().getBytes(StandardCharsets.UTF_8);
+        pictureBytes += pictures[slot] == null ? 0 : pictures[slot].length;
+        pictureHashes[slot] = face.getPicHash();
+        versionCodes[slot] = versions.encode(face.getVersion());
+        createTimes[slot] = EpochMillis.of(face.getCreateTime());
+        updateTimes[slot] = EpochMillis.of(face.getUpdateTime());
+        revisions[slot] = face.getRevision();
+    }
+
+    @Override
+    protected Face load(int slot) {
+        Face face = new Face();
+        face.setId(ids.decode(faceIds[slot]));
+        if (featureLengths[slot] >= 0) {
+            Feature feature = new Feature();
+            feature.setMFeatureData(arena.read(featureAddresses[slot], featureLengths[slot]));
+            face.setData(feature);
+        }
+        face.setPic(pictures[slot] == null ? null : new String(pictures[slot], StandardCharsets.UTF_8));
+        face.setPicHash(pictureHashes[slot]);
+        face.setVersion(versions.decode(versionCodes[slot]));
+        face.setCreateTime(EpochMillis.toLocalDateTime(createTimes[slot]));
+        face.setUpdateTime(EpochMillis.toLocalDateTime(updateTimes[slot]));
+        face.setRevision(revisions[slot]);
+        return face;
+    }
+
+    @Override
+    protected void release(int slot) {
+        ids.release(faceIds[slot]);
+        versions.release(versionCodes[slot]);
+        if (featureLengths[slot] >= 0) {
+            arena.free(featureAddresses[slot], featureLengths[slot]);
+            featureLengths[slot] = -1;
+        }
+        pictureBytes -= pictures[slot] == null ? 0 : pictures[slot].length;
+        pictures[slot] = null;
+        pictureHashes[slot] = null;
+    }
+
+    @Override
+    protected void releaseAll() {
+        arena.clear();
+        Arrays.fill(pictures, null);
+        Arrays.fill(pictureHashes, null);
+        pictureBytes = 0;
+    }
+}
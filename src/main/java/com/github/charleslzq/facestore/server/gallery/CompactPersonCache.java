@@ -0,0 +1,66 @@
+package com.github.charleslzq.facestore.server.gallery;
+
+import com.github.charleslzq.facestore.server.type.Person;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+public class CompactPersonCache extends CompactCache<Person> {
+    private final Dictionary<String> ids;
+    private int[] personIds = new int[0];
+    private String[] names = new String[0];
+    private String[][] tags = new String[0][];
+    private long[] createTimes = new long[0];
+    private long[] updateTimes = new long[0];
+    private long[] revisions = new long[0];
+
+    public CompactPersonCache(String name, Dictionary<String> ids, long maximumSize) {
+        super(name, Person.class, maximumSize);
+        this.ids = ids;
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        personIds = Arrays.copyOf(personIds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+        createTimes = Arrays.copyOf(createTimes, capacity);
+        updateTimes = Arrays.copyOf(updateTimes, capacity);
+        revisions = Arrays.copyOf(revisions, capacity);
+    }
+
+    @Override
+    protected void store(int slot, Person person) {
+        personIds[slot] = ids.encode(person.getId());
+        names[slot] = person.getName();
+        tags[slot] = person.getTags() == null ? null : person.getTags().toArray(new String[0]);
+        createTimes[slot] = EpochMillis.of(person.getCreateTime());
+        updateTimes[slot] = EpochMillis.of(person.getUpdateTime());
+        revisions[slot] = person.getRevision();
+    }
+
+    @Override
+    protected Person load(int slot) {
+        Person person = new Person();
+        person.setId(ids.decode(personIds[slot]));
+        person.setName(names[slot]);
+        person.setTags(tags[slot] == null ? null : new LinkedHashSet<>(Arrays.asList(tags[slot])));
+        person.setCreateTime(EpochMillis.toLocalDateTime(createTimes[slot]));
+        person.setUpdateTime(EpochMillis.toLocalDateTime(updateTimes[slot]));
+        person.setRevision(revisions[slot]);
+        return person;
+    }
+
+    @Override
+    protected void release(int slot) {
+        ids.release(personIds[slot]);
+        names[slot] = null;
+        tags[slot] = null;
+    }
+
+    @Override
+    protected void releaseAll() {
+        Arrays.fill(names, null);
+        Arrays.fill(tags, null);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.charleslzq.facestore.server.gallery;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Dictionary<T> {
+    private final Map<T, Integer> codes = new HashMap<>();
+    private volatile Object[] values = new Object[64];
+    private int[] references = new int[64];
+    private int[] freeCodes = new int[0];
+    private int freeCount = 0;
+    private int size = 0;
+
+    public synchronized int encode(T value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = allocate();
+            values[code] = value;
+            codes.put(value, code);
+        }
+        references[code]++;
+        return code;
+    }
+
+    public synchronized void release(int code) {
+        if (code < 0 || references[code] == 0) {
+            return;
+        }
+        if (--references[code] == 0) {
+            codes.remove(values[code]);
+            values[code] = null;
+            if (freeCount == freeCodes.length) {
+                freeCodes = Arrays.copyOf(freeCodes, Math.max(64, freeCount * 2));
+            }
+            freeCodes[freeCount++] = code;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T decode(int code) {
+        return code < 0 ? null : (T) values[code];
+    }
+
+    public synchronized int size() {
+        return codes.size();
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeCodes[--freeCount];
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            references = Arrays.copyOf(references, size * 2);
+        }
+        return size++;
+    }
+}
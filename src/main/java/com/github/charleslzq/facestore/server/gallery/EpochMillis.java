@@ -0,0 +1,19 @@
+package com.github.charleslzq.facestore.server.gallery;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+
+final class EpochMillis {
+    static final long NULL = Long.MIN_VALUE;
+
+    private EpochMillis() {
+    }
+
+    static long of(LocalDateTime time) {
+        return time == null ? NULL : time.toDateTime(DateTimeZone.UTC).getMillis();
+    }
+
+    static LocalDateTime toLocalDateTime(long millis) {
+        return millis == NULL ? null : new LocalDateTime(millis, DateTimeZone.UTC);
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.charleslzq.facestore.server.gallery;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FeatureArena {
+    private final int chunkSize;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final Map<Integer, Deque<Long>> freeLists = new HashMap<>();
+    private int chunkPosition;
+    private long usedBytes;
+
+    public FeatureArena(int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.chunkPosition = chunkSize;
+    }
+
+    public synchronized long allocate(byte[] bytes) {
+        long address = reuse(bytes.length);
+        if (address < 0) {
+            if (bytes.length > chunkSize) {
+                chunks.add(ByteBuffer.allocateDirect(bytes.length));
+                address = addressOf(chunks.size() - 1, 0);
+            } else {
+                if (chunkPosition + bytes.length > chunkSize) {
+                    chunks.add(ByteBuffer.allocateDirect(chunkSize));
+                    chunkPosition = 0;
+                }
+                address = addressOf(chunks.size() - 1, chunkPosition);
+                chunkPosition += bytes.length;
+            }
+        }
+        ByteBuffer target = chunks.get(chunkOf(address)).duplicate();
+        target.position(offsetOf(address));
+        target.put(bytes);
+        usedBytes += bytes.length;
+        return address;
+    }
+
+    public byte[] read(long address, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = chunks.get(chunkOf(address)).duplicate();
+        source.position(offsetOf(address));
+        source.get(bytes);
+        return bytes;
+    }
+
+    public synchronized void free(long address, int length) {
+        freeLists.computeIfAbsent(length, key -> new ArrayDeque<>()).push(address);
+        usedBytes -= length;
+    }
+
+    public synchronized void clear() {
+        chunks.clear();
+        freeLists.clear();
+        chunkPosition = chunkSize;
+        usedBytes = 0;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getReservedBytes() {
+        return chunks.stream().mapToLong(ByteBuffer::capacity).sum();
+    }
+
+    private long reuse(int length) {
+        Deque<Long> free = freeLists.get(length);
+        return free == null || free.isEmpty() ? -1 : free.pop();
+    }
+
+    private static long addressOf(int chunk, int offset) {
+        return ((long) chunk << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int chunkOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+}
@@ -0,0 +1,411 @@
+package com.github.charleslzq.facestore.server.message;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Feature;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+public class BinaryMessageCodec implements MessageCodec<byte[]> {
+    public static final String PROTOCOL = "face-store.binary";
+    private static final int MAGIC = 'F';
+    private static final int VERSION = 1;
+    private static final List<String> HEADER_CODES = Arrays.asList(
+            MessageHeaders.TYPE_HEADER,
+            MessageHeaders.PERSON_ID,
+            MessageHeaders.FACE_ID,
+            MessageHeaders.TIMESTAMP,
+            MessageHeaders.INDEX,
+            MessageHeaders.SIZE,
+            MessageHeaders.TOKEN,
+            MessageHeaders.BATCH_SIZE,
+            MessageHeaders.SEQUENCE,
+            MessageHeaders.CURSOR,
+            MessageHeaders.TOP_K,
+            MessageHeaders.REVISION,
+            MessageHeaders.ERROR
+    );
+    private static final int LITERAL_HEADER = 0;
+    private static final int NULL = 0;
+    private static final int JSON = 1;
+    private static final int FACE = 2;
+    private static final int FEATURE = 3;
+    private static final int PERSON_SNAPSHOT = 4;
+    private static final int LIST = 5;
+    private static final int FACE_ENTRY = 6;
+    private static final int NO_PICTURE = 0;
+    private static final int RAW_PICTURE = 1;
+    private static final int TEXT_PICTURE = 2;
+    private static final int MAX_RETAINED_BYTES = 1 << 20;
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFERS = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(4096));
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
+    private final Gson faceMetadataGson = Converters.registerLocalDateTime(new GsonBuilder())
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getDeclaringClass() == Face.class && (field.getName().equals("data") || field.getName().equals("pic"));
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> type) {
+                    return false;
+                }
+            })
+            .create();
+
+    @Override
+    public String getProtocol() {
+        return PROTOCOL;
+    }
+
+    @Override
+    public boolean supports(WebSocketMessage<?> webSocketMessage) {
+        return webSocketMessage instanceof BinaryMessage;
+    }
+
+    @Override
+    public int getMessageSizeLimit(WebSocketSession webSocketSession) {
+        return webSocketSession.getBinaryMessageSizeLimit();
+    }
+
+    @Override
+    public WebSocketMessage<?> encode(Message<?> message) {
+        return new BinaryMessage(write(output -> {
+            writeHeaders(output, message.getHeaders());
+            writePayload(output, message.getPayload());
+        }));
+    }
+
+    @Override
+    public InboundMessage decode(WebSocketMessage<?> webSocketMessage) {
+        ByteBuffer buffer = ((BinaryMessage) webSocketMessage).getPayload().duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (input.readUnsignedByte() != MAGIC || input.readUnsignedByte() != VERSION) {
+                throw new IllegalArgumentException("Not a face store binary message");
+            }
+            Map<String, String> headers = readHeaders(input);
+            Object payload = readPayload(input);
+            return new InboundMessage() {
+                @Override
+                public Map<String, String> getHeaders() {
+                    return headers;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public <T> T getPayload(Type type) {
+                    return (T) convert(payload, type);
+                }
+            };
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed binary message", e);
+        }
+    }
+
+    @Override
+    public byte[] encodeEntry(Object entry) {
+        return write(output -> writePayload(output, entry));
+    }
+
+    public Object decodeEntry(byte[] entry) {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(entry))) {
+            return readPayload(input);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed binary entry", e);
+        }
+    }
+
+    @Override
+    public int lengthOf(byte[] entry) {
+        return entry.length;
+    }
+
+    @Override
+    public WebSocketMessage<?> encodeBatch(Map<String, String> headers, List<byte[]> entries) {
+        return new BinaryMessage(write(output -> {
+            writeHeaders(output, headers);
+            output.writeByte(LIST);
+            output.writeInt(entries.size());
+            for (byte[] entry : entries) {
+                output.write(entry);
+            }
+        }));
+    }
+
+    private byte[] write(Writer writer) {
+        ByteArrayOutputStream bytes = BUFFERS.get();
+        bytes.reset();
+        try {
+            DataOutputStream output = new DataOutputStream(bytes);
+            writer.write(output);
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] result = bytes.toByteArray();
+        if (result.length > MAX_RETAINED_BYTES) {
+            BUFFERS.remove();
+        }
+        return result;
+    }
+
+    private void writeHeaders(DataOutputStream output, Map<String, String> headers) throws IOException {
+        output.writeByte(MAGIC);
+        output.writeByte(VERSION);
+        output.writeShort(headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            int code = HEADER_CODES.indexOf(header.getKey()) + 1;
+            output.writeByte(code);
+            if (code == LITERAL_HEADER) {
+                writeString(output, header.getKey());
+            }
+            writeString(output, header.getValue());
+        }
+    }
+
+    private Map<String, String> readHeaders(DataInputStream input) throws IOException {
+        int size = checkLength(input, input.readUnsignedShort());
+        Map<String, String> headers = new HashMap<>(size * 2);
+        for (int index = 0; index < size; index++) {
+            int code = input.readUnsignedByte();
+            if (code > HEADER_CODES.size()) {
+                throw new IllegalArgumentException("Unknown header code " + code);
+            }
+            String key = code == LITERAL_HEADER ? readString(input) : HEADER_CODES.get(code - 1);
+            headers.put(key, readString(input));
+        }
+        return headers;
+    }
+
+    private void writePayload(DataOutputStream output, Object payload) throws IOException {
+        if (payload == null) {
+            output.writeByte(NULL);
+        } else if (payload instanceof Face) {
+            output.writeByte(FACE);
+            writeFace(output, (Face) payload);
+        } else if (payload instanceof Feature) {
+            output.writeByte(FEATURE);
+            writeBytes(output, ((Feature) payload).getMFeatureData());
+        } else if (payload instanceof PersonSnapshot) {
+            PersonSnapshot snapshot = (PersonSnapshot) payload;
+            output.writeByte(PERSON_SNAPSHOT);
+            writeString(output, gson.toJson(snapshot.getPerson()));
+            output.writeInt(snapshot.getFaces().size());
+            for (Face face : snapshot.getFaces()) {
+                writeFace(output, face);
+            }
+        } else if (payload instanceof FaceEntry) {
+            FaceEntry faceEntry = (FaceEntry) payload;
+            output.writeByte(FACE_ENTRY);
+            writeString(output, faceEntry.getPersonId());
+            writeFace(output, faceEntry.getFace());
+        } else if (payload instanceof List) {
+            List<?> list = (List<?>) payload;
+            output.writeByte(LIST);
+            output.writeInt(list.size());
+            for (Object element : list) {
+                writePayload(output, element);
+            }
+        } else {
+            output.writeByte(JSON);
+            writeString(output, gson.toJson(payload));
+        }
+    }
+
+    private Object readPayload(DataInputStream input) throws IOException {
+        int kind = input.readUnsignedByte();
+        switch (kind) {
+            case NULL:
+                return null;
+            case JSON:
+                return new JsonPayload(readString(input));
+            case FACE:
+                return readFace(input);
+            case FEATURE:
+                Feature feature = new Feature();
+                feature.setMFeatureData(readBytes(input));
+                return feature;
+            case PERSON_SNAPSHOT:
+                Person person = gson.fromJson(readString(input), Person.class);
+                int faceCount = checkLength(input, input.readInt());
+                List<Face> faces = new ArrayList<>(faceCount);
+                for (int index = 0; index < faceCount; index++) {
+                    faces.add(readFace(input));
+                }
+                return new PersonSnapshot(person, faces);
+            case LIST:
+                int size = checkLength(input, input.readInt());
+                List<Object> list = new ArrayList<>(size);
+                for (int index = 0; index < size; index++) {
+                    list.add(readPayload(input));
+                }
+                return list;
+            case FACE_ENTRY:
+                return new FaceEntry(readString(input), readFace(input));
+            default:
+                throw new IOException("Unknown payload kind " + kind);
+        }
+    }
+
+    private void writeFace(DataOutputStream output, Face face) throws IOException {
+        writeString(output, faceMetadataGson.toJson(face));
+        writeBytes(output, face.getData() == null ? null : face.getData().getMFeatureData());
+        String pic = face.getPic();
+        if (pic == null) {
+            output.writeByte(NO_PICTURE);
+            return;
+        }
+        byte[] raw = decodeBase64(pic);
+        if (raw != null) {
+            output.writeByte(RAW_PICTURE);
+            writeBytes(output, raw);
+        } else {
+            output.writeByte(TEXT_PICTURE);
+            writeString(output, pic);
+        }
+    }
+
+    private Face readFace(DataInputStream input) throws IOException {
+        Face face = gson.fromJson(readString(input), Face.class);
+        byte[] data = readBytes(input);
+        if (data != null) {
+            Feature feature = new Feature();
+            feature.setMFeatureData(data);
+            face.setData(feature);
+        }
+        switch (input.readUnsignedByte()) {
+            case RAW_PICTURE:
+                face.setPic(Base64.getEncoder().encodeToString(readBytes(input)));
+                break;
+            case TEXT_PICTURE:
+                face.setPic(readString(input));
+                break;
+            default:
+                break;
+        }
+        return face;
+    }
+
+    private Object convert(Object payload, Type type) {
+        if (payload instanceof JsonPayload) {
+            return gson.fromJson(((JsonPayload) payload).json, type);
+        }
+        if (payload instanceof List) {
+            Type elementType = type instanceof ParameterizedType
+                    ? ((ParameterizedType) type).getActualTypeArguments()[0]
+                    : Object.class;
+            return ((List<?>) payload).stream()
+                    .map(element -> convert(element, elementType))
+                    .collect(Collectors.toList());
+        }
+        return payload;
+    }
+
+    private static byte[] decodeBase64(String pic) {
+        if (pic.length() % 4 != 0) {
+            return null;
+        }
+        byte[] raw;
+        try {
+            raw = Base64.getDecoder().decode(pic);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int padding = pic.length() / 4 * 3 - raw.length;
+        if (padding == 1) {
+            return (sextetOf(pic.charAt(pic.length() - 2)) & 0x3) == 0 ? raw : null;
+        }
+        if (padding == 2) {
+            return (sextetOf(pic.charAt(pic.length() - 3)) & 0xF) == 0 ? raw : null;
+        }
+        return raw;
+    }
+
+    private static int sextetOf(char digit) {
+        if (digit >= 'A' && digit <= 'Z') {
+            return digit - 'A';
+        }
+        if (digit >= 'a' && digit <= 'z') {
+            return digit - 'a' + 26;
+        }
+        if (digit >= '0' && digit <= '9') {
+            return digit - '0' + 52;
+        }
+        return digit == '+' ? 62 : 63;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        writeBytes(output, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = readBytes(input);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[checkLength(input, length)];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static int checkLength(DataInputStream input, int length) throws IOException {
+        if (length < 0 || length > input.available()) {
+            throw new IllegalArgumentException("Illegal length " + length + " with " + input.available() + " byte(s) remaining");
+        }
+        return length;
+    }
+
+    private interface Writer {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    private static class JsonPayload {
+        private final String json;
+
+        private JsonPayload(String json) {
+            this.json = json;
+        }
+    }
+}
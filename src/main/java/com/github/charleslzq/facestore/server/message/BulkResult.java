@@ -0,0 +1,13 @@
+package com.github.charleslzq.facestore.server.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BulkResult {
+    private final String personId;
+    private final String faceId;
+    private final boolean success;
+    private final String error;
+}
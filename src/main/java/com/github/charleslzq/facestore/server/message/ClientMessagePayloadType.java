@@ -5,5 +5,17 @@ public enum ClientMessagePayloadType {
     PERSON,
     FACE,
     PERSON_DELETE,
-    FACE_DELETE
+    FACE_DELETE,
+    SNAPSHOT,
+    SYNC_SINCE,
+    SEARCH,
+    PERSON_BATCH,
+    FACE_BATCH,
+    DELETE_BATCH,
+    SUBSCRIBE,
+    CONDITIONAL_PERSON,
+    CONDITIONAL_FACE,
+    CONDITIONAL_PERSON_DELETE,
+    CONDITIONAL_FACE_DELETE,
+    CONDITIONAL_REFRESH
 }
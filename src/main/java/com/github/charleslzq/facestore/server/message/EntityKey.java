@@ -0,0 +1,11 @@
+package com.github.charleslzq.facestore.server.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class EntityKey {
+    private final String personId;
+    private final String faceId;
+}
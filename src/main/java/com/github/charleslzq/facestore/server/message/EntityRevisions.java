@@ -0,0 +1,12 @@
+package com.github.charleslzq.facestore.server.message;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class EntityRevisions {
+    private long person;
+    private Map<String, Long> faces = new HashMap<>();
+}
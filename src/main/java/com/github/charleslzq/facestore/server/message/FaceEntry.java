@@ -0,0 +1,12 @@
+package com.github.charleslzq.facestore.server.message;
+
+import com.github.charleslzq.facestore.server.type.Face;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FaceEntry {
+    private final String personId;
+    private final Face face;
+}
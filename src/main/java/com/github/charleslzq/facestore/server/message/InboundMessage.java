@@ -0,0 +1,10 @@
+package com.github.charleslzq.facestore.server.message;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+public interface InboundMessage {
+    Map<String, String> getHeaders();
+
+    <T> T getPayload(Type type);
+}
@@ -0,0 +1,233 @@
+package com.github.charleslzq.facestore.server.message;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class JsonMessageCodec implements MessageCodec<String> {
+    public static final String PROTOCOL = "face-store.json";
+    private static final String HEADERS = "headers";
+    private static final String PAYLOAD = "payload";
+    private static final int MAX_RETAINED_CHARS = 1 << 20;
+    private static final ThreadLocal<StringWriter> BUFFERS = ThreadLocal.withInitial(() -> new StringWriter(4096));
+    private static final ThreadLocal<StringBuilder> BYTE_ARRAYS = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder())
+            .registerTypeAdapter(byte[].class, new ByteArrayAdapter())
+            .create();
+
+    @Override
+    public String getProtocol() {
+        return PROTOCOL;
+    }
+
+    @Override
+    public boolean supports(WebSocketMessage<?> webSocketMessage) {
+        return webSocketMessage instanceof TextMessage;
+    }
+
+    @Override
+    public int getMessageSizeLimit(WebSocketSession webSocketSession) {
+        return webSocketSession.getTextMessageSizeLimit();
+    }
+
+    @Override
+    public WebSocketMessage<?> encode(Message<?> message) {
+        return new TextMessage(write(output -> {
+            JsonWriter writer = gson.newJsonWriter(output);
+            writer.beginObject();
+            writer.name(HEADERS);
+            writeHeaders(writer, message.getHeaders());
+            if (message.getPayload() != null) {
+                writer.name(PAYLOAD);
+                gson.toJson(message.getPayload(), message.getPayload().getClass(), writer);
+            }
+            writer.endObject();
+            writer.flush();
+        }));
+    }
+
+    @Override
+    public InboundMessage decode(WebSocketMessage<?> webSocketMessage) {
+        JsonReader reader = gson.newJsonReader(new StringReader(((TextMessage) webSocketMessage).getPayload()));
+        try {
+            Map<String, String> headers = null;
+            JsonElement payload = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (HEADERS.equals(name)) {
+                    headers = readHeaders(reader);
+                } else if (PAYLOAD.equals(name) && headers != null) {
+                    return new StreamingInboundMessage(headers, reader, null);
+                } else if (PAYLOAD.equals(name)) {
+                    payload = gson.fromJson(reader, JsonElement.class);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            return new StreamingInboundMessage(headers == null ? new HashMap<>() : headers, null, payload);
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonParseException("Malformed json message", e);
+        }
+    }
+
+    @Override
+    public String encodeEntry(Object entry) {
+        return write(output -> gson.toJson(entry, entry == null ? Object.class : entry.getClass(), gson.newJsonWriter(output)));
+    }
+
+    @Override
+    public int lengthOf(String entry) {
+        return entry.length();
+    }
+
+    @Override
+    public WebSocketMessage<?> encodeBatch(Map<String, String> headers, List<String> entries) {
+        return new TextMessage(write(output -> {
+            output.write("{\"" + HEADERS + "\":");
+            JsonWriter writer = gson.newJsonWriter(output);
+            writeHeaders(writer, headers);
+            writer.flush();
+            output.write(",\"" + PAYLOAD + "\":[");
+            for (int index = 0; index < entries.size(); index++) {
+                if (index > 0) {
+                    output.write(',');
+                }
+                output.write(entries.get(index));
+            }
+            output.write("]}");
+        }));
+    }
+
+    private String write(Writer writer) {
+        StringWriter output = BUFFERS.get();
+        output.getBuffer().setLength(0);
+        try {
+            writer.write(output);
+        } catch (IOException e) {
+            throw new JsonParseException("Error writing json message", e);
+        }
+        String json = output.toString();
+        if (output.getBuffer().capacity() > MAX_RETAINED_CHARS) {
+            BUFFERS.remove();
+        }
+        return json;
+    }
+
+    private static void writeHeaders(JsonWriter writer, Map<String, String> headers) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            writer.name(header.getKey()).value(header.getValue());
+        }
+        writer.endObject();
+    }
+
+    private static Map<String, String> readHeaders(JsonReader reader) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else {
+                headers.put(name, reader.nextString());
+            }
+        }
+        reader.endObject();
+        return headers;
+    }
+
+    private interface Writer {
+        void write(StringWriter output) throws IOException;
+    }
+
+    private class StreamingInboundMessage implements InboundMessage {
+        private final Map<String, String> headers;
+        private JsonReader pending;
+        private JsonElement tree;
+        private Object payload;
+
+        private StreamingInboundMessage(Map<String, String> headers, JsonReader pending, JsonElement tree) {
+            this.headers = headers;
+            this.pending = pending;
+            this.tree = tree;
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T getPayload(Type type) {
+            if (pending != null) {
+                payload = gson.fromJson(pending, type);
+                pending = null;
+            } else if (tree != null) {
+                payload = gson.fromJson(tree, type);
+                tree = null;
+            }
+            return (T) payload;
+        }
+    }
+
+    private static class ByteArrayAdapter extends TypeAdapter<byte[]> {
+        @Override
+        public void write(JsonWriter writer, byte[] value) throws IOException {
+            if (value == null) {
+                writer.nullValue();
+                return;
+            }
+            StringBuilder text = BYTE_ARRAYS.get();
+            text.setLength(0);
+            text.append('[');
+            for (int index = 0; index < value.length; index++) {
+                if (index > 0) {
+                    text.append(',');
+                }
+                text.append(value[index]);
+            }
+            writer.jsonValue(text.append(']').toString());
+        }
+
+        @Override
+        public byte[] read(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            byte[] bytes = new byte[64];
+            int size = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (size == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, size * 2);
+                }
+                bytes[size++] = (byte) reader.nextInt();
+            }
+            reader.endArray();
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+    }
+}
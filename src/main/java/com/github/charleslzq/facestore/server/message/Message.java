@@ -1,19 +1,17 @@
 package com.github.charleslzq.facestore.server.message;
 
-import lombok.AllArgsConstructor;
+import com.google.common.collect.ImmutableMap;
 import lombok.Data;
 
-import java.util.HashMap;
 import java.util.Map;
 
 @Data
-@AllArgsConstructor
 public class Message<T> {
-    private final Map<String, String> headers = new HashMap<>();
+    private final Map<String, String> headers;
     private final T payload;
 
     public Message(Map<String, String> headers, T payload) {
-        this.headers.putAll(headers);
+        this.headers = ImmutableMap.copyOf(headers);
         this.payload = payload;
     }
 }
@@ -0,0 +1,25 @@
+package com.github.charleslzq.facestore.server.message;
+
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.Map;
+
+public interface MessageCodec<E> {
+    String getProtocol();
+
+    boolean supports(WebSocketMessage<?> webSocketMessage);
+
+    int getMessageSizeLimit(WebSocketSession webSocketSession);
+
+    WebSocketMessage<?> encode(Message<?> message);
+
+    InboundMessage decode(WebSocketMessage<?> webSocketMessage);
+
+    E encodeEntry(Object entry);
+
+    int lengthOf(E entry);
+
+    WebSocketMessage<?> encodeBatch(Map<String, String> headers, List<E> entries);
+}
@@ -8,4 +8,10 @@ public class MessageHeaders {
     public static final String INDEX = "index";
     public static final String SIZE = "size";
     public static final String TOKEN = "token";
+    public static final String BATCH_SIZE = "batchSize";
+    public static final String SEQUENCE = "sequence";
+    public static final String CURSOR = "cursor";
+    public static final String TOP_K = "topK";
+    public static final String REVISION = "revision";
+    public static final String ERROR = "error";
 }
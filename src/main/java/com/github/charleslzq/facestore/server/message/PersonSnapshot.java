@@ -0,0 +1,15 @@
+package com.github.charleslzq.facestore.server.message;
+
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class PersonSnapshot {
+    private final Person person;
+    private final List<Face> faces;
+}
@@ -7,5 +7,10 @@ public enum ServerMessagePayloadType {
     FACE_ID_LIST,
     PERSON_DELETE,
     FACE_DELETE,
-    CONFIRM
+    CONFIRM,
+    SNAPSHOT_BATCH,
+    SEARCH_RESULT,
+    CHANGE_BATCH,
+    CONFLICT,
+    RESYNC
 }
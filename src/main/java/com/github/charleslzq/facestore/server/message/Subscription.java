@@ -0,0 +1,44 @@
+package com.github.charleslzq.facestore.server.message;
+
+import lombok.Data;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+@Data
+public class Subscription {
+    private Set<String> personIds = new HashSet<>();
+    private Set<String> prefixes = new HashSet<>();
+    private Set<String> tags = new HashSet<>();
+
+    public boolean isEmpty() {
+        return isEmpty(personIds) && isEmpty(prefixes) && isEmpty(tags);
+    }
+
+    public boolean matches(String personId, Supplier<Collection<String>> tagsOf) {
+        if (isEmpty() || (personIds != null && personIds.contains(personId))) {
+            return true;
+        }
+        if (prefixes != null) {
+            for (String prefix : prefixes) {
+                if (personId.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        if (!isEmpty(tags)) {
+            for (String tag : tagsOf.get()) {
+                if (tags.contains(tag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEmpty(Collection<String> values) {
+        return values == null || values.isEmpty();
+    }
+}
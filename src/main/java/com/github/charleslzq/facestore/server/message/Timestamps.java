@@ -0,0 +1,34 @@
+package com.github.charleslzq.facestore.server.message;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.joda.time.LocalDateTime;
+
+public final class Timestamps {
+    private static final Gson GSON = Converters.registerLocalDateTime(new GsonBuilder()).create();
+    private static volatile Formatted latest = new Formatted(Long.MIN_VALUE, null);
+
+    private Timestamps() {
+    }
+
+    public static String now() {
+        long millis = System.currentTimeMillis();
+        Formatted formatted = latest;
+        if (formatted.millis != millis) {
+            formatted = new Formatted(millis, GSON.toJson(new LocalDateTime(millis)));
+            latest = formatted;
+        }
+        return formatted.json;
+    }
+
+    private static class Formatted {
+        private final long millis;
+        private final String json;
+
+        private Formatted(long millis, String json) {
+            this.millis = millis;
+            this.json = json;
+        }
+    }
+}
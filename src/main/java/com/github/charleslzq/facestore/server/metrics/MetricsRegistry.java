@@ -0,0 +1,80 @@
+package com.github.charleslzq.facestore.server.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Component
+public class MetricsRegistry {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private final ConcurrentMap<MeterId, Object> meters = new ConcurrentHashMap<>();
+
+    public Counter counter(String name, String... tags) {
+        return register(name, tags, id -> new Counter(), Counter.class);
+    }
+
+    public Summary timer(String name, String... tags) {
+        return register(name, tags, id -> new Summary(NANOS_PER_SECOND), Summary.class);
+    }
+
+    public Summary summary(String name, String... tags) {
+        return register(name, tags, id -> new Summary(1), Summary.class);
+    }
+
+    public void gauge(String name, Supplier<? extends Number> supplier, String... tags) {
+        meters.put(new MeterId(name, tagsOf(tags)), new Gauge(supplier));
+    }
+
+    public Map<MeterId, Object> getMeters() {
+        return Collections.unmodifiableMap(meters);
+    }
+
+    private <T> T register(String name, String[] tags, Function<MeterId, T> factory, Class<T> type) {
+        Object meter = meters.computeIfAbsent(new MeterId(name, tagsOf(tags)), factory::apply);
+        if (!type.isInstance(meter)) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + meter.getClass().getSimpleName());
+        }
+        return type.cast(meter);
+    }
+
+    private static SortedMap<String, String> tagsOf(String[] tags) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags should be given as key value pairs");
+        }
+        SortedMap<String, String> tagMap = new TreeMap<>();
+        for (int index = 0; index < tags.length; index += 2) {
+            tagMap.put(tags[index], tags[index + 1]);
+        }
+        return tagMap;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class MeterId {
+        private final String name;
+        private final SortedMap<String, String> tags;
+    }
+
+    public static class Gauge {
+        private final Supplier<? extends Number> supplier;
+
+        private Gauge(Supplier<? extends Number> supplier) {
+            this.supplier = supplier;
+        }
+
+        public double getValue() {
+            Number value = supplier.get();
+            return value == null ? Double.NaN : value.doubleValue();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.charleslzq.facestore.server.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RestController
+public class PrometheusController {
+    private static final MediaType TEXT_FORMAT = MediaType.parseMediaType("text/plain; version=0.0.4; charset=utf-8");
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    @GetMapping("/prometheus")
+    public ResponseEntity<String> scrape() {
+        StringBuilder output = new StringBuilder();
+        List<Map.Entry<MetricsRegistry.MeterId, Object>> meters = metricsRegistry.getMeters().entrySet().stream()
+                .sorted(Comparator.comparing(entry -> entry.getKey().getName()))
+                .collect(Collectors.toList());
+        String lastName = null;
+        for (Map.Entry<MetricsRegistry.MeterId, Object> entry : meters) {
+            MetricsRegistry.MeterId id = entry.getKey();
+            Object meter = entry.getValue();
+            if (!id.getName().equals(lastName)) {
+                output.append("# TYPE ").append(id.getName()).append(' ').append(typeOf(meter)).append('\n');
+                lastName = id.getName();
+            }
+            if (meter instanceof Counter) {
+                sample(output, id.getName(), id.getTags(), null, ((Counter) meter).getCount());
+            } else if (meter instanceof MetricsRegistry.Gauge) {
+                sample(output, id.getName(), id.getTags(), null, ((MetricsRegistry.Gauge) meter).getValue());
+            } else if (meter instanceof Summary) {
+                Summary summary = (Summary) meter;
+                for (double quantile : QUANTILES) {
+                    sample(output, id.getName(), id.getTags(), String.valueOf(quantile), summary.quantile(quantile));
+                }
+                sample(output, id.getName() + "_sum", id.getTags(), null, summary.getSum());
+                sample(output, id.getName() + "_count", id.getTags(), null, summary.getCount());
+            }
+        }
+        return ResponseEntity.ok().contentType(TEXT_FORMAT).body(output.toString());
+    }
+
+    private static String typeOf(Object meter) {
+        if (meter instanceof Counter) {
+            return "counter";
+        }
+        if (meter instanceof Summary) {
+            return "summary";
+        }
+        return "gauge";
+    }
+
+    private static void sample(StringBuilder output, String name, Map<String, String> tags, String quantile, double value) {
+        output.append(name);
+        if (!tags.isEmpty() || quantile != null) {
+            output.append('{');
+            String separator = "";
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                output.append(separator).append(tag.getKey()).append("=\"").append(escape(tag.getValue())).append('"');
+                separator = ",";
+            }
+            if (quantile != null) {
+                output.append(separator).append("quantile=\"").append(quantile).append('"');
+            }
+            output.append('}');
+        }
+        output.append(' ').append(Double.isNaN(value) ? "NaN" : String.valueOf(value)).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
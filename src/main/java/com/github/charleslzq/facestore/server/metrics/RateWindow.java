@@ -0,0 +1,43 @@
+package com.github.charleslzq.facestore.server.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class RateWindow {
+    private final int seconds;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray stamps;
+
+    public RateWindow(int seconds) {
+        this.seconds = seconds;
+        this.counts = new AtomicLongArray(seconds);
+        this.stamps = new AtomicLongArray(seconds);
+    }
+
+    public void mark() {
+        long second = currentSecond();
+        int slot = (int) Math.floorMod(second, (long) seconds);
+        long stamp = stamps.get(slot);
+        if (stamp != second && stamps.compareAndSet(slot, stamp, second)) {
+            counts.set(slot, 0);
+        }
+        counts.incrementAndGet(slot);
+    }
+
+    public double rate(int window) {
+        int span = Math.min(window, seconds);
+        long now = currentSecond();
+        long total = 0;
+        for (int slot = 0; slot < seconds; slot++) {
+            long stamp = stamps.get(slot);
+            if (stamp > now - span && stamp <= now) {
+                total += counts.get(slot);
+            }
+        }
+        return (double) total / span;
+    }
+
+    private static long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+}
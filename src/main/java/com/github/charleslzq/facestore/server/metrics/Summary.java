@@ -0,0 +1,34 @@
+package com.github.charleslzq.facestore.server.metrics;
+
+public class Summary {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final double scale;
+
+    Summary(double scale) {
+        this.scale = scale;
+    }
+
+    public void record(long value) {
+        histogram.record(value);
+    }
+
+    public void recordNanos(long startNanos) {
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    public double getSum() {
+        return histogram.getSum() / scale;
+    }
+
+    public double getMax() {
+        return histogram.getMax() / scale;
+    }
+
+    public double quantile(double quantile) {
+        return histogram.percentile(quantile * 100) / scale;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.charleslzq.facestore.server.picture;
+
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@ConditionalOnProperty(prefix = "face.store.picture", name = "enabled")
+public class PictureController {
+    @Autowired
+    private PictureStore pictureStore;
+    @Autowired
+    private PictureProperties pictureProperties;
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    @GetMapping("/pictures/{hash}")
+    public ResponseEntity<byte[]> picture(
+            @PathVariable String hash,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            WebRequest webRequest
+    ) throws IOException {
+        File file = pictureStore.locate(hash);
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        String eTag = '"' + hash + '"';
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        long length = file.length();
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return unsatisfiable(length);
+        }
+        if (ranges.size() != 1 || (ifRange != null && !ifRange.equals(eTag))) {
+            return served(respond(HttpStatus.OK, eTag, file).body(pictureStore.read(file, 0, (int) length)));
+        }
+        long start = ranges.get(0).getRangeStart(length);
+        long end = Math.min(ranges.get(0).getRangeEnd(length), length - 1);
+        if (start >= length || start > end) {
+            return unsatisfiable(length);
+        }
+        return served(respond(HttpStatus.PARTIAL_CONTENT, eTag, file)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length)
+                .body(pictureStore.read(file, start, (int) (end - start + 1))));
+    }
+
+    private ResponseEntity.BodyBuilder respond(HttpStatus status, String eTag, File file) throws IOException {
+        return ResponseEntity.status(status)
+                .eTag(eTag)
+                .cacheControl(CacheControl.maxAge(pictureProperties.getMaxAge(), TimeUnit.SECONDS).cachePublic())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(MediaType.parseMediaType(pictureStore.contentTypeOf(file)));
+    }
+
+    private ResponseEntity<byte[]> served(ResponseEntity<byte[]> response) {
+        metricsRegistry.counter("facestore_picture_served_bytes_total").add(response.getBody().length);
+        return response;
+    }
+
+    private static ResponseEntity<byte[]> unsatisfiable(long length) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                .build();
+    }
+}
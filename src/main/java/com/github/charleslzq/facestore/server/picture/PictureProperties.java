@@ -0,0 +1,14 @@
+package com.github.charleslzq.facestore.server.picture;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.picture")
+public class PictureProperties {
+    private boolean enabled = false;
+    private String directory;
+    private long maxAge = 365L * 24 * 60 * 60;
+    private long sweepInterval = 24L * 60 * 60 * 1000;
+    private long sweepGrace = 60L * 60 * 1000;
+}
@@ -0,0 +1,225 @@
+package com.github.charleslzq.facestore.server.picture;
+
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.FaceStoreProperties;
+import com.github.charleslzq.facestore.server.metrics.Counter;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@Slf4j
+@Component
+@EnableConfigurationProperties(PictureProperties.class)
+public class PictureStore {
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final int SNIFF_BYTES = 16;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "picture-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    @Autowired
+    private PictureProperties pictureProperties;
+    @Autowired
+    private FaceStoreProperties faceStoreProperties;
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+    @Autowired
+    @Qualifier("listenableReadWriteFaceStore")
+    private ListenableReadWriteFaceStore<Person, Face> internal;
+    private File directory;
+    private Counter writes;
+    private Counter writtenBytes;
+    private Counter swept;
+
+    @PostConstruct
+    public void setup() throws IOException {
+        if (!pictureProperties.isEnabled()) {
+            return;
+        }
+        directory = new File(pictureProperties.getDirectory() != null
+                ? pictureProperties.getDirectory()
+                : faceStoreProperties.getDirectory() + ".pictures");
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create picture directory " + directory);
+        }
+        writes = metricsRegistry.counter("facestore_picture_writes_total");
+        writtenBytes = metricsRegistry.counter("facestore_picture_written_bytes_total");
+        swept = metricsRegistry.counter("facestore_picture_swept_total");
+        if (pictureProperties.getSweepInterval() > 0) {
+            sweeper.scheduleWithFixedDelay(this::sweep, pictureProperties.getSweepInterval(), pictureProperties.getSweepInterval(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Pictures are stored separately in {}", directory);
+    }
+
+    @PreDestroy
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return pictureProperties.isEnabled();
+    }
+
+    public Face detach(Face face) {
+        if (isEnabled() && face != null && face.getPic() != null) {
+            face.setPicHash(put(decode(face.getPic())));
+            face.setPic(null);
+        }
+        return face;
+    }
+
+    public String put(byte[] picture) {
+        String hash = hash(picture);
+        File file = fileOf(hash);
+        if (file.exists() && file.setLastModified(System.currentTimeMillis())) {
+            return hash;
+        }
+        try {
+            File parent = file.getParentFile();
+            if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+                throw new IOException("Could not create picture directory " + parent);
+            }
+            File temp = File.createTempFile(hash, ".tmp", parent);
+            try {
+                Files.write(temp.toPath(), picture);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error storing picture " + hash, e);
+        }
+        writes.increment();
+        writtenBytes.add(picture.length);
+        return hash;
+    }
+
+    public File locate(String hash) {
+        if (!isEnabled() || hash == null || !HASH.matcher(hash).matches()) {
+            return null;
+        }
+        File file = fileOf(hash);
+        return file.isFile() ? file : null;
+    }
+
+    public byte[] read(File file, long offset, int length) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[length];
+            input.seek(offset);
+            input.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    public String contentTypeOf(File file) throws IOException {
+        byte[] head = read(file, 0, (int) Math.min(SNIFF_BYTES, file.length()));
+        try (InputStream input = new ByteArrayInputStream(head)) {
+            String contentType = URLConnection.guessContentTypeFromStream(input);
+            return contentType == null ? OCTET_STREAM : contentType;
+        }
+    }
+
+    public int sweep() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - pictureProperties.getSweepGrace();
+        Set<String> referenced = new HashSet<>();
+        try {
+            for (String personId : internal.getPersonIds()) {
+                for (String faceId : internal.getFaceIdList(personId)) {
+                    String hash = hashOf(internal.getFace(personId, faceId));
+                    if (hash != null) {
+                        referenced.add(hash);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Error marking referenced pictures, skip sweep", e);
+            return 0;
+        }
+        int removed = 0;
+        File[] buckets = directory.listFiles(File::isDirectory);
+        for (File bucket : buckets == null ? new File[0] : buckets) {
+            File[] files = bucket.listFiles(file -> HASH.matcher(file.getName()).matches());
+            for (File file : files == null ? new File[0] : files) {
+                if (!referenced.contains(file.getName()) && file.lastModified() < cutoff && file.delete()) {
+                    removed++;
+                }
+            }
+        }
+        swept.add(removed);
+        log.info("Picture sweep kept {} referenced picture(s) and removed {} unreferenced", referenced.size(), removed);
+        return removed;
+    }
+
+    private static String hashOf(Face face) {
+        if (face == null) {
+            return null;
+        }
+        if (face.getPicHash() != null) {
+            return face.getPicHash();
+        }
+        if (face.getPic() == null) {
+            return null;
+        }
+        try {
+            return hash(decode(face.getPic()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private File fileOf(String hash) {
+        return new File(new File(directory, hash.substring(0, 2)), hash);
+    }
+
+    private static byte[] decode(String pic) {
+        try {
+            return Base64.getDecoder().decode(pic);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Picture is not valid base64: " + e.getMessage(), e);
+        }
+    }
+
+    private static String hash(byte[] picture) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(picture);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte value : digest) {
+                hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
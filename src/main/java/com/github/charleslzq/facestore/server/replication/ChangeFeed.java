@@ -0,0 +1,15 @@
+package com.github.charleslzq.facestore.server.replication;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ChangeFeed {
+    private final boolean reset;
+    private final long cursor;
+    private final long head;
+    private final List<ReplicatedChange> changes;
+}
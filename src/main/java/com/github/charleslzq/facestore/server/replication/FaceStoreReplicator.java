@@ -0,0 +1,444 @@
+package com.github.charleslzq.facestore.server.replication;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.ChangeEvent;
+import com.github.charleslzq.facestore.server.ChangeType;
+import com.github.charleslzq.facestore.server.FaceStoreChangeLog;
+import com.github.charleslzq.facestore.server.FaceStoreProperties;
+import com.github.charleslzq.facestore.server.PagedFaceStore;
+import com.github.charleslzq.facestore.server.message.PersonSnapshot;
+import com.github.charleslzq.facestore.server.metrics.Counter;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.picture.PictureStore;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.LocalDateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "face.store.replication", name = "enabled")
+@EnableConfigurationProperties(ReplicationProperties.class)
+public class FaceStoreReplicator implements FaceStoreChangeListener<Person, Face> {
+    private static final Type CURSORS_TYPE = new TypeToken<Map<String, Long>>() {
+    }.getType();
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
+    private final Map<String, Long> cursors = new ConcurrentHashMap<>();
+    private final Map<String, Long> heads = new ConcurrentHashMap<>();
+    private final Map<String, Counter> appliedCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> skippedCounters = new ConcurrentHashMap<>();
+    @Autowired
+    @Qualifier("faceStoreCacheWrapper")
+    private ListenableReadWriteFaceStore<Person, Face> faceStore;
+    @Autowired
+    @Qualifier("faceStoreCacheWrapper")
+    private PagedFaceStore pagedFaceStore;
+    @Autowired
+    private FaceStoreChangeLog faceStoreChangeLog;
+    @Autowired
+    private FaceStoreProperties faceStoreProperties;
+    @Autowired
+    private ReplicationProperties replicationProperties;
+    @Autowired
+    private PictureStore pictureStore;
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+    private Map<String, LocalDateTime> tombstones;
+    private RestTemplate restTemplate;
+    private ScheduledExecutorService puller;
+    private File cursorFile;
+
+    @PostConstruct
+    public void setup() throws IOException {
+        int tombstoneCapacity = replicationProperties.getTombstoneCapacity();
+        tombstones = Collections.synchronizedMap(new LinkedHashMap<String, LocalDateTime>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalDateTime> eldest) {
+                return size() > tombstoneCapacity;
+            }
+        });
+        cursorFile = new File(replicationProperties.getCursorFile() != null
+                ? replicationProperties.getCursorFile()
+                : faceStoreProperties.getDirectory() + ".replication");
+        loadCursors();
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(replicationProperties.getConnectTimeout());
+        requestFactory.setReadTimeout(replicationProperties.getReadTimeout());
+        restTemplate = new RestTemplate(requestFactory);
+        faceStore.getListeners().add(this);
+        for (String peer : replicationProperties.getPeers()) {
+            metricsRegistry.gauge("facestore_replication_lag", () -> heads.getOrDefault(peer, 0L) - cursors.getOrDefault(peer, 0L), "peer", peer);
+            applied(peer);
+            skipped(peer);
+        }
+        puller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "face-store-replicator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        puller.scheduleWithFixedDelay(this::pullAll, 0, replicationProperties.getPollInterval(), TimeUnit.MILLISECONDS);
+        log.info("Replicating from {} peer(s): {}", replicationProperties.getPeers().size(), replicationProperties.getPeers());
+    }
+
+    @PreDestroy
+    public void close() {
+        puller.shutdownNow();
+    }
+
+    public ChangeFeed feed(long cursor, Integer limit) {
+        int size = limitOf(limit);
+        long head = faceStoreChangeLog.getSequence();
+        Optional<List<ChangeEvent>> events = faceStoreChangeLog.since(cursor);
+        if (!events.isPresent()) {
+            return new ChangeFeed(true, cursor, head, Collections.emptyList());
+        }
+        List<ReplicatedChange> changes = new ArrayList<>();
+        long next = cursor;
+        int taken = 0;
+        for (ChangeEvent event : events.get()) {
+            if (taken++ == size) {
+                break;
+            }
+            ReplicatedChange change = toChange(event);
+            if (change != null) {
+                changes.add(change);
+            }
+            next = event.getSequence();
+        }
+        return new ChangeFeed(false, next, Math.max(head, next), changes);
+    }
+
+    public PersonPage page(String after, Integer limit) {
+        int size = limitOf(limit);
+        long head = faceStoreChangeLog.getSequence();
+        List<String> personIds = pagedFaceStore.getPersonIdsAfter(after, size);
+        List<PersonSnapshot> persons = new ArrayList<>(personIds.size());
+        for (String personId : personIds) {
+            Person person = faceStore.getPerson(personId);
+            if (person != null) {
+                persons.add(new PersonSnapshot(person, faceStore.getFaceIdList(personId).stream()
+                        .map(faceId -> faceStore.getFace(personId, faceId))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList())));
+            }
+        }
+        String next = personIds.size() < size ? null : personIds.get(personIds.size() - 1);
+        return new PersonPage(head, next, persons, next == null ? copyOf(tombstones) : null);
+    }
+
+    @Override
+    public void onPersonUpdate(Person person) {
+    }
+
+    @Override
+    public void onFaceUpdate(String personId, Face face) {
+    }
+
+    @Override
+    public void onPersonDelete(String personId) {
+        tombstones.put(ChangeEvent.keyOf(personId, null), LocalDateTime.now());
+    }
+
+    @Override
+    public void onFaceDelete(String personId, String faceId) {
+        tombstones.put(ChangeEvent.keyOf(personId, faceId), LocalDateTime.now());
+    }
+
+    private ReplicatedChange toChange(ChangeEvent event) {
+        String personId = event.getPersonId();
+        String faceId = event.getFaceId();
+        switch (event.getType()) {
+            case PERSON_UPDATE:
+                Person person = faceStore.getPerson(personId);
+                return person == null ? null : new ReplicatedChange(event.getSequence(), event.getType(), personId, null, person.getUpdateTime(), person, null);
+            case FACE_UPDATE:
+                Face face = faceStore.getFace(personId, faceId);
+                return face == null ? null : new ReplicatedChange(event.getSequence(), event.getType(), personId, faceId, face.getUpdateTime(), null, face);
+            default:
+                LocalDateTime deletedAt = tombstones.get(event.getKey());
+                return new ReplicatedChange(event.getSequence(), event.getType(), personId, faceId, deletedAt != null ? deletedAt : event.getTime(), null, null);
+        }
+    }
+
+    private void pullAll() {
+        for (String peer : replicationProperties.getPeers()) {
+            try {
+                pull(peer);
+            } catch (RestClientException | JsonParseException e) {
+                log.warn("Error pulling changes from {}: {}", peer, e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Error replicating from " + peer, e);
+            }
+        }
+    }
+
+    private void pull(String peer) {
+        while (!Thread.currentThread().isInterrupted()) {
+            long cursor = cursors.getOrDefault(peer, 0L);
+            ChangeFeed feed = get(uri(peer, "/replication/changes")
+                    .queryParam("cursor", cursor)
+                    .queryParam("limit", replicationProperties.getBatchSize()), ChangeFeed.class);
+            heads.put(peer, feed.getHead());
+            if (feed.isReset()) {
+                resync(peer, feed.getHead());
+                continue;
+            }
+            feed.getChanges().forEach(change -> apply(peer, change));
+            if (feed.getCursor() == cursor) {
+                return;
+            }
+            saveCursor(peer, feed.getCursor());
+            if (feed.getCursor() >= feed.getHead()) {
+                return;
+            }
+        }
+    }
+
+    private void resync(String peer, long head) {
+        log.info("Change log of {} does not cover cursor {}, resynchronizing up to {}", peer, cursors.getOrDefault(peer, 0L), head);
+        Set<String> remote = new HashSet<>();
+        Map<String, LocalDateTime> remoteTombstones = Collections.emptyMap();
+        String after = null;
+        do {
+            UriComponentsBuilder builder = uri(peer, "/replication/persons").queryParam("limit", replicationProperties.getBatchSize());
+            if (after != null) {
+                builder.queryParam("after", after);
+            }
+            PersonPage page = get(builder, PersonPage.class);
+            for (PersonSnapshot snapshot : page.getPersons()) {
+                String personId = snapshot.getPerson().getId();
+                remote.add(ChangeEvent.keyOf(personId, null));
+                applyPerson(peer, snapshot.getPerson());
+                snapshot.getFaces().forEach(face -> {
+                    remote.add(ChangeEvent.keyOf(personId, face.getId()));
+                    applyFace(peer, personId, face);
+                });
+            }
+            after = page.getNext();
+            if (after == null && page.getTombstones() != null) {
+                remoteTombstones = page.getTombstones();
+            }
+        } while (after != null);
+        applyMissing(peer, remote, remoteTombstones);
+        saveCursor(peer, head);
+    }
+
+    private void applyMissing(String peer, Set<String> remote, Map<String, LocalDateTime> remoteTombstones) {
+        int diverged = 0;
+        for (String personId : faceStore.getPersonIds()) {
+            String personKey = ChangeEvent.keyOf(personId, null);
+            LocalDateTime personDeletedAt = remoteTombstones.get(personKey);
+            if (!remote.contains(personKey)) {
+                if (personDeletedAt != null) {
+                    apply(peer, new ReplicatedChange(0, ChangeType.PERSON_DELETE, personId, null, personDeletedAt, null, null));
+                    continue;
+                }
+                diverged++;
+            }
+            for (String faceId : faceStore.getFaceIdList(personId)) {
+                String faceKey = ChangeEvent.keyOf(personId, faceId);
+                if (remote.contains(faceKey)) {
+                    continue;
+                }
+                LocalDateTime faceDeletedAt = latest(personDeletedAt, remoteTombstones.get(faceKey));
+                if (faceDeletedAt != null) {
+                    apply(peer, new ReplicatedChange(0, ChangeType.FACE_DELETE, personId, faceId, faceDeletedAt, null, null));
+                } else {
+                    diverged++;
+                }
+            }
+        }
+        if (diverged > 0) {
+            log.warn("{} local entity(ies) are missing on {} without a tombstone, kept until the peer replicates them", diverged, peer);
+        }
+    }
+
+    private void apply(String peer, ReplicatedChange change) {
+        switch (change.getType()) {
+            case PERSON_UPDATE:
+                applyPerson(peer, change.getPerson());
+                break;
+            case FACE_UPDATE:
+                applyFace(peer, change.getPersonId(), change.getFace());
+                break;
+            case PERSON_DELETE:
+                Person person = faceStore.getPerson(change.getPersonId());
+                boolean personExists = person != null || !faceStore.getFaceIdList(change.getPersonId()).isEmpty();
+                applyDelete(peer, change, personExists, person == null ? null : person.getUpdateTime(),
+                        () -> faceStore.deletePerson(change.getPersonId()));
+                break;
+            case FACE_DELETE:
+                Face face = faceStore.getFace(change.getPersonId(), change.getFaceId());
+                applyDelete(peer, change, face != null, face == null ? null : face.getUpdateTime(),
+                        () -> faceStore.deleteFace(change.getPersonId(), change.getFaceId()));
+                break;
+        }
+    }
+
+    private void applyPerson(String peer, Person person) {
+        Person local = faceStore.getPerson(person.getId());
+        if (wins(person, person.getUpdateTime(), local, local == null ? null : local.getUpdateTime(),
+                tombstones.get(ChangeEvent.keyOf(person.getId(), null)))) {
+            faceStore.savePerson(person);
+            applied(peer).increment();
+        } else {
+            skipped(peer).increment();
+        }
+    }
+
+    private void applyFace(String peer, String personId, Face face) {
+        Face local = faceStore.getFace(personId, face.getId());
+        LocalDateTime deletedAt = latest(
+                tombstones.get(ChangeEvent.keyOf(personId, null)),
+                tombstones.get(ChangeEvent.keyOf(personId, face.getId()))
+        );
+        if (wins(face, face.getUpdateTime(), local, local == null ? null : local.getUpdateTime(), deletedAt)) {
+            fetchPicture(peer, face.getPicHash());
+            faceStore.saveFace(personId, face);
+            applied(peer).increment();
+        } else {
+            skipped(peer).increment();
+        }
+    }
+
+    private void applyDelete(String peer, ReplicatedChange change, boolean exists, LocalDateTime localTime, Runnable delete) {
+        if (exists && compare(change.getTime(), localTime) >= 0) {
+            delete.run();
+            tombstones.put(ChangeEvent.keyOf(change.getPersonId(), change.getFaceId()), change.getTime());
+            applied(peer).increment();
+        } else {
+            tombstones.merge(ChangeEvent.keyOf(change.getPersonId(), change.getFaceId()), change.getTime(), FaceStoreReplicator::latest);
+            skipped(peer).increment();
+        }
+    }
+
+    private boolean wins(Object remote, LocalDateTime remoteTime, Object local, LocalDateTime localTime, LocalDateTime deletedAt) {
+        if (deletedAt != null && compare(remoteTime, deletedAt) <= 0) {
+            return false;
+        }
+        if (local == null) {
+            return true;
+        }
+        int order = compare(remoteTime, localTime);
+        return order > 0 || (order == 0 && contentOf(remote).compareTo(contentOf(local)) > 0);
+    }
+
+    private String contentOf(Object entity) {
+        JsonObject content = gson.toJsonTree(entity).getAsJsonObject();
+        content.remove("revision");
+        return content.toString();
+    }
+
+    private void fetchPicture(String peer, String picHash) {
+        if (picHash == null || !pictureStore.isEnabled() || pictureStore.locate(picHash) != null) {
+            return;
+        }
+        byte[] picture = restTemplate.getForObject(uri(peer, "/pictures/" + picHash).build().encode().toUri(), byte[].class);
+        if (picture == null) {
+            throw new RestClientException("Peer " + peer + " returned no content for picture " + picHash);
+        }
+        String stored = pictureStore.put(picture);
+        if (!stored.equals(picHash)) {
+            throw new RestClientException("Picture " + picHash + " from " + peer + " hashes to " + stored);
+        }
+    }
+
+    private <T> T get(UriComponentsBuilder builder, Class<T> type) {
+        URI uri = builder.build().encode().toUri();
+        return gson.fromJson(restTemplate.getForObject(uri, String.class), type);
+    }
+
+    private Counter applied(String peer) {
+        return appliedCounters.computeIfAbsent(peer, key -> metricsRegistry.counter("facestore_replication_changes_total", "peer", key, "result", "applied"));
+    }
+
+    private Counter skipped(String peer) {
+        return skippedCounters.computeIfAbsent(peer, key -> metricsRegistry.counter("facestore_replication_changes_total", "peer", key, "result", "skipped"));
+    }
+
+    private int limitOf(Integer limit) {
+        return limit == null || limit <= 0 ? replicationProperties.getBatchSize() : Math.min(limit, replicationProperties.getBatchSize());
+    }
+
+    private void loadCursors() throws IOException {
+        if (cursorFile.exists()) {
+            Map<String, Long> saved = gson.fromJson(new String(Files.readAllBytes(cursorFile.toPath()), StandardCharsets.UTF_8), CURSORS_TYPE);
+            if (saved != null) {
+                cursors.putAll(saved);
+            }
+        }
+    }
+
+    private synchronized void saveCursor(String peer, long cursor) {
+        cursors.put(peer, cursor);
+        try {
+            File temp = new File(cursorFile.getPath() + ".tmp");
+            Files.write(temp.toPath(), gson.toJson(cursors, CURSORS_TYPE).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), cursorFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error saving replication cursors to " + cursorFile, e);
+        }
+    }
+
+    private static Map<String, LocalDateTime> copyOf(Map<String, LocalDateTime> tombstones) {
+        synchronized (tombstones) {
+            return new HashMap<>(tombstones);
+        }
+    }
+
+    private static UriComponentsBuilder uri(String peer, String path) {
+        return UriComponentsBuilder.fromHttpUrl(peer).path(path);
+    }
+
+    private static int compare(LocalDateTime left, LocalDateTime right) {
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        return left.compareTo(right);
+    }
+
+    private static LocalDateTime latest(LocalDateTime left, LocalDateTime right) {
+        return compare(left, right) >= 0 ? left : right;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.charleslzq.facestore.server.replication;
+
+import com.github.charleslzq.facestore.server.message.PersonSnapshot;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.joda.time.LocalDateTime;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class PersonPage {
+    private final long head;
+    private final String next;
+    private final List<PersonSnapshot> persons;
+    private final Map<String, LocalDateTime> tombstones;
+}
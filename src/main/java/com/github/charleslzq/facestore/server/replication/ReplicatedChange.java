@@ -0,0 +1,20 @@
+package com.github.charleslzq.facestore.server.replication;
+
+import com.github.charleslzq.facestore.server.ChangeType;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.joda.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class ReplicatedChange {
+    private final long sequence;
+    private final ChangeType type;
+    private final String personId;
+    private final String faceId;
+    private final LocalDateTime time;
+    private final Person person;
+    private final Face face;
+}
@@ -0,0 +1,34 @@
+package com.github.charleslzq.facestore.server.replication;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@ConditionalOnProperty(prefix = "face.store.replication", name = "enabled")
+public class ReplicationController {
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
+    @Autowired
+    private FaceStoreReplicator faceStoreReplicator;
+
+    @GetMapping("/replication/changes")
+    public ResponseEntity<String> changes(@RequestParam long cursor, @RequestParam(required = false) Integer limit) {
+        return json(faceStoreReplicator.feed(cursor, limit));
+    }
+
+    @GetMapping("/replication/persons")
+    public ResponseEntity<String> persons(@RequestParam(required = false) String after, @RequestParam(required = false) Integer limit) {
+        return json(faceStoreReplicator.page(after, limit));
+    }
+
+    private ResponseEntity<String> json(Object body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(gson.toJson(body));
+    }
+}
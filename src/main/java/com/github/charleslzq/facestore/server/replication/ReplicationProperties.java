@@ -0,0 +1,20 @@
+package com.github.charleslzq.facestore.server.replication;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.replication")
+public class ReplicationProperties {
+    private boolean enabled = false;
+    private List<String> peers = new ArrayList<>();
+    private long pollInterval = 1000;
+    private int batchSize = 500;
+    private int connectTimeout = 2000;
+    private int readTimeout = 10000;
+    private int tombstoneCapacity = 100000;
+    private String cursorFile;
+}
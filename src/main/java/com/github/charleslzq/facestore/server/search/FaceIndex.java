@@ -0,0 +1,15 @@
+package com.github.charleslzq.facestore.server.search;
+
+import java.util.List;
+
+public interface FaceIndex {
+    void put(String personId, String faceId, float[] vector);
+
+    void remove(String personId, String faceId);
+
+    void removePerson(String personId);
+
+    List<SearchHit> search(float[] query, int topK);
+
+    int size();
+}
@@ -0,0 +1,31 @@
+package com.github.charleslzq.facestore.server.search;
+
+import com.github.charleslzq.facestore.server.type.Feature;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@ConditionalOnProperty(prefix = "face.store.search", name = "enabled")
+public class FaceSearchController {
+    private final Gson gson = new Gson();
+    @Autowired
+    private FaceSearchEngine faceSearchEngine;
+
+    @PostMapping("/search")
+    public ResponseEntity<List<SearchHit>> search(@RequestBody String feature, @RequestParam(required = false) Integer topK) {
+        try {
+            return ResponseEntity.ok(faceSearchEngine.search(gson.fromJson(feature, Feature.class), topK));
+        } catch (JsonParseException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
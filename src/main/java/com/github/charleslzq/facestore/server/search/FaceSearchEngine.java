@@ -0,0 +1,212 @@
+package com.github.charleslzq.facestore.server.search;
+
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.ChangeEvent;
+import com.github.charleslzq.facestore.server.FaceStoreChangeLog;
+import com.github.charleslzq.facestore.server.FaceStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Feature;
+import com.github.charleslzq.facestore.server.type.Person;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "face.store.search", name = "enabled")
+@EnableConfigurationProperties(SearchProperties.class)
+public class FaceSearchEngine implements FaceStoreChangeListener<Person, Face> {
+    @Autowired
+    @Qualifier("faceStoreCacheWrapper")
+    private ListenableReadWriteFaceStore<Person, Face> faceStore;
+    @Autowired
+    private FaceStoreChangeLog faceStoreChangeLog;
+    @Autowired
+    private FaceStoreProperties faceStoreProperties;
+    @Autowired
+    private SearchProperties searchProperties;
+    private ForkJoinPool pool;
+    private File indexFile;
+    private volatile FaceIndex faceIndex;
+
+    @PostConstruct
+    public void setup() {
+        pool = new ForkJoinPool(searchProperties.getParallelism());
+        faceIndex = newIndex();
+        long cursor = restore();
+        faceStore.getListeners().add(this);
+        if (!replay(cursor)) {
+            faceIndex = newIndex();
+            build();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        persist();
+        pool.shutdown();
+    }
+
+    public List<SearchHit> search(Feature feature, Integer topK) {
+        if (feature == null || feature.getMFeatureData() == null) {
+            throw new IllegalArgumentException("Feature data is required for searching");
+        }
+        if (topK != null && topK < 1) {
+            throw new IllegalArgumentException("Top k must be positive but got " + topK);
+        }
+        int limit = topK == null
+                ? searchProperties.getDefaultTopK()
+                : Math.max(1, Math.min(searchProperties.getMaxTopK(), topK));
+        return faceIndex.search(searchProperties.getEncoding().decodeNormalized(feature.getMFeatureData()), limit);
+    }
+
+    public int size() {
+        return faceIndex.size();
+    }
+
+    @Override
+    public void onPersonUpdate(Person person) {
+    }
+
+    @Override
+    public void onFaceUpdate(String personId, Face face) {
+        index(personId, face);
+    }
+
+    @Override
+    public void onPersonDelete(String personId) {
+        faceIndex.removePerson(personId);
+    }
+
+    @Override
+    public void onFaceDelete(String personId, String faceId) {
+        faceIndex.remove(personId, faceId);
+    }
+
+    private FaceIndex newIndex() {
+        if (searchProperties.getMode() == SearchMode.IVF) {
+            return new IvfFaceIndex(pool, searchProperties.getIvf().getLists(), searchProperties.getIvf().getProbes());
+        }
+        return new FlatFaceIndex(pool);
+    }
+
+    private File indexFile() {
+        if (indexFile == null) {
+            indexFile = new File(searchProperties.getIvf().getFile() != null
+                    ? searchProperties.getIvf().getFile()
+                    : faceStoreProperties.getDirectory() + ".ivf");
+        }
+        return indexFile;
+    }
+
+    private long restore() {
+        if (!(faceIndex instanceof IvfFaceIndex) || !indexFile().exists()) {
+            return -1;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile())))) {
+            long cursor = input.readLong();
+            ((IvfFaceIndex) faceIndex).readFrom(input, indexFile().length() - Long.BYTES);
+            log.info("Search index restored from {} with {} face(s) at cursor {}", indexFile(), faceIndex.size(), cursor);
+            return cursor;
+        } catch (IOException e) {
+            log.warn("Unable to restore search index from " + indexFile(), e);
+            return -1;
+        }
+    }
+
+    private boolean replay(long cursor) {
+        if (cursor < 0) {
+            return false;
+        }
+        Optional<List<ChangeEvent>> changes = faceStoreChangeLog.since(cursor);
+        if (!changes.isPresent()) {
+            log.info("Search index cursor {} not in change log, rebuild it", cursor);
+            return false;
+        }
+        changes.get().forEach(change -> {
+            switch (change.getType()) {
+                case FACE_UPDATE:
+                    Face face = faceStore.getFace(change.getPersonId(), change.getFaceId());
+                    if (face == null) {
+                        faceIndex.remove(change.getPersonId(), change.getFaceId());
+                    } else {
+                        index(change.getPersonId(), face);
+                    }
+                    break;
+                case FACE_DELETE:
+                    faceIndex.remove(change.getPersonId(), change.getFaceId());
+                    break;
+                case PERSON_DELETE:
+                    faceIndex.removePerson(change.getPersonId());
+                    break;
+                default:
+                    break;
+            }
+        });
+        log.info("Search index caught up with {} change(s) since cursor {}", changes.get().size(), cursor);
+        return true;
+    }
+
+    private void build() {
+        long start = System.currentTimeMillis();
+        faceStore.getPersonIds().forEach(personId -> faceStore.getFaceIdList(personId).forEach(faceId -> {
+            Face face = faceStore.getFace(personId, faceId);
+            if (face != null) {
+                index(personId, face);
+            }
+        }));
+        log.info("Search index built with {} face(s) in {} ms", faceIndex.size(), System.currentTimeMillis() - start);
+    }
+
+    private void persist() {
+        if (!(faceIndex instanceof IvfFaceIndex)) {
+            return;
+        }
+        File temp = new File(indexFile().getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            output.writeLong(faceStoreChangeLog.getSequence());
+            ((IvfFaceIndex) faceIndex).writeTo(output);
+        } catch (IOException e) {
+            log.error("Unable to persist search index to " + indexFile(), e);
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), indexFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Search index persisted to {} with {} face(s)", indexFile(), faceIndex.size());
+        } catch (IOException e) {
+            log.error("Unable to persist search index to " + indexFile(), e);
+        }
+    }
+
+    private void index(String personId, Face face) {
+        if (face.getData() == null || face.getData().getMFeatureData() == null) {
+            faceIndex.remove(personId, face.getId());
+            return;
+        }
+        try {
+            faceIndex.put(personId, face.getId(), searchProperties.getEncoding().decodeNormalized(face.getData().getMFeatureData()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Face {} of person {} not indexed: {}", face.getId(), personId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.charleslzq.facestore.server.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public enum FeatureEncoding {
+    FLOAT32 {
+        @Override
+        float[] decode(byte[] data) {
+            if (data.length % Float.BYTES != 0) {
+                throw new IllegalArgumentException("Feature of " + data.length + " byte(s) is not a float32 vector");
+            }
+            float[] vector = new float[data.length / Float.BYTES];
+            ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+            return vector;
+        }
+    },
+    INT8 {
+        @Override
+        float[] decode(byte[] data) {
+            float[] vector = new float[data.length];
+            for (int index = 0; index < data.length; index++) {
+                vector[index] = data[index];
+            }
+            return vector;
+        }
+    };
+
+    abstract float[] decode(byte[] data);
+
+    public float[] decodeNormalized(byte[] data) {
+        float[] vector = decode(data);
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int index = 0; index < vector.length; index++) {
+                vector[index] *= scale;
+            }
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.charleslzq.facestore.server.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+public class FlatFaceIndex implements FaceIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CHUNK_ROWS = 4096;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ForkJoinPool pool;
+    private final Map<String, Integer> rows = new HashMap<>();
+    private final Map<String, Set<String>> personFaces = new HashMap<>();
+    private int dimension = -1;
+    private float[] matrix = new float[0];
+    private String[] personIds = new String[0];
+    private String[] faceIds = new String[0];
+    private int size = 0;
+
+    public FlatFaceIndex(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void put(String personId, String faceId, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = vector.length;
+            }
+            checkDimension(vector);
+            String key = keyOf(personId, faceId);
+            Integer row = rows.get(key);
+            if (row == null) {
+                ensureCapacity(size + 1);
+                row = size++;
+                rows.put(key, row);
+                personIds[row] = personId;
+                faceIds[row] = faceId;
+                personFaces.computeIfAbsent(personId, id -> new HashSet<>()).add(faceId);
+            }
+            System.arraycopy(vector, 0, matrix, row * dimension, dimension);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String personId, String faceId) {
+        lock.writeLock().lock();
+        try {
+            removeRow(personId, faceId);
+            Set<String> faces = personFaces.get(personId);
+            if (faces != null) {
+                faces.remove(faceId);
+                if (faces.isEmpty()) {
+                    personFaces.remove(personId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removePerson(String personId) {
+        lock.writeLock().lock();
+        try {
+            Set<String> faces = personFaces.remove(personId);
+            if (faces != null) {
+                faces.forEach(faceId -> removeRow(personId, faceId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(float[] query, int topK) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            checkDimension(query);
+            return hits(scan(query, topK));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private float score(float[] query, int row) {
+        int offset = row * dimension;
+        float score = 0;
+        for (int index = 0; index < dimension; index++) {
+            score += query[index] * matrix[offset + index];
+        }
+        return score;
+    }
+
+    private TopK scan(float[] query, int topK) {
+        int total = size;
+        int chunks = (total + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        if (chunks <= 1) {
+            return scanChunk(query, 0, total, topK);
+        }
+        try {
+            return pool.submit(() -> IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> scanChunk(query, chunk * CHUNK_ROWS, Math.min(total, (chunk + 1) * CHUNK_ROWS), topK))
+                    .reduce(TopK::merge)
+                    .orElseGet(() -> new TopK(topK))
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+    }
+
+    private TopK scanChunk(float[] query, int from, int to, int topK) {
+        TopK result = new TopK(topK);
+        for (int row = from; row < to; row++) {
+            result.offer(row, score(query, row));
+        }
+        return result;
+    }
+
+    private List<SearchHit> hits(TopK topK) {
+        List<SearchHit> hits = new ArrayList<>(topK.size);
+        for (int index = 0; index < topK.size; index++) {
+            int row = topK.rows[index];
+            hits.add(new SearchHit(personIds[row], faceIds[row], topK.scores[index]));
+        }
+        return hits;
+    }
+
+    private void removeRow(String personId, String faceId) {
+        Integer row = rows.remove(keyOf(personId, faceId));
+        if (row == null) {
+            return;
+        }
+        int last = --size;
+        if (row != last) {
+            System.arraycopy(matrix, last * dimension, matrix, row * dimension, dimension);
+            personIds[row] = personIds[last];
+            faceIds[row] = faceIds[last];
+            rows.put(keyOf(personIds[row], faceIds[row]), row);
+        }
+        personIds[last] = null;
+        faceIds[last] = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= personIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(INITIAL_CAPACITY, personIds.length * 2);
+        matrix = Arrays.copyOf(matrix, newCapacity * dimension);
+        personIds = Arrays.copyOf(personIds, newCapacity);
+        faceIds = Arrays.copyOf(faceIds, newCapacity);
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expect feature of dimension " + dimension + " but got " + vector.length);
+        }
+    }
+
+    private static String keyOf(String personId, String faceId) {
+        return personId + "/" + faceId;
+    }
+}
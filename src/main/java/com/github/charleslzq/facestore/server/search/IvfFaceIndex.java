@@ -0,0 +1,618 @@
+package com.github.charleslzq.facestore.server.search;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@Slf4j
+public class IvfFaceIndex implements FaceIndex {
+    private static final int FORMAT_VERSION = 1;
+    private static final int TRAINING_ITERATIONS = 10;
+    private static final int MIN_LIST_SIZE = 32;
+    private static final int RETRAIN_GROWTH = 4;
+    private static final int TRAINING_SAMPLES_PER_LIST = 64;
+    private static final int IMBALANCE = 8;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ForkJoinPool pool;
+    private final int maxLists;
+    private final int probes;
+    private final Map<String, Location> locations = new HashMap<>();
+    private final Map<String, Set<String>> personFaces = new HashMap<>();
+    private int dimension = -1;
+    private float[] centroids = null;
+    private InvertedList[] invertedLists = {new InvertedList()};
+    private int size = 0;
+    private int trainedSize = 0;
+    private int generation = 0;
+    private Set<String> retouched = null;
+
+    public IvfFaceIndex(ForkJoinPool pool, int maxLists, int probes) {
+        this.pool = pool;
+        this.maxLists = maxLists;
+        this.probes = probes;
+    }
+
+    @Override
+    public void put(String personId, String faceId, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = vector.length;
+            }
+            checkDimension(vector);
+            String key = keyOf(personId, faceId);
+            Location location = locations.get(key);
+            int list = nearestList(vector);
+            touch(key);
+            if (location != null && location.list == list) {
+                invertedLists[list].set(location.position, vector);
+                return;
+            }
+            if (location != null) {
+                removeAt(location);
+            } else {
+                size++;
+                personFaces.computeIfAbsent(personId, id -> new HashSet<>()).add(faceId);
+            }
+            locations.put(key, new Location(list, invertedLists[list].add(personId, faceId, vector)));
+            if (needsTraining(list)) {
+                startTraining();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String personId, String faceId) {
+        lock.writeLock().lock();
+        try {
+            removeFace(personId, faceId);
+            Set<String> faces = personFaces.get(personId);
+            if (faces != null) {
+                faces.remove(faceId);
+                if (faces.isEmpty()) {
+                    personFaces.remove(personId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removePerson(String personId) {
+        lock.writeLock().lock();
+        try {
+            Set<String> faces = personFaces.remove(personId);
+            if (faces != null) {
+                faces.forEach(faceId -> removeFace(personId, faceId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(float[] query, int topK) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            checkDimension(query);
+            int[] probed = probedLists(query);
+            List<SearchHit> hits = pool.submit(() -> Arrays.stream(probed).parallel()
+                    .mapToObj(list -> invertedLists[list].search(query, dimension, topK))
+                    .flatMap(List::stream)
+                    .sorted(Comparator.comparing(SearchHit::getScore).reversed())
+                    .limit(topK)
+                    .collect(Collectors.toList())
+            ).get();
+            return hits;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void writeTo(DataOutput output) throws IOException {
+        lock.readLock().lock();
+        try {
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(dimension);
+            output.writeInt(trainedSize);
+            output.writeInt(centroids == null ? 0 : centroids.length / dimension);
+            if (centroids != null) {
+                writeFloats(output, centroids, 0, centroids.length);
+            }
+            output.writeInt(invertedLists.length);
+            for (InvertedList invertedList : invertedLists) {
+                output.writeInt(invertedList.size);
+                for (int position = 0; position < invertedList.size; position++) {
+                    output.writeUTF(invertedList.personIds[position]);
+                    output.writeUTF(invertedList.faceIds[position]);
+                    writeFloats(output, invertedList.vectors, position * dimension, dimension);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void readFrom(DataInput input, long length) throws IOException {
+        Remaining remaining = new Remaining(length);
+        remaining.take(Integer.BYTES * 4L);
+        int version = input.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported index format " + version);
+        }
+        int readDimension = input.readInt();
+        int readTrainedSize = input.readInt();
+        int centroidCount = input.readInt();
+        if (readDimension < -1 || readDimension == 0 || readTrainedSize < 0 || centroidCount < 0 || (readDimension < 0 && centroidCount > 0)) {
+            throw new IOException("Corrupted index header: dimension " + readDimension + ", trained size " + readTrainedSize + ", centroids " + centroidCount);
+        }
+        float[] readCentroids = null;
+        if (centroidCount > 0) {
+            readCentroids = readFloats(input, remaining.floats((long) centroidCount * readDimension));
+        }
+        remaining.take(Integer.BYTES);
+        int listCount = input.readInt();
+        if (listCount != Math.max(1, centroidCount)) {
+            throw new IOException("Expect " + Math.max(1, centroidCount) + " inverted list(s) but got " + listCount);
+        }
+        InvertedList[] readLists = new InvertedList[listCount];
+        Map<String, Location> readLocations = new HashMap<>();
+        Map<String, Set<String>> readPersonFaces = new HashMap<>();
+        int readSize = 0;
+        for (int list = 0; list < listCount; list++) {
+            remaining.take(Integer.BYTES);
+            int listSize = input.readInt();
+            if (listSize < 0 || (listSize > 0 && readDimension < 0)) {
+                throw new IOException("Corrupted size " + listSize + " of inverted list " + list);
+            }
+            remaining.check((long) listSize * (Short.BYTES * 2 + (long) Float.BYTES * readDimension));
+            long vectorLength = (long) listSize * Math.max(readDimension, 0);
+            if (vectorLength > Integer.MAX_VALUE) {
+                throw new IOException("Inverted list " + list + " is too large: " + listSize + " face(s)");
+            }
+            InvertedList invertedList = new InvertedList();
+            invertedList.vectors = new float[(int) vectorLength];
+            invertedList.personIds = new String[listSize];
+            invertedList.faceIds = new String[listSize];
+            for (int position = 0; position < listSize; position++) {
+                String personId = input.readUTF();
+                String faceId = input.readUTF();
+                remaining.take(Short.BYTES * 2L + personId.length() + faceId.length());
+                remaining.floats(readDimension);
+                for (int offset = 0; offset < readDimension; offset++) {
+                    invertedList.vectors[position * readDimension + offset] = input.readFloat();
+                }
+                invertedList.personIds[position] = personId;
+                invertedList.faceIds[position] = faceId;
+                if (readLocations.put(keyOf(personId, faceId), new Location(list, position)) != null) {
+                    throw new IOException("Duplicated face " + faceId + " of person " + personId);
+                }
+                readPersonFaces.computeIfAbsent(personId, id -> new HashSet<>()).add(faceId);
+            }
+            invertedList.size = listSize;
+            readLists[list] = invertedList;
+            readSize += listSize;
+        }
+        lock.writeLock().lock();
+        try {
+            generation++;
+            retouched = null;
+            dimension = readDimension;
+            trainedSize = readTrainedSize;
+            centroids = readCentroids;
+            invertedLists = readLists;
+            locations.clear();
+            locations.putAll(readLocations);
+            personFaces.clear();
+            personFaces.putAll(readPersonFaces);
+            size = readSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean needsTraining(int list) {
+        if (retouched != null || size < MIN_LIST_SIZE * 2) {
+            return false;
+        }
+        if (centroids == null || size >= trainedSize * RETRAIN_GROWTH) {
+            return true;
+        }
+        int listSize = invertedLists[list].size;
+        return size >= trainedSize + trainedSize / RETRAIN_GROWTH
+                && listSize > MIN_LIST_SIZE * IMBALANCE
+                && listSize > IMBALANCE * size / invertedLists.length;
+    }
+
+    private void startTraining() {
+        int started = generation;
+        retouched = new HashSet<>();
+        try {
+            pool.execute(() -> train(started));
+        } catch (RejectedExecutionException e) {
+            retouched = null;
+        }
+    }
+
+    private Training snapshot(int started) {
+        lock.readLock().lock();
+        try {
+            if (started != generation || size < MIN_LIST_SIZE * 2) {
+                return null;
+            }
+            Training training = new Training(generation, dimension, size);
+            int row = 0;
+            for (InvertedList invertedList : invertedLists) {
+                System.arraycopy(invertedList.vectors, 0, training.vectors, row * dimension, invertedList.size * dimension);
+                System.arraycopy(invertedList.personIds, 0, training.personIds, row, invertedList.size);
+                System.arraycopy(invertedList.faceIds, 0, training.faceIds, row, invertedList.size);
+                row += invertedList.size;
+            }
+            return training;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void train(int started) {
+        Training training = snapshot(started);
+        if (training == null) {
+            lock.writeLock().lock();
+            try {
+                if (started == generation) {
+                    retouched = null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+        float[] trained = null;
+        int[] assignments = null;
+        try {
+            trained = centroidsOf(training);
+            assignments = new int[training.size];
+            assign(training.vectors, trained, assignments, training.dimension);
+        } catch (RuntimeException e) {
+            log.error("Error training index of " + training.size + " face(s)", e);
+            trained = null;
+        }
+        lock.writeLock().lock();
+        try {
+            if (training.generation != generation) {
+                return;
+            }
+            if (trained != null) {
+                swapIn(training, trained, assignments);
+            }
+            retouched = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private float[] centroidsOf(Training training) {
+        int dimension = training.dimension;
+        int count = Math.max(1, Math.min(maxLists, training.size / MIN_LIST_SIZE));
+        Random random = new Random(training.size);
+        int sampleSize = Math.min(training.size, count * TRAINING_SAMPLES_PER_LIST);
+        float[] samples = new float[sampleSize * dimension];
+        int[] sampled = random.ints(0, training.size).distinct().limit(sampleSize).toArray();
+        for (int index = 0; index < sampleSize; index++) {
+            System.arraycopy(training.vectors, sampled[index] * dimension, samples, index * dimension, dimension);
+        }
+        float[] trained = Arrays.copyOf(samples, count * dimension);
+        int[] sampleAssignments = new int[sampleSize];
+        for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+            assign(samples, trained, sampleAssignments, dimension);
+            float[] sums = new float[count * dimension];
+            int[] counts = new int[count];
+            for (int index = 0; index < sampleSize; index++) {
+                int centroid = sampleAssignments[index];
+                counts[centroid]++;
+                for (int offset = 0; offset < dimension; offset++) {
+                    sums[centroid * dimension + offset] += samples[index * dimension + offset];
+                }
+            }
+            for (int centroid = 0; centroid < count; centroid++) {
+                if (counts[centroid] == 0) {
+                    System.arraycopy(samples, random.nextInt(sampleSize) * dimension, trained, centroid * dimension, dimension);
+                } else {
+                    normalize(sums, centroid * dimension, dimension);
+                    System.arraycopy(sums, centroid * dimension, trained, centroid * dimension, dimension);
+                }
+            }
+        }
+        return trained;
+    }
+
+    private void swapIn(Training training, float[] trained, int[] assignments) {
+        int count = trained.length / dimension;
+        InvertedList[] lists = new InvertedList[count];
+        for (int list = 0; list < count; list++) {
+            lists[list] = new InvertedList();
+        }
+        Map<String, Location> relocated = new HashMap<>();
+        for (int index = 0; index < training.size; index++) {
+            String key = keyOf(training.personIds[index], training.faceIds[index]);
+            if (retouched.contains(key)) {
+                continue;
+            }
+            int list = assignments[index];
+            float[] vector = Arrays.copyOfRange(training.vectors, index * dimension, (index + 1) * dimension);
+            relocated.put(key, new Location(list, lists[list].add(training.personIds[index], training.faceIds[index], vector)));
+        }
+        for (String key : retouched) {
+            Location location = locations.get(key);
+            if (location == null) {
+                continue;
+            }
+            InvertedList current = invertedLists[location.list];
+            float[] vector = Arrays.copyOfRange(current.vectors, location.position * dimension, (location.position + 1) * dimension);
+            int list = nearest(trained, count, vector, 0, dimension);
+            relocated.put(key, new Location(list, lists[list].add(current.personIds[location.position], current.faceIds[location.position], vector)));
+        }
+        centroids = trained;
+        invertedLists = lists;
+        locations.clear();
+        locations.putAll(relocated);
+        trainedSize = size;
+    }
+
+    private void assign(float[] vectors, float[] trained, int[] assignments, int dimension) {
+        int count = trained.length / dimension;
+        try {
+            pool.submit(() -> IntStream.range(0, assignments.length).parallel().forEach(index ->
+                    assignments[index] = nearest(trained, count, vectors, index * dimension, dimension)
+            )).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training failed", e.getCause());
+        }
+    }
+
+    private int nearestList(float[] vector) {
+        return centroids == null ? 0 : nearest(centroids, centroids.length / dimension, vector, 0, dimension);
+    }
+
+    private static int nearest(float[] trained, int count, float[] vectors, int offset, int dimension) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int centroid = 0; centroid < count; centroid++) {
+            float score = dot(trained, centroid * dimension, vectors, offset, dimension);
+            if (score > bestScore) {
+                bestScore = score;
+                best = centroid;
+            }
+        }
+        return best;
+    }
+
+    private int[] probedLists(float[] query) {
+        if (centroids == null) {
+            return new int[]{0};
+        }
+        int count = centroids.length / dimension;
+        TopK nearest = new TopK(Math.min(probes, count));
+        for (int centroid = 0; centroid < count; centroid++) {
+            nearest.offer(centroid, dot(centroids, centroid * dimension, query, 0, dimension));
+        }
+        return Arrays.copyOf(nearest.rows, nearest.size);
+    }
+
+    private void touch(String key) {
+        if (retouched != null) {
+            retouched.add(key);
+        }
+    }
+
+    private void removeFace(String personId, String faceId) {
+        String key = keyOf(personId, faceId);
+        touch(key);
+        Location location = locations.remove(key);
+        if (location != null) {
+            removeAt(location);
+            size--;
+        }
+    }
+
+    private void removeAt(Location location) {
+        InvertedList invertedList = invertedLists[location.list];
+        String moved = invertedList.remove(location.position);
+        if (moved != null) {
+            locations.get(moved).position = location.position;
+        }
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expect feature of dimension " + dimension + " but got " + vector.length);
+        }
+    }
+
+    private static float dot(float[] left, int leftOffset, float[] right, int rightOffset, int length) {
+        float score = 0;
+        for (int index = 0; index < length; index++) {
+            score += left[leftOffset + index] * right[rightOffset + index];
+        }
+        return score;
+    }
+
+    private static void normalize(float[] vectors, int offset, int length) {
+        double norm = 0;
+        for (int index = offset; index < offset + length; index++) {
+            norm += vectors[index] * vectors[index];
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int index = offset; index < offset + length; index++) {
+                vectors[index] *= scale;
+            }
+        }
+    }
+
+    private static void writeFloats(DataOutput output, float[] values, int offset, int length) throws IOException {
+        for (int index = offset; index < offset + length; index++) {
+            output.writeFloat(values[index]);
+        }
+    }
+
+    private static float[] readFloats(DataInput input, int length) throws IOException {
+        float[] values = new float[length];
+        for (int index = 0; index < length; index++) {
+            values[index] = input.readFloat();
+        }
+        return values;
+    }
+
+    private static String keyOf(String personId, String faceId) {
+        return personId + "/" + faceId;
+    }
+
+    private static class Training {
+        private final int generation;
+        private final int dimension;
+        private final int size;
+        private final float[] vectors;
+        private final String[] personIds;
+        private final String[] faceIds;
+
+        private Training(int generation, int dimension, int size) {
+            this.generation = generation;
+            this.dimension = dimension;
+            this.size = size;
+            this.vectors = new float[size * dimension];
+            this.personIds = new String[size];
+            this.faceIds = new String[size];
+        }
+    }
+
+    private static class Remaining {
+        private long bytes;
+
+        private Remaining(long bytes) {
+            this.bytes = bytes;
+        }
+
+        private void check(long needed) throws IOException {
+            if (needed < 0 || needed > bytes) {
+                throw new IOException("Index needs " + needed + " more byte(s) but only " + bytes + " remain");
+            }
+        }
+
+        private void take(long needed) throws IOException {
+            check(needed);
+            bytes -= needed;
+        }
+
+        private int floats(long count) throws IOException {
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("Too many floats in index: " + count);
+            }
+            take(count * Float.BYTES);
+            return (int) count;
+        }
+    }
+
+    private static class Location {
+        private final int list;
+        private int position;
+
+        private Location(int list, int position) {
+            this.list = list;
+            this.position = position;
+        }
+    }
+
+    private class InvertedList {
+        private float[] vectors = new float[0];
+        private String[] personIds = new String[0];
+        private String[] faceIds = new String[0];
+        private int size = 0;
+
+        private int add(String personId, String faceId, float[] vector) {
+            if (size == personIds.length) {
+                int capacity = Math.max(MIN_LIST_SIZE, size * 2);
+                vectors = Arrays.copyOf(vectors, capacity * dimension);
+                personIds = Arrays.copyOf(personIds, capacity);
+                faceIds = Arrays.copyOf(faceIds, capacity);
+            }
+            personIds[size] = personId;
+            faceIds[size] = faceId;
+            System.arraycopy(vector, 0, vectors, size * dimension, dimension);
+            return size++;
+        }
+
+        private void set(int position, float[] vector) {
+            System.arraycopy(vector, 0, vectors, position * dimension, dimension);
+        }
+
+        private String remove(int position) {
+            int last = --size;
+            String moved = null;
+            if (position != last) {
+                System.arraycopy(vectors, last * dimension, vectors, position * dimension, dimension);
+                personIds[position] = personIds[last];
+                faceIds[position] = faceIds[last];
+                moved = keyOf(personIds[position], faceIds[position]);
+            }
+            personIds[last] = null;
+            faceIds[last] = null;
+            return moved;
+        }
+
+        private List<SearchHit> search(float[] query, int dimension, int topK) {
+            TopK result = new TopK(topK);
+            for (int position = 0; position < size; position++) {
+                result.offer(position, dot(vectors, position * dimension, query, 0, dimension));
+            }
+            List<SearchHit> hits = new ArrayList<>(result.size);
+            for (int index = 0; index < result.size; index++) {
+                hits.add(new SearchHit(personIds[result.rows[index]], faceIds[result.rows[index]], result.scores[index]));
+            }
+            return hits;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.charleslzq.facestore.server.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class SearchHit {
+    private final String personId;
+    private final String faceId;
+    private final float score;
+}
@@ -0,0 +1,6 @@
+package com.github.charleslzq.facestore.server.search;
+
+public enum SearchMode {
+    EXACT,
+    IVF
+}
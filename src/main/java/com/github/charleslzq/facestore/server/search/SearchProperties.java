@@ -0,0 +1,23 @@
+package com.github.charleslzq.facestore.server.search;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.search")
+public class SearchProperties {
+    private boolean enabled = false;
+    private FeatureEncoding encoding = FeatureEncoding.FLOAT32;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int defaultTopK = 10;
+    private int maxTopK = 100;
+    private SearchMode mode = SearchMode.EXACT;
+    private Ivf ivf = new Ivf();
+
+    @Data
+    public static class Ivf {
+        private String file;
+        private int lists = 1024;
+        private int probes = 16;
+    }
+}
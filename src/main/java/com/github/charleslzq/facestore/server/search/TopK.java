@@ -0,0 +1,33 @@
+package com.github.charleslzq.facestore.server.search;
+
+class TopK {
+    final float[] scores;
+    final int[] rows;
+    int size = 0;
+
+    TopK(int capacity) {
+        this.scores = new float[capacity];
+        this.rows = new int[capacity];
+    }
+
+    void offer(int row, float score) {
+        if (size == scores.length && score <= scores[size - 1]) {
+            return;
+        }
+        int index = size < scores.length ? size++ : size - 1;
+        while (index > 0 && scores[index - 1] < score) {
+            scores[index] = scores[index - 1];
+            rows[index] = rows[index - 1];
+            index--;
+        }
+        scores[index] = score;
+        rows[index] = row;
+    }
+
+    TopK merge(TopK other) {
+        for (int index = 0; index < other.size; index++) {
+            offer(other.rows[index], other.scores[index]);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.charleslzq.facestore.server.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+@Slf4j
+class Segment implements Closeable {
+    static final String SUFFIX = ".seg";
+    static final int HEADER_SIZE = 8;
+    private final long id;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final AtomicLong liveBytes = new AtomicLong();
+    private volatile int writePosition = 0;
+
+    private Segment(long id, File file, int capacity) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    static Segment create(File directory, long id, int capacity) throws IOException {
+        return new Segment(id, new File(directory, String.format("%016d%s", id, SUFFIX)), capacity);
+    }
+
+    static Segment open(File file) throws IOException {
+        String name = file.getName();
+        long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        return new Segment(id, file, (int) file.length());
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    void addLive(int size) {
+        liveBytes.addAndGet(size);
+    }
+
+    double garbageRatio() {
+        int written = writePosition;
+        return written == 0 ? 0 : 1 - (double) liveBytes.get() / written;
+    }
+
+    int append(byte[] body) {
+        int position = writePosition;
+        if (position + HEADER_SIZE + body.length > buffer.capacity()) {
+            return -1;
+        }
+        ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        target.putInt(body.length);
+        target.putInt(checksum(body));
+        target.put(body);
+        writePosition = position + HEADER_SIZE + body.length;
+        return position;
+    }
+
+    byte[] read(int offset) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        byte[] body = new byte[source.getInt()];
+        source.getInt();
+        source.get(body);
+        return body;
+    }
+
+    int recover(RecordVisitor visitor) {
+        ByteBuffer source = buffer.duplicate();
+        int position = 0;
+        while (position + HEADER_SIZE <= source.capacity()) {
+            source.position(position);
+            int length = source.getInt();
+            int crc = source.getInt();
+            if (length <= 0 || position + HEADER_SIZE + length > source.capacity()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            source.get(body);
+            if (checksum(body) != crc) {
+                log.warn("Segment {} has a torn record at {}, discarding the rest", file, position);
+                break;
+            }
+            visitor.visit(position, body);
+            position += HEADER_SIZE + length;
+        }
+        writePosition = position;
+        return position;
+    }
+
+    void scan(RecordVisitor visitor) {
+        int end = writePosition;
+        int position = 0;
+        while (position < end) {
+            byte[] body = read(position);
+            visitor.visit(position, body);
+            position += HEADER_SIZE + body.length;
+        }
+    }
+
+    void clearTail() {
+        ByteBuffer target = buffer.duplicate();
+        target.position(writePosition);
+        while (target.hasRemaining()) {
+            target.put((byte) 0);
+        }
+        buffer.force();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        close();
+        if (!file.delete()) {
+            log.warn("Could not delete compacted segment {}", file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.getPath();
+    }
+
+    private static int checksum(byte[] body) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(body, 0, body.length);
+        return (int) crc32.getValue();
+    }
+
+    interface RecordVisitor {
+        void visit(int offset, byte[] body);
+    }
+}
@@ -0,0 +1,402 @@
+package com.github.charleslzq.facestore.server.segment;
+
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+import rx.Observable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+public class SegmentFaceStore implements ListenableReadWriteFaceStore<Person, Face>, Closeable {
+    private final File directory;
+    private final SegmentStoreProperties properties;
+    private final Gson gson;
+    private final List<FaceStoreChangeListener<Person, Face>> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, PersonEntry> people = new ConcurrentHashMap<>();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+    private final ThreadLocal<Boolean> syncDeferred = ThreadLocal.withInitial(() -> false);
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Segment active;
+    private long nextSegmentId = 0;
+    private long nextSequence = 1;
+
+    public SegmentFaceStore(String directory, SegmentStoreProperties properties, Gson gson) throws IOException {
+        this.directory = new File(directory);
+        this.properties = properties;
+        this.gson = gson;
+        recover();
+        compactor.scheduleWithFixedDelay(this::compact, properties.getCompactionInterval(), properties.getCompactionInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void savePerson(Person person) {
+        byte[] value = toJson(person);
+        synchronized (writeLock) {
+            long sequence = nextSequence++;
+            Location location = append(new SegmentRecord(SegmentRecord.PUT_PERSON, sequence, person.getId(), null, value).encode(), sequence);
+            location.segment.addLive(location.size);
+            PersonEntry entry = people.computeIfAbsent(person.getId(), id -> new PersonEntry());
+            release(entry.person);
+            entry.person = location;
+        }
+        listeners.forEach(listener -> listener.onPersonUpdate(person));
+    }
+
+    @Override
+    public void saveFace(String personId, Face face) {
+        byte[] value = toJson(face);
+        synchronized (writeLock) {
+            long sequence = nextSequence++;
+            Location location = append(new SegmentRecord(SegmentRecord.PUT_FACE, sequence, personId, face.getId(), value).encode(), sequence);
+            location.segment.addLive(location.size);
+            release(people.computeIfAbsent(personId, id -> new PersonEntry()).faces.put(face.getId(), location));
+        }
+        listeners.forEach(listener -> listener.onFaceUpdate(personId, face));
+    }
+
+    @Override
+    public void deletePerson(String personId) {
+        synchronized (writeLock) {
+            long sequence = nextSequence++;
+            append(new SegmentRecord(SegmentRecord.DELETE_PERSON, sequence, personId, null, null).encode(), sequence);
+            releasePerson(people.remove(personId));
+        }
+        listeners.forEach(listener -> listener.onPersonDelete(personId));
+    }
+
+    @Override
+    public void deleteFace(String personId, String faceId) {
+        synchronized (writeLock) {
+            long sequence = nextSequence++;
+            append(new SegmentRecord(SegmentRecord.DELETE_FACE, sequence, personId, faceId, null).encode(), sequence);
+            PersonEntry entry = people.get(personId);
+            if (entry != null) {
+                release(entry.faces.remove(faceId));
+            }
+        }
+        listeners.forEach(listener -> listener.onFaceDelete(personId, faceId));
+    }
+
+    @Override
+    public List<String> getPersonIds() {
+        return new ArrayList<>(people.keySet());
+    }
+
+    @Override
+    public Observable<String> getPersonIdsAsObservable() {
+        return Observable.defer(() -> Observable.from(getPersonIds()));
+    }
+
+    @Override
+    public Person getPerson(String personId) {
+        PersonEntry entry = people.get(personId);
+        return entry == null ? null : load(entry.person, Person.class);
+    }
+
+    @Override
+    public Observable<Person> getPersonAsObservable(String personId) {
+        return Observable.defer(() -> justOrEmpty(getPerson(personId)));
+    }
+
+    @Override
+    public List<String> getFaceIdList(String personId) {
+        PersonEntry entry = people.get(personId);
+        return entry == null ? Collections.emptyList() : new ArrayList<>(entry.faces.keySet());
+    }
+
+    @Override
+    public Observable<String> getFaceIdListAsObservable(String personId) {
+        return Observable.defer(() -> Observable.from(getFaceIdList(personId)));
+    }
+
+    @Override
+    public Face getFace(String personId, String faceId) {
+        PersonEntry entry = people.get(personId);
+        return entry == null ? null : load(entry.faces.get(faceId), Face.class);
+    }
+
+    @Override
+    public Observable<Face> getFaceAsObservable(String personId, String faceId) {
+        return Observable.defer(() -> justOrEmpty(getFace(personId, faceId)));
+    }
+
+    @Override
+    public List<FaceStoreChangeListener<Person, Face>> getListeners() {
+        return listeners;
+    }
+
+    @Override
+    public Class<Person> getPersonClass() {
+        return Person.class;
+    }
+
+    @Override
+    public Class<Face> getFaceClass() {
+        return Face.class;
+    }
+
+    public void sync() {
+        active.force();
+    }
+
+    public void deferSync(Runnable writes) {
+        boolean outer = syncDeferred.get();
+        syncDeferred.set(true);
+        try {
+            writes.run();
+        } finally {
+            syncDeferred.set(outer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        synchronized (writeLock) {
+            active.force();
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    private Location append(byte[] body, long sequence) {
+        Segment segment = active;
+        int offset = segment.append(body);
+        if (offset < 0) {
+            segment.force();
+            segment = roll(Segment.HEADER_SIZE + body.length);
+            offset = segment.append(body);
+        }
+        if (properties.isSyncOnWrite() && !syncDeferred.get()) {
+            segment.force();
+        }
+        return new Location(segment, offset, Segment.HEADER_SIZE + body.length, sequence);
+    }
+
+    private Segment roll(int minimumCapacity) {
+        try {
+            Segment segment = Segment.create(directory, nextSegmentId++, Math.max(properties.getSegmentSize(), minimumCapacity));
+            segments.add(segment);
+            active = segment;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error creating segment in " + directory, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create segment directory " + directory);
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(Segment.SUFFIX));
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        Map<String, Long> tombstones = new HashMap<>();
+        for (File file : files) {
+            Segment segment = Segment.open(file);
+            segments.add(segment);
+            segment.recover((offset, body) -> replay(segment, offset, body, tombstones));
+            nextSegmentId = segment.getId() + 1;
+        }
+        if (segments.isEmpty()) {
+            roll(properties.getSegmentSize());
+        } else {
+            active = segments.get(segments.size() - 1);
+            active.clearTail();
+        }
+        log.info("Recovered {} person(s) from {} segment(s) in {}", people.size(), segments.size(), directory);
+    }
+
+    private void replay(Segment segment, int offset, byte[] body, Map<String, Long> tombstones) {
+        SegmentRecord record = SegmentRecord.decode(body);
+        long sequence = record.getSequence();
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        Location location = new Location(segment, offset, Segment.HEADER_SIZE + body.length, sequence);
+        String personId = record.getPersonId();
+        PersonEntry entry = people.get(personId);
+        switch (record.getType()) {
+            case SegmentRecord.PUT_PERSON:
+                if (sequence < tombstones.getOrDefault(personId, 0L) || (entry != null && entry.person != null && entry.person.sequence > sequence)) {
+                    return;
+                }
+                entry = people.computeIfAbsent(personId, id -> new PersonEntry());
+                segment.addLive(location.size);
+                release(entry.person);
+                entry.person = location;
+                break;
+            case SegmentRecord.PUT_FACE:
+                String faceKey = faceKeyOf(personId, record.getFaceId());
+                Location current = entry == null ? null : entry.faces.get(record.getFaceId());
+                if (sequence < Math.max(tombstones.getOrDefault(personId, 0L), tombstones.getOrDefault(faceKey, 0L))
+                        || (current != null && current.sequence > sequence)) {
+                    return;
+                }
+                segment.addLive(location.size);
+                release(people.computeIfAbsent(personId, id -> new PersonEntry()).faces.put(record.getFaceId(), location));
+                break;
+            case SegmentRecord.DELETE_PERSON:
+                tombstones.merge(personId, sequence, Math::max);
+                if (entry != null) {
+                    if (entry.person != null && entry.person.sequence <= sequence) {
+                        release(entry.person);
+                        entry.person = null;
+                    }
+                    entry.faces.values().removeIf(face -> {
+                        if (face.sequence > sequence) {
+                            return false;
+                        }
+                        release(face);
+                        return true;
+                    });
+                    if (entry.person == null && entry.faces.isEmpty()) {
+                        people.remove(personId);
+                    }
+                }
+                break;
+            case SegmentRecord.DELETE_FACE:
+                tombstones.merge(faceKeyOf(personId, record.getFaceId()), sequence, Math::max);
+                Location deleted = entry == null ? null : entry.faces.get(record.getFaceId());
+                if (deleted != null && deleted.sequence <= sequence) {
+                    release(entry.faces.remove(record.getFaceId()));
+                }
+                break;
+            default:
+                log.warn("Skip unknown record type {} in segment {}", record.getType(), segment);
+        }
+    }
+
+    private void compact() {
+        try {
+            for (Segment segment : segments) {
+                if (segment != active && segment.garbageRatio() >= properties.getCompactionThreshold()) {
+                    compact(segment);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Error compacting segments in " + directory, e);
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        boolean olderSegments = segments.stream().anyMatch(other -> other.getId() < segment.getId());
+        segment.scan((offset, body) -> {
+            SegmentRecord record = SegmentRecord.decode(body);
+            synchronized (writeLock) {
+                if (record.isTombstone()) {
+                    if (olderSegments) {
+                        append(body, record.getSequence());
+                    }
+                    return;
+                }
+                PersonEntry entry = people.get(record.getPersonId());
+                if (entry == null) {
+                    return;
+                }
+                if (record.getType() == SegmentRecord.PUT_PERSON) {
+                    if (entry.person != null && entry.person.isAt(segment, offset)) {
+                        entry.person = relocate(body, record.getSequence());
+                    }
+                } else {
+                    Location location = entry.faces.get(record.getFaceId());
+                    if (location != null && location.isAt(segment, offset)) {
+                        entry.faces.put(record.getFaceId(), relocate(body, record.getSequence()));
+                    }
+                }
+            }
+        });
+        synchronized (writeLock) {
+            active.force();
+            segments.remove(segment);
+        }
+        segment.delete();
+        log.info("Compacted segment {}", segment);
+    }
+
+    private Location relocate(byte[] body, long sequence) {
+        Location location = append(body, sequence);
+        location.segment.addLive(location.size);
+        return location;
+    }
+
+    private static String faceKeyOf(String personId, String faceId) {
+        return personId + '\u0000' + faceId;
+    }
+
+    private void releasePerson(PersonEntry entry) {
+        if (entry != null) {
+            release(entry.person);
+            entry.faces.values().forEach(this::release);
+        }
+    }
+
+    private void release(Location location) {
+        if (location != null) {
+            location.segment.addLive(-location.size);
+        }
+    }
+
+    private byte[] toJson(Object value) {
+        return gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private <T> T load(Location location, Class<T> clazz) {
+        if (location == null) {
+            return null;
+        }
+        byte[] value = SegmentRecord.decode(location.segment.read(location.offset)).getValue();
+        return gson.fromJson(new String(value, StandardCharsets.UTF_8), clazz);
+    }
+
+    private static <T> Observable<T> justOrEmpty(T value) {
+        return value == null ? Observable.empty() : Observable.just(value);
+    }
+
+    private static class PersonEntry {
+        private final ConcurrentMap<String, Location> faces = new ConcurrentHashMap<>();
+        private volatile Location person;
+    }
+
+    private static class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int size;
+        private final long sequence;
+
+        private Location(Segment segment, int offset, int size, long sequence) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+            this.sequence = sequence;
+        }
+
+        private boolean isAt(Segment segment, int offset) {
+            return this.segment == segment && this.offset == offset;
+        }
+    }
+}
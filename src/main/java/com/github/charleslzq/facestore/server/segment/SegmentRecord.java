@@ -0,0 +1,68 @@
+package com.github.charleslzq.facestore.server.segment;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+@Getter
+@AllArgsConstructor
+class SegmentRecord {
+    static final byte PUT_PERSON = 1;
+    static final byte PUT_FACE = 2;
+    static final byte DELETE_PERSON = 3;
+    static final byte DELETE_FACE = 4;
+    private static final int SEQUENCED = 0x10;
+    private final byte type;
+    private final long sequence;
+    private final String personId;
+    private final String faceId;
+    private final byte[] value;
+
+    boolean isTombstone() {
+        return type == DELETE_PERSON || type == DELETE_FACE;
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(type | SEQUENCED);
+            output.writeLong(sequence);
+            output.writeUTF(personId);
+            output.writeUTF(faceId == null ? "" : faceId);
+            if (value == null) {
+                output.writeInt(-1);
+            } else {
+                output.writeInt(value.length);
+                output.write(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static SegmentRecord decode(byte[] body) {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(body))) {
+            byte flags = input.readByte();
+            long sequence = (flags & SEQUENCED) == 0 ? 0 : input.readLong();
+            byte type = (byte) (flags & ~SEQUENCED);
+            String personId = input.readUTF();
+            String faceId = input.readUTF();
+            int length = input.readInt();
+            byte[] value = null;
+            if (length >= 0) {
+                value = new byte[length];
+                input.readFully(value);
+            }
+            return new SegmentRecord(type, sequence, personId, faceId.isEmpty() ? null : faceId, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.charleslzq.facestore.server.segment;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "face.store.segment")
+public class SegmentStoreProperties {
+    private boolean enabled = false;
+    private String directory;
+    private int segmentSize = 64 * 1024 * 1024;
+    private double compactionThreshold = 0.5;
+    private long compactionInterval = 60000;
+    private boolean syncOnWrite = true;
+}
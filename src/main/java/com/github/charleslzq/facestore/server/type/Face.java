@@ -9,7 +9,9 @@ public class Face implements Meta {
     private String id;
     private Feature data;
     private String pic;
+    private String picHash;
     private Version version;
     private LocalDateTime createTime;
     private LocalDateTime updateTime;
+    private long revision;
 }
@@ -4,10 +4,14 @@ import com.github.charleslzq.facestore.Meta;
 import lombok.Data;
 import org.joda.time.LocalDateTime;
 
+import java.util.Set;
+
 @Data
 public class Person implements Meta {
     private String id;
     private String name;
+    private Set<String> tags;
     private LocalDateTime createTime;
     private LocalDateTime updateTime;
+    private long revision;
 }
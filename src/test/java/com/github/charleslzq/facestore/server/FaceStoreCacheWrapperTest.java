@@ -0,0 +1,134 @@
+package com.github.charleslzq.facestore.server;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.google.gson.GsonBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FaceStoreCacheWrapperTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final Random random = new Random(12);
+    private final DedupProperties dedupProperties = new DedupProperties();
+    private SegmentFaceStore internal;
+
+    @Before
+    public void setUp() throws IOException {
+        internal = new SegmentFaceStore(temporaryFolder.newFolder().getPath(), new SegmentStoreProperties(), Converters.registerLocalDateTime(new GsonBuilder()).create());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        internal.close();
+    }
+
+    @Test
+    public void buildsIdIndexFromExistingStore() {
+        internal.savePerson(Fixtures.person("p2"));
+        internal.savePerson(Fixtures.person("p1"));
+        internal.saveFace("p1", face("f1"));
+        internal.saveFace("p1", face("f2"));
+        internal.saveFace("p3", face("f3"));
+
+        FaceStoreCacheWrapper wrapper = wrapper();
+
+        assertThat(wrapper.getPersonIds()).containsExactly("p1", "p2", "p3");
+        assertThat(wrapper.getFaceIdList("p1")).containsExactly("f1", "f2");
+        assertThat(wrapper.getFaceIdList("p2")).isEmpty();
+        assertThat(wrapper.getFaceIdList("missing")).isEmpty();
+    }
+
+    @Test
+    public void keepsIdIndexInStepWithWritesAndDeletes() {
+        FaceStoreCacheWrapper wrapper = wrapper();
+
+        wrapper.savePerson(Fixtures.person("p1"));
+        wrapper.saveFace("p1", face("f1"));
+        wrapper.saveFace("p1", face("f2"));
+        wrapper.saveFace("p2", face("f3"));
+        wrapper.deleteFace("p1", "f1");
+        assertThat(wrapper.getPersonIds()).containsExactly("p1", "p2");
+        assertThat(wrapper.getFaceIdList("p1")).containsExactly("f2");
+
+        wrapper.deletePerson("p2");
+        internal.saveFace("p4", face("f4"));
+
+        assertThat(wrapper.getPersonIds()).containsExactly("p1", "p4");
+        assertThat(wrapper.getFaceIdList("p2")).isEmpty();
+        assertThat(wrapper.getFaceIdList("p4")).containsExactly("f4");
+    }
+
+    @Test
+    public void pagesPersonIdsInOrder() {
+        for (int index = 0; index < 10; index++) {
+            internal.savePerson(Fixtures.person(String.format("p%02d", index)));
+        }
+        FaceStoreCacheWrapper wrapper = wrapper();
+
+        assertThat(wrapper.getPersonIdsAfter(null, 3)).containsExactly("p00", "p01", "p02");
+        assertThat(wrapper.getPersonIdsAfter("p02", 3)).containsExactly("p03", "p04", "p05");
+        assertThat(wrapper.getPersonIdsAfter("p085", 5)).containsExactly("p09");
+        assertThat(wrapper.getPersonIdsAfter("p09", 5)).isEmpty();
+    }
+
+    @Test
+    public void convergesWithTheStoreUnderConcurrentWrites() throws Exception {
+        FaceStoreCacheWrapper wrapper = wrapper();
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            futures.add(writers.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int operation = 0; operation < 500; operation++) {
+                    String personId = "p" + random.nextInt(20);
+                    String faceId = "f" + random.nextInt(10);
+                    int choice = random.nextInt(10);
+                    if (choice == 0) {
+                        wrapper.deletePerson(personId);
+                    } else if (choice < 4) {
+                        wrapper.deleteFace(personId, faceId);
+                    } else {
+                        wrapper.saveFace(personId, Fixtures.face(faceId, new Random(operation), 16, 0));
+                    }
+                    assertThat(wrapper.getPersonIds()).isSorted();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        writers.shutdown();
+
+        assertThat(wrapper.getPersonIds()).containsOnlyElementsOf(internal.getPersonIds());
+        for (String personId : internal.getPersonIds()) {
+            assertThat(wrapper.getFaceIdList(personId)).containsOnlyElementsOf(internal.getFaceIdList(personId))
+                    .hasSameSizeAs(internal.getFaceIdList(personId));
+        }
+    }
+
+    private Face face(String id) {
+        return Fixtures.face(id, random, 64, 0);
+    }
+
+    private FaceStoreCacheWrapper wrapper() {
+        return Fixtures.cacheWrapper(internal, dedupProperties);
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.server.message.ClientMessagePayloadType;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FaceStoreHealthIndicatorTest {
+    private static final LocalDateTime START = new LocalDateTime(2017, 9, 1, 8, 0);
+    private final FaceStoreHealthIndicator healthIndicator = new FaceStoreHealthIndicator();
+
+    @Test
+    public void countsMessagesByTypeAndAddress() {
+        for (int index = 0; index < 300; index++) {
+            healthIndicator.recordClientMessage(message(index % 3, index % 2 == 0 ? ClientMessagePayloadType.FACE : ClientMessagePayloadType.SEARCH, index, 10));
+        }
+
+        Map<String, Object> details = clientMessages(healthIndicator.health());
+
+        assertThat(details).containsEntry("Received in all", 300L);
+        assertThat(this.<Long>detail(details, "Type Counting"))
+                .containsEntry("FACE", 150L)
+                .containsEntry("SEARCH", 150L)
+                .hasSize(2);
+        assertThat(this.<Long>detail(details, "Address Counting")).hasSize(3).containsValues(100L);
+        Map<String, Map<String, Double>> percentiles = detail(details, "Latency Percentiles");
+        assertThat(percentiles.get("FACE")).containsEntry("p50 Millis", 10.0).containsEntry("Max Millis", 10.0);
+    }
+
+    @Test
+    public void foldsAddressesBeyondTheLimitIntoOthers() {
+        for (int index = 0; index < 2000; index++) {
+            healthIndicator.recordClientMessage(message(index, ClientMessagePayloadType.REFRESH, index, 1));
+        }
+
+        Map<String, Long> addresses = detail(clientMessages(healthIndicator.health()), "Address Counting");
+
+        assertThat(addresses).hasSize(1025).containsEntry("Others", 976L);
+        assertThat(addresses.values().stream().mapToLong(Long::longValue).sum()).isEqualTo(2000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void keepsOnlyTheMostRecentMessagesNewestFirst() {
+        for (int index = 0; index < 100; index++) {
+            healthIndicator.recordClientMessage(message(0, ClientMessagePayloadType.PERSON, index, 1));
+        }
+
+        List<FaceStoreHealthIndicator.ClientMessage> recent = (List<FaceStoreHealthIndicator.ClientMessage>) clientMessages(healthIndicator.health()).get("Recent 20 Messages");
+
+        assertThat(recent).hasSize(20);
+        assertThat(recent.get(0).getToken()).isEqualTo("99");
+        assertThat(recent.get(19).getToken()).isEqualTo("80");
+    }
+
+    @Test
+    public void reportsUnknownWithoutClients() {
+        assertThat(healthIndicator.health().getStatus()).isEqualTo(Status.UNKNOWN);
+    }
+
+    private static FaceStoreHealthIndicator.ClientMessage message(int address, ClientMessagePayloadType type, int token, int durationMillis) {
+        return new FaceStoreHealthIndicator.ClientMessage(
+                InetSocketAddress.createUnresolved("client-" + address, 8080),
+                type,
+                String.valueOf(token),
+                START,
+                START.plusMillis(durationMillis)
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> clientMessages(Health health) {
+        return (Map<String, Object>) health.getDetails().get("Client Messages");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Map<String, T> detail(Map<String, Object> details, String name) {
+        return (Map<String, T>) details.get(name);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.picture.PictureProperties;
+import com.github.charleslzq.facestore.server.picture.PictureStore;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Feature;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.github.charleslzq.facestore.server.type.Version;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.LocalDateTime;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+import java.util.Random;
+
+public class Fixtures {
+    private static final LocalDateTime CREATED = new LocalDateTime(2017, 9, 1, 8, 30, 15, 250);
+
+    private Fixtures() {
+    }
+
+    public static Person person(String id) {
+        Person person = new Person();
+        person.setId(id);
+        person.setName("Person " + id);
+        person.setTags(ImmutableSet.of("staff"));
+        person.setCreateTime(CREATED);
+        person.setUpdateTime(CREATED.plusMinutes(5));
+        person.setRevision(1);
+        return person;
+    }
+
+    public static Face face(String id, Random random) {
+        return face(id, random, 512, 2048);
+    }
+
+    public static Face face(String id, Random random, int featureBytes, int pictureBytes) {
+        Face face = new Face();
+        face.setId(id);
+        face.setData(feature(random, featureBytes));
+        if (pictureBytes > 0) {
+            byte[] picture = new byte[pictureBytes];
+            random.nextBytes(picture);
+            face.setPic(Base64.getEncoder().encodeToString(picture));
+        }
+        Version version = new Version();
+        version.setLFeatureLevel(3);
+        version.setMVersion("1.1.0");
+        face.setVersion(version);
+        face.setCreateTime(CREATED);
+        face.setUpdateTime(CREATED.plusSeconds(1));
+        face.setRevision(1);
+        return face;
+    }
+
+    public static FaceStoreCacheWrapper cacheWrapper(ListenableReadWriteFaceStore<Person, Face> internal, DedupProperties dedupProperties) {
+        PictureStore pictureStore = new PictureStore();
+        ReflectionTestUtils.setField(pictureStore, "pictureProperties", new PictureProperties());
+        FaceStoreCacheWrapper wrapper = new FaceStoreCacheWrapper();
+        ReflectionTestUtils.setField(wrapper, "internal", internal);
+        ReflectionTestUtils.setField(wrapper, "cacheManager", new ConcurrentMapCacheManager());
+        ReflectionTestUtils.setField(wrapper, "metricsRegistry", new MetricsRegistry());
+        ReflectionTestUtils.setField(wrapper, "pictureStore", pictureStore);
+        ReflectionTestUtils.setField(wrapper, "dedupProperties", dedupProperties);
+        wrapper.setup();
+        return wrapper;
+    }
+
+    public static Feature feature(Random random, int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        Feature feature = new Feature();
+        feature.setMFeatureData(data);
+        return feature;
+    }
+}
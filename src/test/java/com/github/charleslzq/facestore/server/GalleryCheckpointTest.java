@@ -0,0 +1,86 @@
+package com.github.charleslzq.facestore.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GalleryCheckpointTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsEntriesThroughTheWriter() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "gallery.checkpoint");
+        GalleryCheckpoint.Writer writer = GalleryCheckpoint.writer(file);
+        writer.write("p1", 10, bytes("first"));
+        writer.write("人员-2", 20, new byte[0]);
+        writer.commit();
+
+        GalleryCheckpoint checkpoint = GalleryCheckpoint.open(file);
+
+        assertThat(checkpoint.size()).isEqualTo(2);
+        assertThat(checkpoint.stampOf("p1")).isEqualTo(10);
+        assertThat(checkpoint.entryOf("p1")).isEqualTo(bytes("first"));
+        assertThat(checkpoint.stampOf("人员-2")).isEqualTo(20);
+        assertThat(checkpoint.entryOf("人员-2")).isEmpty();
+        assertThat(checkpoint.stampOf("p3")).isEqualTo(-1);
+        assertThat(checkpoint.entryOf("p3")).isNull();
+        assertThat(new File(file.getPath() + ".tmp")).doesNotExist();
+    }
+
+    @Test
+    public void opensMissingFileAsEmpty() throws IOException {
+        assertThat(GalleryCheckpoint.open(new File(temporaryFolder.getRoot(), "missing")).size()).isZero();
+    }
+
+    @Test
+    public void keepsPreviousCheckpointWhenWriteIsAborted() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "gallery.checkpoint");
+        GalleryCheckpoint.Writer writer = GalleryCheckpoint.writer(file);
+        writer.write("p1", 10, bytes("first"));
+        writer.commit();
+
+        GalleryCheckpoint.Writer aborted = GalleryCheckpoint.writer(file);
+        aborted.write("p1", 11, bytes("second"));
+        aborted.abort();
+
+        GalleryCheckpoint checkpoint = GalleryCheckpoint.open(file);
+        assertThat(checkpoint.stampOf("p1")).isEqualTo(10);
+        assertThat(checkpoint.entryOf("p1")).isEqualTo(bytes("first"));
+        assertThat(new File(file.getPath() + ".tmp")).doesNotExist();
+    }
+
+    @Test
+    public void ignoresCheckpointOfUnknownFormat() throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), bytes("not a checkpoint at all"));
+
+        assertThat(GalleryCheckpoint.open(file).size()).isZero();
+    }
+
+    @Test
+    public void ignoresTruncatedCheckpoint() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "gallery.checkpoint");
+        GalleryCheckpoint.Writer writer = GalleryCheckpoint.writer(file);
+        writer.write("p1", 10, bytes("first"));
+        writer.write("p2", 20, bytes("second"));
+        writer.commit();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(file.length() - 3);
+        }
+
+        assertThat(GalleryCheckpoint.open(file).size()).isZero();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
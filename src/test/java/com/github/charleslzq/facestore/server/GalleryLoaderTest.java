@@ -0,0 +1,173 @@
+package com.github.charleslzq.facestore.server;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.message.BinaryMessageCodec;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.GsonBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class GalleryLoaderTest {
+    private static final long TIMEOUT = 10000;
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final Random random = new Random(21);
+    private SegmentFaceStore segmentStore;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        segmentStore = new SegmentFaceStore(temporaryFolder.newFolder("segments").getPath(), new SegmentStoreProperties(), Converters.registerLocalDateTime(new GsonBuilder()).create());
+        directory = temporaryFolder.newFolder("gallery");
+        for (int person = 1; person <= 3; person++) {
+            String personId = "p" + person;
+            segmentStore.savePerson(Fixtures.person(personId));
+            for (int face = 1; face <= person; face++) {
+                segmentStore.saveFace(personId, Fixtures.face(personId + "-f" + face, random, 128, 0));
+            }
+            assertThat(new File(directory, personId).mkdir()).isTrue();
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        segmentStore.close();
+    }
+
+    @Test
+    public void reportsOutOfServiceUntilGalleryIsLoaded() throws InterruptedException {
+        Loader loader = new Loader(fileStore());
+        assertThat(loader.healthIndicator.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        loader.run();
+
+        assertThat(loader.healthIndicator.health().getStatus()).isEqualTo(Status.UNKNOWN);
+        assertThat(loader.statistics())
+                .containsEntry("Persons", 3L)
+                .containsEntry("Faces", 6L)
+                .containsEntry("From Store", 3L);
+        assertThat(loader.cache(FaceStoreCacheWrapper.CacheNames.PERSON).get("p2")).isNotNull();
+        assertThat(loader.cache(FaceStoreCacheWrapper.CacheNames.FACE).get("p3_p3-f2")).isNotNull();
+    }
+
+    @Test
+    public void restoresUnchangedPersonsFromCheckpoint() throws InterruptedException {
+        new Loader(fileStore()).run();
+        assertThat(new File(directory.getPath() + ".checkpoint")).exists();
+        ListenableReadWriteFaceStore<Person, Face> restarted = fileStore();
+
+        Loader loader = new Loader(restarted);
+        loader.run();
+
+        assertThat(loader.statistics())
+                .containsEntry("From Checkpoint", 3L)
+                .containsEntry("From Store", 0L)
+                .containsEntry("Faces", 6L);
+        verify(restarted, never()).getPerson(anyString());
+        verify(restarted, never()).getFace(anyString(), anyString());
+        Person person = (Person) loader.cache(FaceStoreCacheWrapper.CacheNames.PERSON).get("p1").get();
+        assertThat(person).isEqualTo(segmentStore.getPerson("p1"));
+    }
+
+    @Test
+    public void rereadsPersonsWhoseFilesChanged() throws InterruptedException {
+        new Loader(fileStore()).run();
+        Person renamed = Fixtures.person("p2");
+        renamed.setName("Renamed");
+        segmentStore.savePerson(renamed);
+        File personDirectory = new File(directory, "p2");
+        assertThat(personDirectory.setLastModified(personDirectory.lastModified() + 10000)).isTrue();
+
+        Loader loader = new Loader(fileStore());
+        loader.run();
+
+        assertThat(loader.statistics())
+                .containsEntry("From Checkpoint", 2L)
+                .containsEntry("From Store", 1L);
+        Person person = (Person) loader.cache(FaceStoreCacheWrapper.CacheNames.PERSON).get("p2").get();
+        assertThat(person.getName()).isEqualTo("Renamed");
+    }
+
+    @Test
+    public void skipsCheckpointOverSegmentStore() throws InterruptedException {
+        new Loader(segmentStore).run();
+
+        Loader loader = new Loader(segmentStore);
+        loader.run();
+
+        assertThat(loader.statistics()).containsEntry("From Store", 3L).containsEntry("From Checkpoint", 0L);
+        assertThat(new File(directory.getPath() + ".checkpoint")).doesNotExist();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ListenableReadWriteFaceStore<Person, Face> fileStore() {
+        return mock(ListenableReadWriteFaceStore.class, delegatesTo(segmentStore));
+    }
+
+    private class Loader {
+        private final GalleryLoader galleryLoader = new GalleryLoader();
+        private final FaceStoreHealthIndicator healthIndicator = new FaceStoreHealthIndicator();
+        private final CacheManager cacheManager;
+
+        private Loader(ListenableReadWriteFaceStore<Person, Face> internal) {
+            FaceStoreCacheWrapper wrapper = Fixtures.cacheWrapper(internal, new DedupProperties());
+            cacheManager = (CacheManager) ReflectionTestUtils.getField(wrapper, "cacheManager");
+            FaceStoreProperties faceStoreProperties = new FaceStoreProperties();
+            faceStoreProperties.setDirectory(directory.getPath());
+            StartupProperties startupProperties = new StartupProperties();
+            startupProperties.setLoad(true);
+            startupProperties.setParallelism(4);
+            ReflectionTestUtils.setField(galleryLoader, "internal", internal);
+            ReflectionTestUtils.setField(galleryLoader, "faceStore", wrapper);
+            ReflectionTestUtils.setField(galleryLoader, "cacheManager", cacheManager);
+            ReflectionTestUtils.setField(galleryLoader, "binaryMessageCodec", new BinaryMessageCodec());
+            ReflectionTestUtils.setField(galleryLoader, "faceStoreHealthIndicator", healthIndicator);
+            ReflectionTestUtils.setField(galleryLoader, "metricsRegistry", new MetricsRegistry());
+            ReflectionTestUtils.setField(galleryLoader, "faceStoreProperties", faceStoreProperties);
+            ReflectionTestUtils.setField(galleryLoader, "startupProperties", startupProperties);
+            galleryLoader.setup();
+        }
+
+        private void run() throws InterruptedException {
+            galleryLoader.load();
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (!galleryLoader.isReady()) {
+                assertThat(System.currentTimeMillis()).as("gallery not loaded in %d ms", TIMEOUT).isLessThan(deadline);
+                Thread.sleep(10);
+            }
+            assertThat(statistics().get("State")).hasToString("READY");
+        }
+
+        private Map<String, Object> statistics() {
+            return galleryLoader.getStatistics();
+        }
+
+        private Cache cache(String name) {
+            return cacheManager.getCache(name);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.charleslzq.facestore.server;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongHashTableTest {
+    private final LongHashTable table = new LongHashTable(4);
+
+    @Test
+    public void keepsProbeChainIntactWhenRemovingFromTheMiddle() {
+        long[] colliding = {5, 69, 133, 197};
+        for (long key : colliding) {
+            table.put(key, key * 10);
+        }
+
+        table.remove(69);
+
+        assertThat(table.get(69)).isEqualTo(LongHashTable.ABSENT);
+        assertThat(table.get(5)).isEqualTo(50);
+        assertThat(table.get(133)).isEqualTo(1330);
+        assertThat(table.get(197)).isEqualTo(1970);
+        assertThat(table.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shiftsEntriesBackAcrossTheEndOfTheArray() {
+        long[] colliding = {63, 127, 191};
+        for (long key : colliding) {
+            table.put(key, key);
+        }
+        table.put(64, 64);
+
+        table.remove(63);
+
+        assertThat(table.get(127)).isEqualTo(127);
+        assertThat(table.get(191)).isEqualTo(191);
+        assertThat(table.get(64)).isEqualTo(64);
+    }
+
+    @Test
+    public void keepsEntriesOfOtherHomeSlotsReachable() {
+        table.put(5, 1);
+        table.put(69, 2);
+        table.put(6, 3);
+        table.put(7, 4);
+
+        table.remove(5);
+        table.remove(69);
+
+        assertThat(table.get(6)).isEqualTo(3);
+        assertThat(table.get(7)).isEqualTo(4);
+        table.put(70, 5);
+        assertThat(table.get(70)).isEqualTo(5);
+        assertThat(table.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void overwritesAndIgnoresMissingKeys() {
+        table.put(42, 1);
+        table.put(42, 2);
+        table.remove(43);
+
+        assertThat(table.get(42)).isEqualTo(2);
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void growsStripesPastTheLoadFactor() {
+        long initialBytes = table.getMemoryBytes();
+        for (long key = 1; key <= 1000; key++) {
+            table.put(key, key + 1);
+        }
+
+        assertThat(table.size()).isEqualTo(1000);
+        assertThat(table.getMemoryBytes()).isGreaterThan(initialBytes);
+        for (long key = 1; key <= 1000; key++) {
+            assertThat(table.get(key)).isEqualTo(key + 1);
+        }
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(24);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int operation = 0; operation < 100000; operation++) {
+            long key = ((long) random.nextInt(4) << 40) | (random.nextInt(16) * 64L + random.nextInt(3) + 1);
+            if (random.nextInt(3) == 0) {
+                table.remove(key);
+                expected.remove(key);
+            } else {
+                long value = random.nextInt(1000) + 1;
+                table.put(key, value);
+                expected.put(key, value);
+            }
+            assertThat(table.get(key)).isEqualTo(expected.getOrDefault(key, LongHashTable.ABSENT));
+        }
+
+        assertThat(table.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(table.get(key)).isEqualTo(value));
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.charleslzq.facestore.server;
+
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OutboundSessionTest {
+    private final Queue<Runnable> writer = new ArrayDeque<>();
+    private final SessionProperties sessionProperties = new SessionProperties();
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private WebSocketSession webSocketSession;
+
+    @Before
+    public void setUp() {
+        webSocketSession = mock(WebSocketSession.class);
+        when(webSocketSession.isOpen()).thenReturn(true);
+        sessionProperties.setQueueCapacity(2);
+        sessionProperties.setSendTimeLimit(10);
+    }
+
+    @Test
+    public void writesMessagesInOrderOnTheWriter() throws IOException {
+        OutboundSession session = session();
+
+        assertThat(session.send(text("a"))).isTrue();
+        assertThat(session.broadcast(text("b"), "k")).isTrue();
+        verify(webSocketSession, never()).sendMessage(any());
+        drain();
+
+        assertThat(sent(2)).containsExactly("a", "b");
+        assertThat(session.getStatistics()).containsEntry("Sent", 2L).containsEntry("Queue Depth", 0);
+    }
+
+    @Test
+    public void dropsOldestBroadcastAndNoticesTheGapFirst() throws IOException {
+        sessionProperties.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        OutboundSession session = session();
+        session.setGapNotice(text("resync"));
+
+        session.broadcast(text("a"), "k1");
+        session.broadcast(text("b"), "k2");
+        assertThat(session.broadcast(text("c"), "k3")).isTrue();
+        drain();
+
+        assertThat(sent(3)).containsExactly("resync", "b", "c");
+        assertThat(session.getStatistics()).containsEntry("Dropped", 1L);
+    }
+
+    @Test
+    public void neverDropsDirectReplies() throws IOException {
+        sessionProperties.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        OutboundSession session = session();
+        session.setGapNotice(text("resync"));
+
+        session.send(text("a"));
+        session.send(text("b"));
+        assertThat(session.broadcast(text("c"), "k")).isFalse();
+        drain();
+
+        assertThat(sent(3)).containsExactly("resync", "a", "b");
+        assertThat(session.getStatistics()).containsEntry("Dropped", 1L);
+    }
+
+    @Test
+    public void coalescesQueuedUpdatesOfTheSameEntity() throws IOException {
+        sessionProperties.setOverflowPolicy(OverflowPolicy.COALESCE);
+        OutboundSession session = session();
+        session.setGapNotice(text("resync"));
+
+        session.broadcast(text("a1"), "a");
+        session.broadcast(text("b1"), "b");
+        assertThat(session.broadcast(text("a2"), "a")).isTrue();
+        drain();
+
+        assertThat(sent(2)).containsExactly("b1", "a2");
+        assertThat(session.getStatistics()).containsEntry("Coalesced", 1L).containsEntry("Dropped", 0L);
+    }
+
+    @Test
+    public void disconnectsOnOverflowWhenConfigured() throws IOException {
+        sessionProperties.setOverflowPolicy(OverflowPolicy.DISCONNECT);
+        OutboundSession session = session();
+
+        session.broadcast(text("a"), "a");
+        session.broadcast(text("b"), "b");
+        assertThat(session.broadcast(text("c"), "c")).isFalse();
+        assertThat(session.send(text("d"))).isFalse();
+        drain();
+
+        verify(webSocketSession, never()).sendMessage(any());
+        verify(webSocketSession).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    public void disconnectsWhenRepliesCannotBeQueuedInTime() throws IOException {
+        OutboundSession session = session();
+
+        session.send(text("a"));
+        session.send(text("b"));
+        assertThat(session.send(text("c"))).isFalse();
+        drain();
+
+        verify(webSocketSession).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    public void countsFailedAndClosedWritesWithoutStopping() throws IOException {
+        OutboundSession session = session();
+        doThrow(new IOException("broken pipe")).doNothing().when(webSocketSession).sendMessage(any());
+
+        session.send(text("a"));
+        session.send(text("b"));
+        drain();
+
+        assertThat(session.getStatistics()).containsEntry("Failed", 1L).containsEntry("Sent", 1L);
+        when(webSocketSession.isOpen()).thenReturn(false);
+        session.send(text("c"));
+        drain();
+        assertThat(session.getStatistics()).containsEntry("Dropped", 1L);
+    }
+
+    private OutboundSession session() {
+        return new OutboundSession(webSocketSession, writer::add, sessionProperties, metricsRegistry);
+    }
+
+    private void drain() {
+        while (!writer.isEmpty()) {
+            writer.poll().run();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> sent(int count) throws IOException {
+        ArgumentCaptor<WebSocketMessage> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(webSocketSession, times(count)).sendMessage(captor.capture());
+        return captor.getAllValues().stream().map(message -> (String) message.getPayload()).collect(Collectors.toList());
+    }
+
+    private static TextMessage text(String payload) {
+        return new TextMessage(payload);
+    }
+}
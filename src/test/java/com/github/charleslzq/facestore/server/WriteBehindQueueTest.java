@@ -0,0 +1,159 @@
+package com.github.charleslzq.facestore.server;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.GsonBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+public class WriteBehindQueueTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final WriteBehindProperties writeBehindProperties = new WriteBehindProperties();
+    private SegmentFaceStore store;
+    private WriteBehindQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        writeBehindProperties.setEnabled(true);
+        writeBehindProperties.setBatchSize(32);
+        writeBehindProperties.setFlushInterval(5);
+        store = new SegmentFaceStore(temporaryFolder.newFolder().getPath(), new SegmentStoreProperties(), Converters.registerLocalDateTime(new GsonBuilder()).create());
+        queue = queueOver(store);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException, IOException {
+        queue.close();
+        store.close();
+    }
+
+    @Test
+    public void appliesWritesOfEachPersonInSubmissionOrder() throws Exception {
+        Map<String, List<Integer>> applied = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int sequence = 0; sequence < 2000; sequence++) {
+            String personId = "p" + sequence % 10;
+            int value = sequence;
+            futures.add(queue.submit(personId, () -> applied.computeIfAbsent(personId, id -> new ArrayList<>()).add(value)));
+        }
+
+        await(futures);
+
+        assertThat(applied).hasSize(10);
+        applied.values().forEach(values -> assertThat(values).hasSize(200).isSorted());
+    }
+
+    @Test
+    public void keepsTheLastWriteOfAFace() throws Exception {
+        Random random = new Random(9);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        Face last = null;
+        for (int revision = 1; revision <= 100; revision++) {
+            Face face = Fixtures.face("f1", random, 64, 0);
+            face.setRevision(revision);
+            futures.add(queue.submit("p1", () -> store.saveFace("p1", face)));
+            last = face;
+        }
+
+        await(futures);
+
+        assertThat(store.getFace("p1", "f1")).isEqualTo(last);
+    }
+
+    @Test
+    public void failsOnlyTheWriteThatThrew() throws Exception {
+        CompletableFuture<Void> before = queue.submit("p1", () -> store.savePerson(Fixtures.person("p1")));
+        CompletableFuture<Void> failed = queue.submit("p1", () -> {
+            throw new IllegalArgumentException("rejected");
+        });
+        CompletableFuture<Void> after = queue.submit("p1", () -> store.savePerson(Fixtures.person("p2")));
+
+        await(Arrays.asList(before, after));
+
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(store.getPersonIds()).containsExactlyInAnyOrder("p1", "p2");
+    }
+
+    @Test
+    public void groupsBulkItemsByStripeAndCollectsEveryResult() throws Exception {
+        List<String> personIds = IntStream.range(0, 50).mapToObj(index -> "p" + index).collect(Collectors.toList());
+
+        List<String> results = queue.submitAll(personIds, personId -> personId, partition -> partition.stream()
+                .map(personId -> personId + "!")
+                .collect(Collectors.toList())).get(5, TimeUnit.SECONDS);
+
+        assertThat(results).hasSize(50).containsOnlyElementsOf(personIds.stream().map(personId -> personId + "!").collect(Collectors.toList()));
+    }
+
+    @Test
+    public void commitsQueuedWritesBeforeClosing() throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int index = 0; index < 500; index++) {
+            String personId = "p" + index;
+            futures.add(queue.submit(personId, () -> store.savePerson(Fixtures.person(personId))));
+        }
+
+        queue.close();
+
+        assertThat(futures.stream().allMatch(future -> future.isDone() && !future.isCompletedExceptionally())).isTrue();
+        assertThat(store.getPersonIds()).hasSize(500);
+        CompletableFuture<Void> late = queue.submit("late", () -> store.savePerson(Fixtures.person("late")));
+        assertThat(late.isDone()).isTrue();
+        assertThat(store.getPerson("late")).isNotNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void writesSynchronouslyWithoutTheSegmentStore() throws Exception {
+        WriteBehindQueue fallback = queueOver(mock(ListenableReadWriteFaceStore.class));
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<Void> future = fallback.submit("p1", () -> applied.add(Thread.currentThread().getName()));
+
+        assertThat(future.isDone()).isTrue();
+        assertThat(applied).containsExactly(Thread.currentThread().getName());
+        fallback.close();
+    }
+
+    private WriteBehindQueue queueOver(ListenableReadWriteFaceStore<Person, Face> internal) {
+        WriteBehindQueue writeBehindQueue = new WriteBehindQueue();
+        ReflectionTestUtils.setField(writeBehindQueue, "writeBehindProperties", writeBehindProperties);
+        ReflectionTestUtils.setField(writeBehindQueue, "internal", internal);
+        writeBehindQueue.setup();
+        return writeBehindQueue;
+    }
+
+    private static void await(List<CompletableFuture<Void>> futures) throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.github.charleslzq.facestore.server.OutboundSession;
+import com.github.charleslzq.facestore.server.OverflowPolicy;
+import com.github.charleslzq.facestore.server.SessionProperties;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+    @Param({"500"})
+    private int sessionCount;
+    @Param({"0", "5"})
+    private int slowSessions;
+    @Param({"2"})
+    private long slowSendMillis;
+    @Param({"DROP_OLDEST", "COALESCE"})
+    private OverflowPolicy overflowPolicy;
+    private ExecutorService writer;
+    private List<OutboundSession> sessions;
+    private TextMessage message;
+    private long sequence = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SessionProperties sessionProperties = new SessionProperties();
+        sessionProperties.setOverflowPolicy(overflowPolicy);
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        writer = Executors.newFixedThreadPool(sessionProperties.getWriterThreads());
+        sessions = new ArrayList<>(sessionCount);
+        for (int index = 0; index < sessionCount; index++) {
+            long delayNanos = index < slowSessions ? TimeUnit.MILLISECONDS.toNanos(slowSendMillis) : 0;
+            sessions.add(new OutboundSession(new DiscardingSession(index, delayNanos), writer, sessionProperties, metricsRegistry));
+        }
+        message = new TextMessage("{\"headers\":{\"TYPE\":\"FACE\"},\"payload\":{\"id\":\"face\"}}");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessions.forEach(OutboundSession::close);
+        writer.shutdownNow();
+    }
+
+    @Benchmark
+    public int broadcast() {
+        String key = "person/face" + (sequence++ & 63);
+        int accepted = 0;
+        for (OutboundSession session : sessions) {
+            if (session.broadcast(message, key)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    private static class DiscardingSession implements WebSocketSession {
+        private final String id;
+        private final long delayNanos;
+        private final InetSocketAddress address;
+
+        private DiscardingSession(int index, long delayNanos) {
+            this.id = String.valueOf(index);
+            this.delayNanos = delayNanos;
+            this.address = InetSocketAddress.createUnresolved("client-" + index, 80);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            if (delayNanos > 0) {
+                LockSupport.parkNanos(delayNanos);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return address;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
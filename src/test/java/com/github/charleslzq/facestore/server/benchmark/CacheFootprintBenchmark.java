@@ -0,0 +1,76 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.gallery.CompactFaceCache;
+import com.github.charleslzq.facestore.server.gallery.Dictionary;
+import com.github.charleslzq.facestore.server.gallery.FeatureArena;
+import com.github.charleslzq.facestore.server.type.Face;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class CacheFootprintBenchmark {
+    @Param({"caffeine", "compact"})
+    private String cacheType;
+    @Param({"100000", "1000000"})
+    private int entries;
+    @Param({"512"})
+    private int featureBytes;
+    private Cache cache;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        long before = usedHeap();
+        cache = "compact".equals(cacheType)
+                ? new CompactFaceCache("face", new Dictionary<>(), new FeatureArena(16 * 1024 * 1024), -1, -1)
+                : new CaffeineCache("face", Caffeine.newBuilder().build());
+        Random random = new Random(42);
+        for (int index = 0; index < entries; index++) {
+            String personId = "p" + index / 4;
+            cache.put(personId + "_f" + index, Fixtures.face("f" + index, random, featureBytes, 0));
+        }
+        long heap = usedHeap() - before;
+        long direct = cache instanceof CompactFaceCache ? ((CompactFaceCache) cache).getFeatureBytes() : 0;
+        long reserved = cache instanceof CompactFaceCache ? ((CompactFaceCache) cache).getReservedFeatureBytes() : 0;
+        System.out.printf("%n%s cache of %d face(s): %d heap byte(s), %d direct byte(s) used of %d reserved, %.1f byte(s) per face%n",
+                cacheType, entries, heap, direct, reserved, (double) (heap + direct) / entries);
+    }
+
+    @Benchmark
+    public Face get() {
+        int index = ThreadLocalRandom.current().nextInt(entries);
+        return cache.get("p" + index / 4 + "_f" + index, Face.class);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int round = 0; round < 3; round++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.message.BinaryMessageCodec;
+import com.github.charleslzq.facestore.server.message.JsonMessageCodec;
+import com.github.charleslzq.facestore.server.message.Message;
+import com.github.charleslzq.facestore.server.message.MessageCodec;
+import com.github.charleslzq.facestore.server.message.MessageHeaders;
+import com.github.charleslzq.facestore.server.message.PersonSnapshot;
+import com.github.charleslzq.facestore.server.message.ServerMessagePayloadType;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"json", "binary"})
+    private String protocol;
+    @Param({"2048", "32768"})
+    private int pictureBytes;
+    @Param({"16"})
+    private int snapshotSize;
+    private MessageCodec<?> codec;
+    private Message<Face> face;
+    private List<PersonSnapshot> snapshots;
+    private Map<String, String> batchHeaders;
+    private WebSocketMessage<?> encodedFace;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        codec = "json".equals(protocol) ? new JsonMessageCodec() : new BinaryMessageCodec();
+        face = new Message<>(ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name(),
+                MessageHeaders.PERSON_ID, "person",
+                MessageHeaders.TIMESTAMP, "2017-09-01T08:30:15.250"
+        ), Fixtures.face("face", random, 512, pictureBytes));
+        snapshots = new ArrayList<>(snapshotSize);
+        for (int index = 0; index < snapshotSize; index++) {
+            List<Face> faces = new ArrayList<>();
+            for (int count = 0; count < 3; count++) {
+                faces.add(Fixtures.face("f" + index + "-" + count, random, 512, pictureBytes));
+            }
+            snapshots.add(new PersonSnapshot(Fixtures.person("p" + index), faces));
+        }
+        batchHeaders = ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.SNAPSHOT_BATCH.name(),
+                MessageHeaders.INDEX, "0"
+        );
+        encodedFace = codec.encode(face);
+        System.out.printf("%n%s face frame: %d byte(s), snapshot batch: %d byte(s)%n",
+                protocol, encodedFace.getPayloadLength(), encodeBatch(codec).getPayloadLength());
+    }
+
+    @Benchmark
+    public WebSocketMessage<?> encodeFace() {
+        return codec.encode(face);
+    }
+
+    @Benchmark
+    public Object decodeFace() {
+        return codec.decode(encodedFace).getPayload(Face.class);
+    }
+
+    @Benchmark
+    public WebSocketMessage<?> encodeSnapshotBatch() {
+        return encodeBatch(codec);
+    }
+
+    private <E> WebSocketMessage<?> encodeBatch(MessageCodec<E> codec) {
+        List<E> entries = new ArrayList<>(snapshots.size());
+        for (PersonSnapshot snapshot : snapshots) {
+            entries.add(codec.encodeEntry(snapshot));
+        }
+        return codec.encodeBatch(batchHeaders, entries);
+    }
+}
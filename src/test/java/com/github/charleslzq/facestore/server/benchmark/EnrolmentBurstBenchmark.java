@@ -0,0 +1,108 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.WriteBehindProperties;
+import com.github.charleslzq.facestore.server.WriteBehindQueue;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EnrolmentBurstBenchmark {
+    @Param({"10000"})
+    private int enrolments;
+    @Param({"16"})
+    private int clients;
+    @Param({"false", "true"})
+    private boolean writeBehind;
+    private ExecutorService clientPool;
+    private List<Face> faces;
+    private Path directory;
+    private SegmentFaceStore store;
+    private WriteBehindQueue queue;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        clientPool = Executors.newFixedThreadPool(clients);
+        Random random = new Random(42);
+        faces = new ArrayList<>(enrolments);
+        for (int index = 0; index < enrolments; index++) {
+            faces.add(Fixtures.face("f" + index, random, 512, 0));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() throws IOException {
+        directory = Files.createTempDirectory("enrolment-benchmark");
+        store = new SegmentFaceStore(directory.toString(), new SegmentStoreProperties(), Converters.registerLocalDateTime(new GsonBuilder()).create());
+        WriteBehindProperties writeBehindProperties = new WriteBehindProperties();
+        writeBehindProperties.setEnabled(writeBehind);
+        queue = new WriteBehindQueue();
+        ReflectionTestUtils.setField(queue, "writeBehindProperties", writeBehindProperties);
+        ReflectionTestUtils.setField(queue, "internal", store);
+        queue.setup();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() throws IOException, InterruptedException {
+        queue.close();
+        store.close();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        clientPool.shutdown();
+    }
+
+    @Benchmark
+    public void burst() {
+        List<CompletableFuture<Void>> enrolled = new ArrayList<>(enrolments);
+        for (int index = 0; index < enrolments; index++) {
+            String personId = "p" + index % 1000;
+            Face face = faces.get(index);
+            enrolled.add(CompletableFuture.supplyAsync(() -> queue.submit(personId, () -> store.saveFace(personId, face)), clientPool)
+                    .thenCompose(future -> future));
+        }
+        CompletableFuture.allOf(enrolled.toArray(new CompletableFuture[enrolled.size()])).join();
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.github.charleslzq.facestore.server.FaceStoreHealthIndicator;
+import com.github.charleslzq.facestore.server.message.ClientMessagePayloadType;
+import org.joda.time.LocalDateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.actuate.health.Health;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HealthBenchmark {
+    @Param({"0", "1000000", "10000000"})
+    private int recorded;
+    @Param({"100"})
+    private int addresses;
+    private FaceStoreHealthIndicator healthIndicator;
+    private FaceStoreHealthIndicator.ClientMessage[] messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        healthIndicator = new FaceStoreHealthIndicator();
+        ClientMessagePayloadType[] types = ClientMessagePayloadType.values();
+        LocalDateTime start = new LocalDateTime(2017, 9, 1, 8, 0);
+        messages = new FaceStoreHealthIndicator.ClientMessage[1024];
+        for (int index = 0; index < messages.length; index++) {
+            messages[index] = new FaceStoreHealthIndicator.ClientMessage(
+                    InetSocketAddress.createUnresolved("client-" + index % addresses, 8080),
+                    types[index % types.length],
+                    String.valueOf(index),
+                    start,
+                    start.plusMillis(index % 250)
+            );
+        }
+        for (int index = 0; index < recorded; index++) {
+            healthIndicator.recordClientMessage(messages[index % messages.length]);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record() {
+        healthIndicator.recordClientMessage(messages[ThreadLocalRandom.current().nextInt(messages.length)]);
+    }
+
+    @Benchmark
+    public Health render() {
+        return healthIndicator.health();
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.server.DedupProperties;
+import com.github.charleslzq.facestore.server.FaceStoreCacheWrapper;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class IdIndexBenchmark {
+    @Param({"10000", "100000"})
+    private int persons;
+    private Path directory;
+    private SegmentFaceStore internal;
+    private FaceStoreCacheWrapper wrapper;
+    private Face face;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("id-index-benchmark");
+        SegmentStoreProperties segmentStoreProperties = new SegmentStoreProperties();
+        segmentStoreProperties.setSyncOnWrite(false);
+        internal = new SegmentFaceStore(directory.toString(), segmentStoreProperties, Converters.registerLocalDateTime(new GsonBuilder()).create());
+        face = Fixtures.face("face", new Random(42), 64, 0);
+        for (int index = 0; index < persons; index++) {
+            internal.saveFace("p" + index, face);
+        }
+        wrapper = Fixtures.cacheWrapper(internal, new DedupProperties());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        internal.close();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(3)
+    public List<String> getPersonIds() {
+        return wrapper.getPersonIds();
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public void saveFace() {
+        wrapper.saveFace("p" + ThreadLocalRandom.current().nextInt(persons * 2), face);
+    }
+
+    @Benchmark
+    public List<String> getFaceIdList() {
+        return wrapper.getFaceIdList("p" + ThreadLocalRandom.current().nextInt(persons));
+    }
+}
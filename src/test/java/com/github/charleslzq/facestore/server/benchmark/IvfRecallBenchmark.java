@@ -0,0 +1,92 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.github.charleslzq.facestore.server.search.FaceIndex;
+import com.github.charleslzq.facestore.server.search.FlatFaceIndex;
+import com.github.charleslzq.facestore.server.search.IvfFaceIndex;
+import com.github.charleslzq.facestore.server.search.IvfIndexes;
+import com.github.charleslzq.facestore.server.search.SearchHit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class IvfRecallBenchmark {
+    @Param({"100000"})
+    private int gallerySize;
+    @Param({"128"})
+    private int dimension;
+    @Param({"10"})
+    private int topK;
+    @Param({"0", "1", "8", "32"})
+    private int probes;
+    private ForkJoinPool pool;
+    private FaceIndex index;
+    private List<float[]> queries;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        Random random = new Random(42);
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        List<float[]> gallery = IvfIndexes.clustered(random, gallerySize, 1024, dimension);
+        FlatFaceIndex exact = new FlatFaceIndex(pool);
+        IvfFaceIndex ivf = probes > 0 ? new IvfFaceIndex(pool, 1024, probes) : null;
+        for (int row = 0; row < gallerySize; row++) {
+            exact.put("p" + row / 4, "f" + row, gallery.get(row));
+            if (ivf != null) {
+                ivf.put("p" + row / 4, "f" + row, gallery.get(row));
+            }
+        }
+        queries = IvfIndexes.clustered(random, 256, 1024, dimension);
+        if (ivf == null) {
+            index = exact;
+            return;
+        }
+        IvfIndexes.awaitTraining(ivf, TimeUnit.MINUTES.toMillis(10));
+        index = ivf;
+        long found = 0;
+        for (float[] query : queries) {
+            Set<String> expected = faceIds(exact.search(query, topK));
+            found += ivf.search(query, topK).stream().filter(hit -> expected.contains(hit.getFaceId())).count();
+        }
+        System.out.printf("%nrecall@%d with %d probe(s): %.4f%n", topK, probes, (double) found / (queries.size() * topK));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<SearchHit> search() {
+        float[] query = queries.get(next);
+        next = (next + 1) % queries.size();
+        return index.search(query, topK);
+    }
+
+    private static Set<String> faceIds(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::getFaceId).collect(Collectors.toSet());
+    }
+}
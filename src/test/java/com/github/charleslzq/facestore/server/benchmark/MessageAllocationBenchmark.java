@@ -0,0 +1,112 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.message.InboundMessage;
+import com.github.charleslzq.facestore.server.message.JsonMessageCodec;
+import com.github.charleslzq.facestore.server.message.Message;
+import com.github.charleslzq.facestore.server.message.MessageHeaders;
+import com.github.charleslzq.facestore.server.message.ServerMessagePayloadType;
+import com.github.charleslzq.facestore.server.message.Timestamps;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.joda.time.LocalDateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageAllocationBenchmark {
+    private static final TypeToken<Message<Object>> RAW_MESSAGE_TYPE = new TypeToken<Message<Object>>() {
+    };
+    private static final TypeToken<Message<Face>> FACE_MESSAGE_TYPE = new TypeToken<Message<Face>>() {
+    };
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    @Param({"gson", "streaming"})
+    private String path;
+    @Param({"512"})
+    private int featureBytes;
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
+    private final JsonMessageCodec codec = new JsonMessageCodec();
+    private Face face;
+    private TextMessage encodedFace;
+    private long operations;
+    private long allocatedBefore;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        face = Fixtures.face("face", new Random(42), featureBytes, 0);
+        encodedFace = (TextMessage) codec.encode(new Message<>(headers(Timestamps.now()), face));
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        operations = 0;
+        allocatedBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        long allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+        System.out.printf("%n%s: %d byte(s) allocated per message%n", path, operations == 0 ? 0 : allocated / operations);
+    }
+
+    @Benchmark
+    public TextMessage encodeFace() {
+        operations++;
+        if ("gson".equals(path)) {
+            return new TextMessage(gson.toJson(new Message<>(headers(gson.toJson(LocalDateTime.now())), face)));
+        }
+        return (TextMessage) codec.encode(new Message<>(headers(Timestamps.now()), face));
+    }
+
+    @Benchmark
+    public Face decodeFace() {
+        operations++;
+        if ("gson".equals(path)) {
+            String content = encodedFace.getPayload();
+            Message<Object> raw = gson.fromJson(content, RAW_MESSAGE_TYPE.getType());
+            if (!ServerMessagePayloadType.FACE.name().equals(raw.getHeaders().get(MessageHeaders.TYPE_HEADER))) {
+                return null;
+            }
+            Message<Face> typed = gson.fromJson(content, FACE_MESSAGE_TYPE.getType());
+            return typed.getPayload();
+        }
+        InboundMessage decoded = codec.decode(encodedFace);
+        if (!ServerMessagePayloadType.FACE.name().equals(decoded.getHeaders().get(MessageHeaders.TYPE_HEADER))) {
+            return null;
+        }
+        return decoded.getPayload(Face.class);
+    }
+
+    private static ImmutableMap<String, String> headers(String timestamp) {
+        return ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name(),
+                MessageHeaders.PERSON_ID, "person",
+                MessageHeaders.TIMESTAMP, timestamp
+        );
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.github.charleslzq.facestore.server.search.FaceIndex;
+import com.github.charleslzq.facestore.server.search.FlatFaceIndex;
+import com.github.charleslzq.facestore.server.search.SearchHit;
+import com.github.charleslzq.facestore.server.search.Vectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class SearchBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int gallerySize;
+    @Param({"128"})
+    private int dimension;
+    @Param({"10"})
+    private int topK;
+    private ForkJoinPool pool;
+    private FaceIndex index;
+    private List<float[]> queries;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        index = new FlatFaceIndex(pool);
+        for (int row = 0; row < gallerySize; row++) {
+            index.put("p" + row / 4, "f" + row, Vectors.random(random, dimension));
+        }
+        queries = Vectors.random(random, 256, dimension);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<SearchHit> search() {
+        float[] query = queries.get(next);
+        next = (next + 1) % queries.size();
+        return index.search(query, topK);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentWriteBenchmark {
+    @Param({"true", "false"})
+    private boolean syncOnWrite;
+    @Param({"2048"})
+    private int pictureBytes;
+    private Path directory;
+    private SegmentFaceStore store;
+    private List<Face> faces;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("segment-benchmark");
+        SegmentStoreProperties properties = new SegmentStoreProperties();
+        properties.setSyncOnWrite(syncOnWrite);
+        properties.setCompactionThreshold(0.9);
+        store = new SegmentFaceStore(directory.toString(), properties, Converters.registerLocalDateTime(new GsonBuilder()).create());
+        Random random = new Random(42);
+        faces = new ArrayList<>(1024);
+        for (int index = 0; index < 1024; index++) {
+            faces.add(Fixtures.face("f" + index, random, 512, pictureBytes));
+        }
+        store.savePerson(Fixtures.person("person"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void saveFace() {
+        store.saveFace("person", faces.get(next));
+        next = (next + 1) % faces.size();
+    }
+}
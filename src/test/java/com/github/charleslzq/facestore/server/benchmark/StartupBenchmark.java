@@ -0,0 +1,207 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.FaceStoreChangeListener;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.DedupProperties;
+import com.github.charleslzq.facestore.server.FaceStoreCacheWrapper;
+import com.github.charleslzq.facestore.server.FaceStoreHealthIndicator;
+import com.github.charleslzq.facestore.server.FaceStoreProperties;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.GalleryLoader;
+import com.github.charleslzq.facestore.server.StartupProperties;
+import com.github.charleslzq.facestore.server.message.BinaryMessageCodec;
+import com.github.charleslzq.facestore.server.metrics.MetricsRegistry;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import rx.Observable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class StartupBenchmark {
+    private static final int FACES_PER_PERSON = 4;
+    @Param({"100000", "1000000"})
+    private int faces;
+    @Param({"1", "8"})
+    private int parallelism;
+    @Param({"false", "true"})
+    private boolean checkpoint;
+    private Path root;
+    private File directory;
+    private SegmentFaceStore segmentStore;
+    private GalleryLoader galleryLoader;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        root = Files.createTempDirectory("startup-benchmark");
+        directory = new File(root.toFile(), "gallery");
+        segmentStore = new SegmentFaceStore(new File(root.toFile(), "segments").getPath(), new SegmentStoreProperties(), Converters.registerLocalDateTime(new GsonBuilder()).create());
+        Random random = new Random(42);
+        for (int face = 0; face < faces; face++) {
+            String personId = "p" + face / FACES_PER_PERSON;
+            if (face % FACES_PER_PERSON == 0) {
+                segmentStore.savePerson(Fixtures.person(personId));
+                new File(directory, personId).mkdirs();
+            }
+            segmentStore.saveFace(personId, Fixtures.face("f" + face, random, 512, 0));
+        }
+        if (checkpoint) {
+            setupInvocation();
+            load();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        ForwardingFaceStore internal = new ForwardingFaceStore(segmentStore);
+        FaceStoreCacheWrapper wrapper = Fixtures.cacheWrapper(internal, new DedupProperties());
+        FaceStoreProperties faceStoreProperties = new FaceStoreProperties();
+        faceStoreProperties.setDirectory(directory.getPath());
+        StartupProperties startupProperties = new StartupProperties();
+        startupProperties.setLoad(true);
+        startupProperties.setParallelism(parallelism);
+        startupProperties.setCheckpoint(checkpoint);
+        galleryLoader = new GalleryLoader();
+        ReflectionTestUtils.setField(galleryLoader, "internal", internal);
+        ReflectionTestUtils.setField(galleryLoader, "faceStore", wrapper);
+        ReflectionTestUtils.setField(galleryLoader, "cacheManager", ReflectionTestUtils.getField(wrapper, "cacheManager"));
+        ReflectionTestUtils.setField(galleryLoader, "binaryMessageCodec", new BinaryMessageCodec());
+        ReflectionTestUtils.setField(galleryLoader, "faceStoreHealthIndicator", new FaceStoreHealthIndicator());
+        ReflectionTestUtils.setField(galleryLoader, "metricsRegistry", new MetricsRegistry());
+        ReflectionTestUtils.setField(galleryLoader, "faceStoreProperties", faceStoreProperties);
+        ReflectionTestUtils.setField(galleryLoader, "startupProperties", startupProperties);
+        galleryLoader.setup();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        segmentStore.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> load() {
+        galleryLoader.load();
+        while (!galleryLoader.isReady()) {
+            Thread.yield();
+        }
+        return galleryLoader.getStatistics();
+    }
+
+    private static class ForwardingFaceStore implements ListenableReadWriteFaceStore<Person, Face> {
+        private final ListenableReadWriteFaceStore<Person, Face> delegate;
+
+        private ForwardingFaceStore(ListenableReadWriteFaceStore<Person, Face> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void savePerson(Person person) {
+            delegate.savePerson(person);
+        }
+
+        @Override
+        public void saveFace(String personId, Face face) {
+            delegate.saveFace(personId, face);
+        }
+
+        @Override
+        public void deletePerson(String personId) {
+            delegate.deletePerson(personId);
+        }
+
+        @Override
+        public void deleteFace(String personId, String faceId) {
+            delegate.deleteFace(personId, faceId);
+        }
+
+        @Override
+        public List<String> getPersonIds() {
+            return delegate.getPersonIds();
+        }
+
+        @Override
+        public Observable<String> getPersonIdsAsObservable() {
+            return delegate.getPersonIdsAsObservable();
+        }
+
+        @Override
+        public Person getPerson(String personId) {
+            return delegate.getPerson(personId);
+        }
+
+        @Override
+        public Observable<Person> getPersonAsObservable(String personId) {
+            return delegate.getPersonAsObservable(personId);
+        }
+
+        @Override
+        public List<String> getFaceIdList(String personId) {
+            return delegate.getFaceIdList(personId);
+        }
+
+        @Override
+        public Observable<String> getFaceIdListAsObservable(String personId) {
+            return delegate.getFaceIdListAsObservable(personId);
+        }
+
+        @Override
+        public Face getFace(String personId, String faceId) {
+            return delegate.getFace(personId, faceId);
+        }
+
+        @Override
+        public Observable<Face> getFaceAsObservable(String personId, String faceId) {
+            return delegate.getFaceAsObservable(personId, faceId);
+        }
+
+        @Override
+        public List<FaceStoreChangeListener<Person, Face>> getListeners() {
+            return delegate.getListeners();
+        }
+
+        @Override
+        public Class<Person> getPersonClass() {
+            return delegate.getPersonClass();
+        }
+
+        @Override
+        public Class<Face> getFaceClass() {
+            return delegate.getFaceClass();
+        }
+    }
+}
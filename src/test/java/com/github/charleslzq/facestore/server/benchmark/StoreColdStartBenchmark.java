@@ -0,0 +1,98 @@
+package com.github.charleslzq.facestore.server.benchmark;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.FaceFileReadWriteStore;
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.segment.SegmentFaceStore;
+import com.github.charleslzq.facestore.server.segment.SegmentStoreProperties;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class StoreColdStartBenchmark {
+    private static final int FACES_PER_PERSON = 4;
+    @Param({"1000000"})
+    private int faces;
+    @Param({"file", "segment"})
+    private String store;
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("cold-start-benchmark");
+        ListenableReadWriteFaceStore<Person, Face> faceStore = open();
+        Random random = new Random(42);
+        for (int face = 0; face < faces; face++) {
+            String personId = "p" + face / FACES_PER_PERSON;
+            if (face % FACES_PER_PERSON == 0) {
+                faceStore.savePerson(Fixtures.person(personId));
+            }
+            faceStore.saveFace(personId, Fixtures.face("f" + face, random, 512, 0));
+        }
+        close(faceStore);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public long openAndListFaces() throws IOException {
+        ListenableReadWriteFaceStore<Person, Face> faceStore = open();
+        long listed = 0;
+        for (String personId : faceStore.getPersonIds()) {
+            listed += faceStore.getFaceIdList(personId).size();
+        }
+        close(faceStore);
+        return listed;
+    }
+
+    private ListenableReadWriteFaceStore<Person, Face> open() throws IOException {
+        if ("segment".equals(store)) {
+            return new SegmentFaceStore(directory.toString(), new SegmentStoreProperties(), gson);
+        }
+        return new FaceFileReadWriteStore<>(directory.toString(), Person.class, Face.class, gson, new ArrayList<>());
+    }
+
+    private static void close(ListenableReadWriteFaceStore<Person, Face> faceStore) throws IOException {
+        if (faceStore instanceof Closeable) {
+            ((Closeable) faceStore).close();
+        }
+    }
+}
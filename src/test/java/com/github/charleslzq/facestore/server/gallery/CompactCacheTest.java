@@ -0,0 +1,142 @@
+package com.github.charleslzq.facestore.server.gallery;
+
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompactCacheTest {
+    private static final int FACE_BYTES = 512 + 800;
+    private final Random random = new Random(17);
+    private final Dictionary<String> ids = new Dictionary<>();
+
+    @Test
+    public void roundTripsPersonsAndFaces() {
+        CompactPersonCache persons = new CompactPersonCache("person", ids, 10);
+        CompactFaceCache faces = faceCache(10, -1);
+        Person person = Fixtures.person("p1");
+        Face face = face("f1");
+        Face bare = new Face();
+        bare.setId("f2");
+
+        persons.put("p1", person);
+        faces.put("p1_f1", face);
+        faces.put("p1_f2", bare);
+
+        assertThat(persons.get("p1", Person.class)).isEqualTo(person);
+        assertThat(faces.get("p1_f1", Face.class)).isEqualTo(face);
+        assertThat(faces.get("p1_f2", Face.class)).isEqualTo(bare);
+        assertThat(faces.get("missing")).isNull();
+        assertThatThrownBy(() -> faces.put("p1", person)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void cachesAbsentValues() {
+        CompactFaceCache faces = faceCache(10, -1);
+
+        faces.put("p1_f1", null);
+
+        assertThat(faces.get("p1_f1")).isNotNull();
+        assertThat(faces.get("p1_f1").get()).isNull();
+        assertThat(faces.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void givesReferencedEntriesASecondChance() {
+        CompactFaceCache faces = faceCache(3, -1);
+        faces.put("a", face("a"));
+        faces.put("b", face("b"));
+        faces.put("c", face("c"));
+
+        faces.put("d", face("d"));
+        faces.get("b");
+        faces.put("e", face("e"));
+
+        assertThat(faces.size()).isEqualTo(3);
+        assertThat(faces.get("a")).isNull();
+        assertThat(faces.get("c")).isNull();
+        assertThat(faces.get("b")).isNotNull();
+        assertThat(faces.get("d")).isNotNull();
+        assertThat(faces.get("e")).isNotNull();
+        assertThat(faces.getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    public void evictsToStayWithinTheByteBudget() {
+        CompactFaceCache faces = faceCache(-1, 3 * FACE_BYTES + 100);
+        for (int index = 0; index < 10; index++) {
+            faces.put("f" + index, face("f" + index));
+            assertThat(faces.getFeatureBytes() + faces.getPictureBytes()).isLessThanOrEqualTo(3 * FACE_BYTES + 100);
+        }
+
+        assertThat(faces.size()).isEqualTo(3);
+        assertThat(faces.get("f9")).isNotNull();
+        assertThat(faces.getEvictions()).isEqualTo(7);
+    }
+
+    @Test
+    public void refusesAnEntryLargerThanTheWholeBudget() {
+        CompactFaceCache faces = faceCache(-1, FACE_BYTES);
+
+        faces.put("huge", Fixtures.face("huge", random, 4096, 0));
+
+        assertThat(faces.get("huge")).isNull();
+        assertThat(faces.size()).isZero();
+        assertThat(faces.getFeatureBytes()).isZero();
+        assertThat(ids.size()).isZero();
+    }
+
+    @Test
+    public void releasesStorageOnOverwriteEvictAndClear() {
+        CompactPersonCache persons = new CompactPersonCache("person", ids, 10);
+        CompactFaceCache faces = faceCache(10, -1);
+        persons.put("p1", Fixtures.person("p1"));
+        faces.put("p1_f1", face("f1"));
+        faces.put("p1_f1", face("f1"));
+        faces.put("p1_f2", face("f2"));
+
+        assertThat(faces.getFeatureBytes()).isEqualTo(2 * 512);
+        assertThat(faces.getPictureBytes()).isEqualTo(2 * 800);
+        assertThat(ids.size()).isEqualTo(3);
+
+        faces.evict("p1_f1");
+        assertThat(faces.getFeatureBytes()).isEqualTo(512);
+        assertThat(ids.size()).isEqualTo(2);
+
+        faces.clear();
+        persons.evict("p1");
+        assertThat(faces.size()).isZero();
+        assertThat(faces.getFeatureBytes()).isZero();
+        assertThat(faces.getPictureBytes()).isZero();
+        assertThat(ids.size()).isZero();
+    }
+
+    @Test
+    public void reusesFreedSlotsAndFeatureSpace() {
+        CompactFaceCache faces = faceCache(-1, -1);
+        for (int round = 0; round < 10; round++) {
+            for (int index = 0; index < 100; index++) {
+                faces.put("f" + index, face("f" + index));
+            }
+            for (int index = 0; index < 100; index++) {
+                faces.evict("f" + index);
+            }
+        }
+
+        assertThat(faces.size()).isZero();
+        assertThat(faces.getReservedFeatureBytes()).isEqualTo(64 * 1024);
+    }
+
+    private CompactFaceCache faceCache(long maximumSize, long maximumBytes) {
+        return new CompactFaceCache("face", ids, new FeatureArena(64 * 1024), maximumSize, maximumBytes);
+    }
+
+    private Face face(String id) {
+        return Fixtures.face(id, random, 512, 600);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.charleslzq.facestore.server.gallery;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DictionaryTest {
+    private final Dictionary<String> dictionary = new Dictionary<>();
+
+    @Test
+    public void sharesOneCodePerValue() {
+        int first = dictionary.encode("p1");
+        int second = dictionary.encode("p1");
+        int other = dictionary.encode("p2");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(other).isNotEqualTo(first);
+        assertThat(dictionary.decode(first)).isEqualTo("p1");
+        assertThat(dictionary.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void keepsValueUntilLastReferenceIsReleased() {
+        int code = dictionary.encode("p1");
+        dictionary.encode("p1");
+
+        dictionary.release(code);
+        assertThat(dictionary.decode(code)).isEqualTo("p1");
+
+        dictionary.release(code);
+        assertThat(dictionary.decode(code)).isNull();
+        assertThat(dictionary.size()).isZero();
+    }
+
+    @Test
+    public void reusesReleasedCodes() {
+        int code = dictionary.encode("p1");
+        dictionary.release(code);
+        dictionary.release(code);
+
+        assertThat(dictionary.encode("p2")).isEqualTo(code);
+        assertThat(dictionary.decode(code)).isEqualTo("p2");
+        assertThat(dictionary.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void mapsNullToNegativeCode() {
+        assertThat(dictionary.encode(null)).isEqualTo(-1);
+        assertThat(dictionary.decode(-1)).isNull();
+        dictionary.release(-1);
+        assertThat(dictionary.size()).isZero();
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        for (int index = 0; index < 1000; index++) {
+            assertThat(dictionary.encode("p" + index)).isEqualTo(index);
+        }
+
+        assertThat(dictionary.decode(999)).isEqualTo("p999");
+        assertThat(dictionary.size()).isEqualTo(1000);
+    }
+}
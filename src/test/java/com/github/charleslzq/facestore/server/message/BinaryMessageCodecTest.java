@@ -0,0 +1,137 @@
+package com.github.charleslzq.facestore.server.message;
+
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryMessageCodecTest {
+    private final BinaryMessageCodec codec = new BinaryMessageCodec();
+    private final Random random = new Random(7);
+
+    @Test
+    public void roundTripsFaceWithKnownAndLiteralHeaders() {
+        Face face = Fixtures.face("f1", random);
+        Map<String, String> headers = ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name(),
+                MessageHeaders.PERSON_ID, "p1",
+                "X-Trace", "abc"
+        );
+
+        InboundMessage decoded = codec.decode(codec.encode(new Message<>(headers, face)));
+
+        assertThat(decoded.getHeaders()).isEqualTo(headers);
+        Face copy = decoded.getPayload(Face.class);
+        assertThat(copy).isEqualTo(face);
+    }
+
+    @Test
+    public void roundTripsSnapshotBatch() {
+        List<PersonSnapshot> snapshots = Arrays.asList(
+                new PersonSnapshot(Fixtures.person("p1"), Arrays.asList(Fixtures.face("f1", random), Fixtures.face("f2", random))),
+                new PersonSnapshot(Fixtures.person("p2"), Arrays.asList(Fixtures.face("f3", random, 512, 0)))
+        );
+        Map<String, String> headers = ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.SNAPSHOT_BATCH.name(),
+                MessageHeaders.INDEX, "0"
+        );
+
+        WebSocketMessage<?> batch = codec.encodeBatch(headers, Arrays.asList(codec.encodeEntry(snapshots.get(0)), codec.encodeEntry(snapshots.get(1))));
+        InboundMessage decoded = codec.decode(batch);
+
+        assertThat(decoded.getHeaders()).isEqualTo(headers);
+        List<PersonSnapshot> copy = decoded.getPayload(new TypeToken<List<PersonSnapshot>>() {
+        }.getType());
+        assertThat(copy).isEqualTo(snapshots);
+        assertThat(codec.decodeEntry(codec.encodeEntry(snapshots.get(1)))).isEqualTo(snapshots.get(1));
+    }
+
+    @Test
+    public void roundTripsJsonPayloadsInsideLists() {
+        List<EntityKey> keys = Arrays.asList(new EntityKey("p1", "f1"), new EntityKey("p2", null));
+
+        InboundMessage decoded = codec.decode(codec.encode(new Message<>(ImmutableMap.of(MessageHeaders.TYPE_HEADER, "CONFIRM"), keys)));
+
+        List<EntityKey> copy = decoded.getPayload(new TypeToken<List<EntityKey>>() {
+        }.getType());
+        assertThat(copy).isEqualTo(keys);
+        assertThat(codec.decode(codec.encode(new Message<>(ImmutableMap.of(), null))).<Object>getPayload(Object.class)).isNull();
+    }
+
+    @Test
+    public void shipsCanonicalPicturesAsRawBytes() {
+        Face face = Fixtures.face("f1", random, 0, 3000);
+        Face withoutPicture = Fixtures.face("f1", random, 0, 0);
+
+        int pictureBytes = codec.encodeEntry(face).length - codec.encodeEntry(withoutPicture).length;
+
+        assertThat(pictureBytes).isLessThan(3100).isLessThan(face.getPic().length());
+    }
+
+    @Test
+    public void keepsNonCanonicalPicturesAsText() {
+        for (String pic : Arrays.asList("YQ", "YR==", "YWJ=", "not base64!", "")) {
+            Face face = Fixtures.face("f1", random, 16, 0);
+            face.setPic(pic);
+
+            Face copy = (Face) codec.decodeEntry(codec.encodeEntry(face));
+
+            assertThat(copy.getPic()).isEqualTo(pic);
+        }
+    }
+
+    @Test
+    public void rejectsUnknownHeaderCode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte('F');
+        output.writeByte(1);
+        output.writeShort(1);
+        output.writeByte(99);
+        output.writeInt(0);
+        output.writeByte(0);
+
+        assertThatThrownBy(() -> codec.decode(new BinaryMessage(bytes.toByteArray())))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unknown header code 99");
+    }
+
+    @Test
+    public void rejectsLengthsBeyondTheFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte('F');
+        output.writeByte(1);
+        output.writeShort(0);
+        output.writeByte(5);
+        output.writeInt(Integer.MAX_VALUE);
+
+        assertThatThrownBy(() -> codec.decode(new BinaryMessage(bytes.toByteArray())))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Illegal length");
+    }
+
+    @Test
+    public void rejectsForeignFrames() {
+        assertThat(codec.supports(new TextMessage("{}"))).isFalse();
+        assertThatThrownBy(() -> codec.decode(new BinaryMessage(new byte[]{'{', '}'})))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> codec.decode(new BinaryMessage(new byte[]{'F', 1, 0})))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.charleslzq.facestore.server.message;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+public class JsonMessageCodecTest {
+    private final JsonMessageCodec codec = new JsonMessageCodec();
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
+    private final Random random = new Random(22);
+
+    @Test
+    public void roundTripsFaceWithHeaders() {
+        Face face = Fixtures.face("f1", random);
+        Map<String, String> headers = ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.FACE.name(),
+                MessageHeaders.PERSON_ID, "p1",
+                MessageHeaders.TIMESTAMP, Timestamps.now()
+        );
+
+        InboundMessage decoded = codec.decode(codec.encode(new Message<>(headers, face)));
+
+        assertThat(decoded.getHeaders()).isEqualTo(headers);
+        Face copy = decoded.getPayload(Face.class);
+        assertThat(copy).isEqualTo(face);
+        assertThat(decoded.<Face>getPayload(Face.class)).isSameAs(copy);
+    }
+
+    @Test
+    public void writesTheSameJsonAsPlainGson() {
+        Face face = Fixtures.face("f1", random, 512, 0);
+        face.getData().setMFeatureData(new byte[]{-128, -1, 0, 1, 127});
+
+        assertThat(codec.encodeEntry(face)).isEqualTo(gson.toJson(face));
+        assertThat(gson.fromJson(codec.encodeEntry(face), Face.class)).isEqualTo(face);
+    }
+
+    @Test
+    public void decodesPayloadSentBeforeHeaders() {
+        Face face = Fixtures.face("f1", random, 64, 0);
+        String json = "{\"payload\":" + gson.toJson(face) + ",\"extra\":[1,{\"a\":2}],\"headers\":{\"type\":\"FACE\",\"personId\":null}}";
+
+        InboundMessage decoded = codec.decode(new TextMessage(json));
+
+        assertThat(decoded.getHeaders()).containsOnly(entry("type", "FACE"));
+        assertThat(decoded.<Face>getPayload(Face.class)).isEqualTo(face);
+    }
+
+    @Test
+    public void decodesMessagesWithoutPayloadOrHeaders() {
+        InboundMessage withoutPayload = codec.decode(codec.encode(new Message<>(ImmutableMap.of(MessageHeaders.TYPE_HEADER, "REFRESH"), null)));
+        InboundMessage empty = codec.decode(new TextMessage("{}"));
+
+        assertThat(withoutPayload.getHeaders()).containsEntry(MessageHeaders.TYPE_HEADER, "REFRESH");
+        assertThat(withoutPayload.<Object>getPayload(Face.class)).isNull();
+        assertThat(empty.getHeaders()).isEmpty();
+        assertThat(empty.<Object>getPayload(Face.class)).isNull();
+    }
+
+    @Test
+    public void roundTripsSnapshotBatch() {
+        List<PersonSnapshot> snapshots = Arrays.asList(
+                new PersonSnapshot(Fixtures.person("p1"), Arrays.asList(Fixtures.face("f1", random), Fixtures.face("f2", random))),
+                new PersonSnapshot(Fixtures.person("p2"), Arrays.asList(Fixtures.face("f3", random, 512, 0)))
+        );
+        Map<String, String> headers = ImmutableMap.of(
+                MessageHeaders.TYPE_HEADER, ServerMessagePayloadType.SNAPSHOT_BATCH.name(),
+                MessageHeaders.INDEX, "0"
+        );
+        List<String> entries = Arrays.asList(codec.encodeEntry(snapshots.get(0)), codec.encodeEntry(snapshots.get(1)));
+
+        WebSocketMessage<?> batch = codec.encodeBatch(headers, entries);
+        InboundMessage decoded = codec.decode(batch);
+
+        assertThat(batch.getPayloadLength()).isGreaterThan(codec.lengthOf(entries.get(0)) + codec.lengthOf(entries.get(1)));
+        assertThat(decoded.getHeaders()).isEqualTo(headers);
+        List<PersonSnapshot> copy = decoded.getPayload(new TypeToken<List<PersonSnapshot>>() {
+        }.getType());
+        assertThat(copy).isEqualTo(snapshots);
+    }
+
+    @Test
+    public void startsEveryMessageFromAnEmptyBuffer() {
+        Face large = Fixtures.face("large", random, 512, 1 << 21);
+        Face small = Fixtures.face("small", random, 16, 0);
+
+        codec.encode(new Message<>(ImmutableMap.of(MessageHeaders.TYPE_HEADER, "FACE"), large));
+        TextMessage encoded = (TextMessage) codec.encode(new Message<>(ImmutableMap.of(MessageHeaders.TYPE_HEADER, "FACE"), small));
+
+        assertThat(encoded.getPayload()).startsWith("{\"headers\"").endsWith("}}").doesNotContain("large");
+        assertThat(codec.decode(encoded).<Face>getPayload(Face.class)).isEqualTo(small);
+    }
+
+    @Test
+    public void rejectsMalformedJson() {
+        assertThat(codec.supports(new BinaryMessage(new byte[]{'{', '}'}))).isFalse();
+        assertThatThrownBy(() -> codec.decode(new TextMessage("[1, 2]")))
+                .isInstanceOf(JsonParseException.class);
+        assertThatThrownBy(() -> codec.decode(new TextMessage("{\"headers\":{\"type\":")))
+                .isInstanceOf(JsonParseException.class);
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.charleslzq.facestore.server.message;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimestampsTest {
+    private final Gson gson = Converters.registerLocalDateTime(new GsonBuilder()).create();
+
+    @Test
+    public void formatsCurrentTimeAsJsonLocalDateTime() {
+        LocalDateTime before = LocalDateTime.now();
+
+        LocalDateTime parsed = gson.fromJson(Timestamps.now(), LocalDateTime.class);
+
+        assertThat(parsed).isBetween(before, LocalDateTime.now());
+    }
+
+    @Test
+    public void reusesFormattedTimestampWithinTheSameMillisecond() {
+        int reused = 0;
+        for (int attempt = 0; attempt < 1000; attempt++) {
+            long millis = System.currentTimeMillis();
+            String first = Timestamps.now();
+            String second = Timestamps.now();
+            if (System.currentTimeMillis() == millis) {
+                assertThat(second).isSameAs(first);
+                reused++;
+            }
+        }
+        assertThat(reused).isPositive();
+    }
+}
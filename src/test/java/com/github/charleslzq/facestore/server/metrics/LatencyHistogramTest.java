@@ -0,0 +1,87 @@
+package com.github.charleslzq.facestore.server.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class LatencyHistogramTest {
+    @Test
+    public void reportsZeroWhenEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMean()).isZero();
+        assertThat(histogram.percentile(99)).isZero();
+    }
+
+    @Test
+    public void keepsSmallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 16; value++) {
+            histogram.record(value);
+        }
+
+        assertThat(histogram.percentile(50)).isEqualTo(7);
+        assertThat(histogram.percentile(100)).isEqualTo(15);
+        assertThat(histogram.getMean()).isEqualTo(7.5);
+    }
+
+    @Test
+    public void boundsPercentileErrorBySubBucketWidth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(15);
+        long[] values = new long[100000];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = (long) Math.exp(7 + 2 * random.nextGaussian());
+            histogram.record(values[index]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            assertThat(histogram.percentile(percentile))
+                    .isGreaterThanOrEqualTo(exact)
+                    .isLessThanOrEqualTo(exact + exact / 8 + 1);
+        }
+        assertThat(histogram.percentile(100)).isEqualTo(values[values.length - 1]);
+        assertThat(histogram.getMax()).isEqualTo(values[values.length - 1]);
+        assertThat(histogram.getSum()).isEqualTo(Arrays.stream(values).sum());
+    }
+
+    @Test
+    public void clampsNegativeValuesAndHandlesExtremes() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.percentile(50)).isZero();
+        assertThat(histogram.percentile(100)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void countsEveryRecordFromConcurrentWriters() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            writers.execute(() -> {
+                for (int index = 0; index < 100000; index++) {
+                    histogram.record(1000);
+                }
+            });
+        }
+        writers.shutdown();
+        assertThat(writers.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(histogram.getCount()).isEqualTo(400000);
+        assertThat(histogram.getMean()).isCloseTo(1000, offset(0.0));
+        assertThat(histogram.percentile(50)).isBetween(1000L, 1063L);
+    }
+}
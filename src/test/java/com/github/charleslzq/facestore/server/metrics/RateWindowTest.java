@@ -0,0 +1,35 @@
+package com.github.charleslzq.facestore.server.metrics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class RateWindowTest {
+    @Test
+    public void averagesMarksOverTheRequestedWindow() {
+        RateWindow rateWindow = new RateWindow(60);
+        for (int index = 0; index < 600; index++) {
+            rateWindow.mark();
+        }
+
+        assertThat(rateWindow.rate(60)).isCloseTo(10.0, offset(1e-9));
+        assertThat(rateWindow.rate(10)).isCloseTo(60.0, offset(1e-9));
+        assertThat(rateWindow.rate(1)).isBetween(0.0, 600.0);
+    }
+
+    @Test
+    public void capsTheWindowAtItsLength() {
+        RateWindow rateWindow = new RateWindow(5);
+        for (int index = 0; index < 50; index++) {
+            rateWindow.mark();
+        }
+
+        assertThat(rateWindow.rate(60)).isCloseTo(10.0, offset(1e-9));
+    }
+
+    @Test
+    public void reportsZeroWithoutMarks() {
+        assertThat(new RateWindow(60).rate(10)).isZero();
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.charleslzq.facestore.server.replication;
+
+import com.github.charleslzq.facestore.ListenableReadWriteFaceStore;
+import com.github.charleslzq.facestore.server.FaceStoreServer;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplicationTest {
+    private static final long TIMEOUT = 20000;
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final Random random = new Random(19);
+    private final List<Node> nodes = new ArrayList<>();
+    private int[] ports;
+
+    @Before
+    public void setUp() throws IOException {
+        ports = new int[]{freePort(), freePort(), freePort()};
+    }
+
+    @After
+    public void tearDown() {
+        nodes.forEach(Node::stop);
+    }
+
+    @Test
+    public void replicatesWritesAndDeletesToEveryPeer() throws Exception {
+        Node first = start(0);
+        Node second = start(1);
+        Node third = start(2);
+        Person person = Fixtures.person("p1");
+        Face face = Fixtures.face("f1", random, 64, 0);
+
+        first.store().savePerson(person);
+        first.store().saveFace("p1", face);
+
+        awaitUntil(() -> second.store().getFace("p1", "f1") != null && third.store().getFace("p1", "f1") != null);
+        assertThat(third.store().getPerson("p1").getName()).isEqualTo(person.getName());
+        assertThat(second.store().getFace("p1", "f1").getData()).isEqualTo(face.getData());
+
+        third.store().deleteFace("p1", "f1");
+
+        awaitUntil(() -> first.store().getFace("p1", "f1") == null && second.store().getFace("p1", "f1") == null);
+        assertThat(first.store().getPerson("p1")).isNotNull();
+    }
+
+    @Test
+    public void convergesOnTheLatestUpdateOfConcurrentWrites() throws Exception {
+        Node first = start(0);
+        Node second = start(1);
+        Person older = Fixtures.person("p1");
+        older.setName("older");
+        Person newer = Fixtures.person("p1");
+        newer.setName("newer");
+        newer.setUpdateTime(older.getUpdateTime().plusSeconds(1));
+
+        second.store().savePerson(newer);
+        first.store().savePerson(older);
+
+        awaitUntil(() -> "newer".equals(first.store().getPerson("p1").getName()));
+        Thread.sleep(500);
+        assertThat(first.store().getPerson("p1").getName()).isEqualTo("newer");
+        assertThat(second.store().getPerson("p1").getName()).isEqualTo("newer");
+    }
+
+    @Test
+    public void catchesUpAfterRestart() throws Exception {
+        Node first = start(0);
+        Node second = start(1);
+        first.store().savePerson(Fixtures.person("p1"));
+        awaitUntil(() -> second.store().getPerson("p1") != null);
+
+        second.stop();
+        first.store().deletePerson("p1");
+        for (int index = 2; index <= 20; index++) {
+            first.store().savePerson(Fixtures.person("p" + index));
+        }
+        Node restarted = start(1);
+
+        awaitUntil(() -> restarted.store().getPersonIds().size() == 19);
+        assertThat(restarted.store().getPerson("p1")).isNull();
+    }
+
+    private Node start(int index) {
+        File directory = new File(temporaryFolder.getRoot(), "node" + index);
+        List<String> arguments = new ArrayList<>();
+        arguments.add("--server.port=" + ports[index]);
+        arguments.add("--spring.main.banner-mode=off");
+        arguments.add("--spring.jmx.enabled=false");
+        arguments.add("--logging.level.com.github.charleslzq.facestore.server.replication=ERROR");
+        arguments.add("--face.store.file.directory=" + new File(directory, "store").getPath());
+        arguments.add("--face.store.segment.enabled=true");
+        arguments.add("--face.store.replication.enabled=true");
+        arguments.add("--face.store.replication.poll-interval=100");
+        int peer = 0;
+        for (int other = 0; other < ports.length; other++) {
+            if (other != index) {
+                arguments.add("--face.store.replication.peers[" + peer++ + "]=http://localhost:" + ports[other]);
+            }
+        }
+        Node node = new Node(new SpringApplicationBuilder(FaceStoreServer.class)
+                .run(arguments.toArray(new String[arguments.size()])));
+        nodes.add(node);
+        return node;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("replication did not converge in %d ms", TIMEOUT).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class Node {
+        private final ConfigurableApplicationContext context;
+
+        private Node(ConfigurableApplicationContext context) {
+            this.context = context;
+        }
+
+        @SuppressWarnings("unchecked")
+        private ListenableReadWriteFaceStore<Person, Face> store() {
+            return (ListenableReadWriteFaceStore<Person, Face>) context.getBean("faceStoreCacheWrapper");
+        }
+
+        private void stop() {
+            if (context.isActive()) {
+                context.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.charleslzq.facestore.server.search;
+
+import com.github.charleslzq.facestore.server.type.Feature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FaceSearchEngineTest {
+    private static final int DIMENSION = 16;
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private final FaceSearchEngine engine = new FaceSearchEngine();
+    private final SearchProperties searchProperties = new SearchProperties();
+
+    @Before
+    public void setUp() {
+        FlatFaceIndex index = new FlatFaceIndex(pool);
+        Random random = new Random(1);
+        for (int row = 0; row < 100; row++) {
+            index.put("p" + row, "f" + row, Vectors.random(random, DIMENSION));
+        }
+        searchProperties.setMaxTopK(50);
+        ReflectionTestUtils.setField(engine, "searchProperties", searchProperties);
+        ReflectionTestUtils.setField(engine, "faceIndex", index);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void usesDefaultTopKWhenNotRequested() {
+        assertThat(engine.search(featureOf(Vectors.random(new Random(2), DIMENSION)), null)).hasSize(searchProperties.getDefaultTopK());
+    }
+
+    @Test
+    public void capsTopKAtMaximum() {
+        assertThat(engine.search(featureOf(Vectors.random(new Random(3), DIMENSION)), 80)).hasSize(50);
+    }
+
+    @Test
+    public void rejectsNonPositiveTopK() {
+        assertThatThrownBy(() -> engine.search(featureOf(Vectors.random(new Random(4), DIMENSION)), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rejectsMissingFeature() {
+        assertThatThrownBy(() -> engine.search(new Feature(), 5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rejectsFeatureThatIsNotFloat32() {
+        Feature feature = new Feature();
+        feature.setMFeatureData(new byte[DIMENSION * 4 + 1]);
+
+        assertThatThrownBy(() -> engine.search(feature, 5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rejectsFeatureOfOtherDimension() {
+        assertThatThrownBy(() -> engine.search(featureOf(Vectors.random(new Random(5), DIMENSION * 2)), 5))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static Feature featureOf(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        Feature feature = new Feature();
+        feature.setMFeatureData(buffer.array());
+        return feature;
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.charleslzq.facestore.server.search;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+public class FlatFaceIndexTest {
+    private static final int DIMENSION = 32;
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final FlatFaceIndex index = new FlatFaceIndex(pool);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void returnsExactTopKInScoreOrder() {
+        Random random = new Random(1);
+        List<float[]> gallery = Vectors.random(random, 500, DIMENSION);
+        for (int row = 0; row < gallery.size(); row++) {
+            index.put("p" + row, "f" + row, gallery.get(row));
+        }
+        float[] query = Vectors.random(random, DIMENSION);
+
+        List<SearchHit> hits = index.search(query, 10);
+
+        assertThat(hits.stream().map(SearchHit::getFaceId).collect(Collectors.toList()))
+                .containsExactlyElementsOf(Vectors.exactTopK(gallery, query, 10).stream().map(row -> "f" + row).collect(Collectors.toList()));
+        for (int rank = 1; rank < hits.size(); rank++) {
+            assertThat(hits.get(rank).getScore()).isLessThanOrEqualTo(hits.get(rank - 1).getScore());
+        }
+    }
+
+    @Test
+    public void mergesChunksScannedInParallel() {
+        Random random = new Random(2);
+        List<float[]> gallery = Vectors.random(random, 10000, DIMENSION);
+        for (int row = 0; row < gallery.size(); row++) {
+            index.put("p" + row % 100, "f" + row, gallery.get(row));
+        }
+        float[] query = Vectors.random(random, DIMENSION);
+
+        List<SearchHit> hits = index.search(query, 20);
+
+        assertThat(hits.stream().map(SearchHit::getFaceId).collect(Collectors.toList()))
+                .containsExactlyElementsOf(Vectors.exactTopK(gallery, query, 20).stream().map(row -> "f" + row).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void replacesVectorOfExistingFace() {
+        float[] first = Vectors.random(new Random(3), DIMENSION);
+        float[] second = Vectors.random(new Random(4), DIMENSION);
+        index.put("p", "f", first);
+        index.put("p", "f", second);
+
+        List<SearchHit> hits = index.search(second, 5);
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(hits).hasSize(1);
+        assertThat(hits.get(0).getScore()).isCloseTo(1f, offset(1e-5f));
+    }
+
+    @Test
+    public void keepsRemainingFacesSearchableAfterRemove() {
+        Random random = new Random(5);
+        List<float[]> gallery = Vectors.random(random, 3, DIMENSION);
+        index.put("p", "a", gallery.get(0));
+        index.put("p", "b", gallery.get(1));
+        index.put("q", "c", gallery.get(2));
+
+        index.remove("p", "a");
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.search(gallery.get(2), 1).get(0).getFaceId()).isEqualTo("c");
+        assertThat(index.search(gallery.get(1), 1).get(0).getFaceId()).isEqualTo("b");
+    }
+
+    @Test
+    public void removesEveryFaceOfPerson() {
+        Random random = new Random(6);
+        index.put("p", "a", Vectors.random(random, DIMENSION));
+        index.put("p", "b", Vectors.random(random, DIMENSION));
+        index.put("q", "c", Vectors.random(random, DIMENSION));
+
+        index.removePerson("p");
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.search(Vectors.random(random, DIMENSION), 10)).extracting(SearchHit::getPersonId).containsOnly("q");
+    }
+
+    @Test
+    public void rejectsQueryOfOtherDimension() {
+        index.put("p", "f", Vectors.random(new Random(7), DIMENSION));
+
+        assertThatThrownBy(() -> index.search(new float[DIMENSION + 1], 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("dimension");
+    }
+}
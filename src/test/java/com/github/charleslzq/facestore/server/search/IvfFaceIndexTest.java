@@ -0,0 +1,195 @@
+package com.github.charleslzq.facestore.server.search;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IvfFaceIndexTest {
+    private static final int DIMENSION = 16;
+    private static final int LISTS = 8;
+    private final DeferredPool pool = new DeferredPool();
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void trainsInBackgroundAndKeepsEveryFaceSearchable() throws InterruptedException {
+        IvfFaceIndex index = new IvfFaceIndex(pool, LISTS, LISTS);
+        pool.deferring = false;
+        List<float[]> gallery = IvfIndexes.clustered(new Random(1), 1000, LISTS, DIMENSION);
+        for (int row = 0; row < gallery.size(); row++) {
+            index.put("p" + row, "f" + row, gallery.get(row));
+        }
+
+        IvfIndexes.awaitTraining(index, 10000);
+
+        assertThat(index.size()).isEqualTo(gallery.size());
+        for (int row = 0; row < gallery.size(); row += 37) {
+            assertThat(topIds(index, gallery.get(row), 5)).containsExactlyElementsOf(exactIds(gallery, gallery.get(row), 5));
+        }
+    }
+
+    @Test
+    public void findsMostTrueNeighboursWhenProbingFewLists() throws InterruptedException {
+        IvfFaceIndex index = new IvfFaceIndex(pool, LISTS, 2);
+        pool.deferring = false;
+        Random random = new Random(2);
+        List<float[]> gallery = IvfIndexes.clustered(random, 2000, LISTS, DIMENSION);
+        for (int row = 0; row < gallery.size(); row++) {
+            index.put("p" + row, "f" + row, gallery.get(row));
+        }
+        IvfIndexes.awaitTraining(index, 10000);
+
+        int found = 0;
+        int expected = 0;
+        for (int query = 0; query < 50; query++) {
+            float[] vector = gallery.get(random.nextInt(gallery.size()));
+            List<String> exact = exactIds(gallery, vector, 10);
+            found += topIds(index, vector, 10).stream().filter(exact::contains).count();
+            expected += exact.size();
+        }
+
+        assertThat((double) found / expected).isGreaterThan(0.8);
+    }
+
+    @Test
+    public void swapsInTrainingWithoutLosingWritesMadeMeanwhile() {
+        IvfFaceIndex index = new IvfFaceIndex(pool, LISTS, LISTS);
+        Random random = new Random(3);
+        List<float[]> gallery = new ArrayList<>(IvfIndexes.clustered(random, 64, LISTS, DIMENSION));
+        for (int row = 0; row < gallery.size(); row++) {
+            index.put("p" + row, "f" + row, gallery.get(row));
+        }
+        assertThat(pool.deferred).hasSize(1);
+
+        index.remove("p0", "f0");
+        index.removePerson("p1");
+        gallery.set(2, IvfIndexes.clustered(random, 1, 1, DIMENSION).get(0));
+        index.put("p2", "f2", gallery.get(2));
+        for (int row = 64; row < 100; row++) {
+            gallery.add(IvfIndexes.clustered(random, 1, 1, DIMENSION).get(0));
+            index.put("p" + row, "f" + row, gallery.get(row));
+        }
+        pool.runDeferred();
+
+        assertThat(IvfIndexes.isTrained(index)).isTrue();
+        assertThat(index.size()).isEqualTo(98);
+        for (int row = 2; row < gallery.size(); row++) {
+            assertThat(index.search(gallery.get(row), 1).get(0).getFaceId()).isEqualTo("f" + row);
+        }
+        assertThat(index.search(gallery.get(0), 100)).extracting(SearchHit::getFaceId).doesNotContain("f0", "f1");
+    }
+
+    @Test
+    public void restoresPersistedIndex() throws IOException, InterruptedException {
+        IvfFaceIndex index = new IvfFaceIndex(pool, LISTS, LISTS);
+        pool.deferring = false;
+        List<float[]> gallery = IvfIndexes.clustered(new Random(4), 500, LISTS, DIMENSION);
+        for (int row = 0; row < gallery.size(); row++) {
+            index.put("p" + row % 50, "f" + row, gallery.get(row));
+        }
+        IvfIndexes.awaitTraining(index, 10000);
+        byte[] persisted = persist(index);
+
+        IvfFaceIndex restored = new IvfFaceIndex(pool, LISTS, LISTS);
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(persisted)), persisted.length);
+
+        assertThat(restored.size()).isEqualTo(index.size());
+        for (int row = 0; row < gallery.size(); row += 23) {
+            assertThat(topIds(restored, gallery.get(row), 5)).isEqualTo(topIds(index, gallery.get(row), 5));
+        }
+        restored.removePerson("p0");
+        assertThat(restored.size()).isEqualTo(490);
+    }
+
+    @Test
+    public void keepsLiveStateWhenPersistedIndexIsTruncated() throws IOException {
+        IvfFaceIndex source = new IvfFaceIndex(pool, LISTS, LISTS);
+        List<float[]> gallery = IvfIndexes.clustered(new Random(5), 40, LISTS, DIMENSION);
+        for (int row = 0; row < gallery.size(); row++) {
+            source.put("p" + row, "f" + row, gallery.get(row));
+        }
+        byte[] truncated = Arrays.copyOf(persist(source), 200);
+        IvfFaceIndex live = new IvfFaceIndex(pool, LISTS, LISTS);
+        live.put("live", "face", gallery.get(0));
+
+        assertThatThrownBy(() -> live.readFrom(new DataInputStream(new ByteArrayInputStream(truncated)), truncated.length))
+                .isInstanceOf(IOException.class);
+        assertThat(live.size()).isEqualTo(1);
+        assertThat(live.search(gallery.get(0), 1).get(0).getFaceId()).isEqualTo("face");
+    }
+
+    @Test
+    public void rejectsSizesLargerThanRemainingBytesBeforeAllocating() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(1);
+        output.writeInt(DIMENSION);
+        output.writeInt(0);
+        output.writeInt(0);
+        output.writeInt(1);
+        output.writeInt(Integer.MAX_VALUE);
+        byte[] corrupted = bytes.toByteArray();
+        IvfFaceIndex index = new IvfFaceIndex(pool, LISTS, LISTS);
+
+        assertThatThrownBy(() -> index.readFrom(new DataInputStream(new ByteArrayInputStream(corrupted)), corrupted.length))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("remain");
+        assertThat(index.size()).isZero();
+    }
+
+    private static byte[] persist(IvfFaceIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            index.writeTo(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> topIds(FaceIndex index, float[] query, int topK) {
+        return index.search(query, topK).stream().map(SearchHit::getFaceId).collect(Collectors.toList());
+    }
+
+    private static List<String> exactIds(List<float[]> gallery, float[] query, int topK) {
+        return Vectors.exactTopK(gallery, query, topK).stream().map(row -> "f" + row).collect(Collectors.toList());
+    }
+
+    private static class DeferredPool extends ForkJoinPool {
+        private final List<Runnable> deferred = new ArrayList<>();
+        private volatile boolean deferring = true;
+
+        private DeferredPool() {
+            super(2);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (deferring) {
+                deferred.add(task);
+            } else {
+                super.execute(task);
+            }
+        }
+
+        private void runDeferred() {
+            deferred.forEach(Runnable::run);
+            deferred.clear();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.charleslzq.facestore.server.search;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class IvfIndexes {
+    private IvfIndexes() {
+    }
+
+    public static boolean isTrained(IvfFaceIndex index) {
+        return ReflectionTestUtils.getField(index, "centroids") != null && ReflectionTestUtils.getField(index, "retouched") == null;
+    }
+
+    public static void awaitTraining(IvfFaceIndex index, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!isTrained(index)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Index not trained in " + timeoutMillis + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    public static List<float[]> clustered(Random random, int count, int clusters, int dimension) {
+        List<float[]> centers = Vectors.random(random, clusters, dimension);
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            float[] center = centers.get(index % clusters);
+            float[] noise = Vectors.random(random, dimension);
+            float[] vector = new float[dimension];
+            double norm = 0;
+            for (int offset = 0; offset < dimension; offset++) {
+                vector[offset] = center[offset] + 0.3f * noise[offset];
+                norm += vector[offset] * vector[offset];
+            }
+            for (int offset = 0; offset < dimension; offset++) {
+                vector[offset] /= (float) Math.sqrt(norm);
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+}
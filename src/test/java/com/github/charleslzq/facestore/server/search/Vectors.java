@@ -0,0 +1,50 @@
+package com.github.charleslzq.facestore.server.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class Vectors {
+    private Vectors() {
+    }
+
+    public static float[] random(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        double norm = 0;
+        for (int index = 0; index < dimension; index++) {
+            vector[index] = (float) random.nextGaussian();
+            norm += vector[index] * vector[index];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int index = 0; index < dimension; index++) {
+            vector[index] *= scale;
+        }
+        return vector;
+    }
+
+    public static List<float[]> random(Random random, int count, int dimension) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            vectors.add(random(random, dimension));
+        }
+        return vectors;
+    }
+
+    public static float dot(float[] left, float[] right) {
+        float score = 0;
+        for (int index = 0; index < left.length; index++) {
+            score += left[index] * right[index];
+        }
+        return score;
+    }
+
+    public static List<Integer> exactTopK(List<float[]> gallery, float[] query, int topK) {
+        return IntStream.range(0, gallery.size()).boxed()
+                .sorted(Comparator.comparing((Integer row) -> dot(gallery.get(row), query)).reversed())
+                .limit(topK)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.charleslzq.facestore.server.segment;
+
+import com.fatboyindustrial.gsonjodatime.Converters;
+import com.github.charleslzq.facestore.server.Fixtures;
+import com.github.charleslzq.facestore.server.type.Face;
+import com.github.charleslzq.facestore.server.type.Person;
+import com.google.gson.GsonBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SegmentFaceStoreTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final SegmentStoreProperties properties = new SegmentStoreProperties();
+    private final Random random = new Random(8);
+    private File directory;
+    private SegmentFaceStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("segments");
+        properties.setSegmentSize(64 * 1024);
+        properties.setCompactionInterval(3600000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void recoversStateAfterRestart() throws IOException {
+        store = open();
+        Person person = Fixtures.person("p1");
+        Face kept = face("f1");
+        Face updated = face("f2");
+        store.savePerson(person);
+        store.saveFace("p1", kept);
+        store.saveFace("p1", face("f2"));
+        store.saveFace("p1", updated);
+        store.saveFace("p1", face("f3"));
+        store.deleteFace("p1", "f3");
+        store.savePerson(Fixtures.person("p2"));
+        store.saveFace("p2", face("f4"));
+        store.deletePerson("p2");
+
+        store = reopen();
+
+        assertThat(store.getPersonIds()).containsExactly("p1");
+        assertThat(store.getPerson("p1")).isEqualTo(person);
+        assertThat(store.getFaceIdList("p1")).containsExactlyInAnyOrder("f1", "f2");
+        assertThat(store.getFace("p1", "f1")).isEqualTo(kept);
+        assertThat(store.getFace("p1", "f2")).isEqualTo(updated);
+        assertThat(store.getFace("p2", "f4")).isNull();
+    }
+
+    @Test
+    public void keepsWritingAfterRecoveredRecords() throws IOException {
+        store = open();
+        store.savePerson(Fixtures.person("p1"));
+        store = reopen();
+        Face face = face("f1");
+        store.saveFace("p1", face);
+
+        store = reopen();
+
+        assertThat(store.getPerson("p1")).isNotNull();
+        assertThat(store.getFace("p1", "f1")).isEqualTo(face);
+    }
+
+    @Test
+    public void discardsEverythingFromATornRecordAndClearsTheTail() throws IOException {
+        store = open();
+        store.savePerson(Fixtures.person("p1"));
+        store.saveFace("p1", face("f1"));
+        store.saveFace("p1", face("f2"));
+        store.close();
+        store = null;
+        File file = onlySegment();
+        List<Integer> offsets = offsetsOf(file);
+        assertThat(offsets).hasSize(3);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            long position = offsets.get(1) + Segment.HEADER_SIZE + 20;
+            randomAccessFile.seek(position);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 0xFF);
+        }
+
+        store = open();
+
+        assertThat(store.getPersonIds()).containsExactly("p1");
+        assertThat(store.getFaceIdList("p1")).isEmpty();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int position = offsets.get(1); position < bytes.length; position++) {
+            assertThat(bytes[position]).isZero();
+        }
+        Face face = face("f3");
+        store.saveFace("p1", face);
+        store = reopen();
+        assertThat(store.getFaceIdList("p1")).containsExactly("f3");
+        assertThat(store.getFace("p1", "f3")).isEqualTo(face);
+    }
+
+    @Test
+    public void replaysTombstonesWrittenToLaterSegments() throws IOException {
+        properties.setSegmentSize(1024);
+        store = open();
+        store.savePerson(Fixtures.person("p1"));
+        for (int index = 0; index < 20; index++) {
+            store.saveFace("p1", face("f" + index));
+        }
+        store.deleteFace("p1", "f0");
+        store.deletePerson("p1");
+        store.savePerson(Fixtures.person("p1"));
+        store.saveFace("p1", face("f1"));
+
+        store = reopen();
+
+        assertThat(segmentFiles().length).isGreaterThan(1);
+        assertThat(store.getPersonIds()).containsExactly("p1");
+        assertThat(store.getFaceIdList("p1")).containsExactly("f1");
+    }
+
+    @Test
+    public void compactsGarbageSegmentsWithoutLosingLiveRecords() throws IOException, InterruptedException {
+        properties.setSegmentSize(2048);
+        properties.setCompactionInterval(20);
+        properties.setCompactionThreshold(0.5);
+        store = open();
+        store.savePerson(Fixtures.person("p1"));
+        store.saveFace("p1", face("gone"));
+        Face latest = null;
+        for (int index = 0; index < 40; index++) {
+            latest = face("f1");
+            store.saveFace("p1", latest);
+        }
+        store.deleteFace("p1", "gone");
+        int written = segmentFiles().length;
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (segmentFiles().length > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        store = reopen();
+
+        assertThat(segmentFiles().length).isLessThan(written);
+        assertThat(store.getPerson("p1")).isEqualTo(Fixtures.person("p1"));
+        assertThat(store.getFaceIdList("p1")).containsExactly("f1");
+        assertThat(store.getFace("p1", "f1")).isEqualTo(latest);
+    }
+
+    private Face face(String id) {
+        return Fixtures.face(id, random, 64, 0);
+    }
+
+    private SegmentFaceStore open() throws IOException {
+        return new SegmentFaceStore(directory.getPath(), properties, Converters.registerLocalDateTime(new GsonBuilder()).create());
+    }
+
+    private SegmentFaceStore reopen() throws IOException {
+        store.close();
+        return open();
+    }
+
+    private File[] segmentFiles() {
+        return directory.listFiles((dir, name) -> name.endsWith(Segment.SUFFIX));
+    }
+
+    private File onlySegment() {
+        File[] files = segmentFiles();
+        assertThat(files).hasSize(1);
+        return files[0];
+    }
+
+    private static List<Integer> offsetsOf(File file) throws IOException {
+        List<Integer> offsets = new ArrayList<>();
+        try (Segment segment = Segment.open(file)) {
+            segment.recover((offset, body) -> offsets.add(offset));
+        }
+        return offsets;
+    }
+}